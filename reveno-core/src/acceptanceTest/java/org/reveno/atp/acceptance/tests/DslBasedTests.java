@@ -3,6 +3,7 @@ package org.reveno.atp.acceptance.tests;
 import org.junit.Assert;
 import org.junit.Test;
 import org.reveno.atp.api.Reveno;
+import org.reveno.atp.api.dynamic.DynamicCommand;
 import org.reveno.atp.utils.MapUtils;
 
 public class DslBasedTests extends RevenoBaseTest {
@@ -38,6 +39,66 @@ public class DslBasedTests extends RevenoBaseTest {
         reveno.shutdown();
     }
 
+    @Test
+    public void testTransactionWithoutArguments() throws Exception {
+        Reveno reveno = createEngine();
+        DynamicCommand createDefault = untypedDomain(reveno);
+        reveno.startup();
+
+        // command without arguments map at all
+        long accountId = reveno.executeSync(createDefault.newCommand());
+        Assert.assertEquals(1L, reveno.query().find(Account.class, accountId).balance);
+        reveno.shutdown();
+
+        // replayed transaction has no arguments either
+        reveno = createEngine();
+        untypedDomain(reveno);
+        reveno.startup();
+        Assert.assertEquals(1L, reveno.query().find(Account.class, accountId).balance);
+        reveno.shutdown();
+    }
+
+    protected DynamicCommand untypedDomain(Reveno reveno) {
+        reveno.config().mutableModel();
+        reveno.domain().viewMapper(Account.class, Account.class, (a, b, c) -> b);
+        return reveno.domain().transaction("createDefault", (c, d) ->
+                d.repo().store(c.id(), new Account().add(c.arg("amount") == null ? 1L : c.longArg("amount"))))
+                .uniqueIdFor(Account.class).command();
+    }
+
+    @Test
+    public void testTypedArguments() throws Exception {
+        Reveno reveno = createEngine();
+        DynamicCommand addBalance = typedDomain(reveno);
+        reveno.startup();
+
+        long accountId = reveno.executeSync("createAccount");
+        reveno.executeSync("addBalanceTyped", MapUtils.map("id", accountId, "amount", 10));
+        reveno.executeSync(addBalance.newCommand().arg("id", accountId).arg("amount", 5L).arg("comment", "bonus"));
+        Assert.assertEquals(15L, reveno.query().find(Account.class, accountId).balance);
+        reveno.shutdown();
+
+        reveno = createEngine();
+        typedDomain(reveno);
+        reveno.startup();
+        Assert.assertEquals(15L, reveno.query().find(Account.class, accountId).balance);
+        reveno.shutdown();
+    }
+
+    protected DynamicCommand typedDomain(Reveno reveno) {
+        reveno.config().mutableModel();
+        reveno.domain().transaction("createAccount", (c, d) ->
+                d.repo().store(c.id(), new Account()))
+                .uniqueIdFor(Account.class).command();
+        DynamicCommand addBalance = reveno.domain().transaction("addBalanceTyped", (c, d) -> {
+            Assert.assertEquals(c.longArg(), c.longArg("id"));
+            d.repo().remap(c.longArg("id"), Account.class, (id, e) -> e.add(c.longArg("amount")));
+        }).arg("id", long.class).arg("amount", long.class).arg("comment", String.class).command();
+        reveno.domain().viewMapper(Account.class, Account.class, (a, b, c) -> b);
+        Assert.assertEquals(long.class, addBalance.schema().type(0));
+        return addBalance;
+    }
+
     public static class Account {
         public long balance = 0;
 
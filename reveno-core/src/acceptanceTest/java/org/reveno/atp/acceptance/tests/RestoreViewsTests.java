@@ -0,0 +1,114 @@
+package org.reveno.atp.acceptance.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.reveno.atp.api.Reveno;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class RestoreViewsTests extends RevenoBaseTest {
+
+    @Test
+    public void testSequentialRestore() throws Exception {
+        testRestore(1);
+    }
+
+    @Test
+    public void testParallelRestore() throws Exception {
+        testRestore(4);
+    }
+
+    protected void testRestore(int parallelism) throws Exception {
+        Reveno reveno = createEngine();
+        domain(reveno);
+        reveno.startup();
+
+        // every counter is changed many times, every third one is removed
+        List<CompletableFuture<?>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            for (long id = 1; id <= 10_000; id++) {
+                results.add(reveno.executeCommand(new Add(id, id + 1)));
+            }
+        }
+        for (long id = 3; id <= 10_000; id += 3) {
+            results.add(reveno.executeCommand(new Remove(id)));
+        }
+        for (CompletableFuture<?> result : results) {
+            result.get();
+        }
+        assertViews(reveno);
+        reveno.shutdown();
+
+        reveno = createEngine(e -> e.config().restoreViewsParallelism(parallelism));
+        domain(reveno);
+        reveno.startup();
+        assertViews(reveno);
+        reveno.shutdown();
+    }
+
+    protected void assertViews(Reveno reveno) {
+        Assert.assertEquals(6_667, reveno.query().select(CounterView.class).size());
+        for (long id = 1; id <= 10_000; id++) {
+            CounterView view = reveno.query().find(CounterView.class, id);
+            if (id % 3 == 0) {
+                Assert.assertNull(view);
+            } else {
+                Assert.assertEquals(3 * (id + 1), view.value);
+            }
+        }
+    }
+
+    protected void domain(Reveno reveno) {
+        reveno.domain().command(Add.class, (c, ctx) -> ctx.executeTxAction(c));
+        reveno.domain().transactionAction(Add.class, (t, ctx) -> {
+            Counter counter = ctx.repo().get(Counter.class, t.id);
+            ctx.repo().store(t.id, new Counter((counter == null ? 0 : counter.value) + t.delta));
+        });
+        reveno.domain().command(Remove.class, (c, ctx) -> ctx.executeTxAction(c));
+        reveno.domain().transactionAction(Remove.class, (t, ctx) -> ctx.repo().remove(Counter.class, t.id));
+        reveno.domain().viewMapper(Counter.class, CounterView.class, (id, e, r) -> new CounterView(e.value));
+    }
+
+    public static class Add {
+        public long id;
+        public long delta;
+
+        public Add(long id, long delta) {
+            this.id = id;
+            this.delta = delta;
+        }
+
+        public Add() {
+        }
+    }
+
+    public static class Remove {
+        public long id;
+
+        public Remove(long id) {
+            this.id = id;
+        }
+
+        public Remove() {
+        }
+    }
+
+    public static class Counter {
+        public final long value;
+
+        public Counter(long value) {
+            this.value = value;
+        }
+    }
+
+    public static class CounterView {
+        public final long value;
+
+        public CounterView(long value) {
+            this.value = value;
+        }
+    }
+
+}
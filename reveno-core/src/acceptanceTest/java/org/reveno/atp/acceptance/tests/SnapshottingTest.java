@@ -15,6 +15,7 @@ import org.reveno.atp.core.api.serialization.RepositoryDataSerializer;
 import org.reveno.atp.core.channel.NettyBasedBuffer;
 import org.reveno.atp.core.serialization.DefaultJavaSerializer;
 import org.reveno.atp.core.serialization.ProtostuffSerializer;
+import org.reveno.atp.core.snapshots.ChunkedSnapshotter;
 import org.reveno.atp.core.snapshots.DefaultSnapshotter;
 import org.reveno.atp.core.storage.FileSystemStorage;
 import org.reveno.atp.utils.MeasureUtils;
@@ -51,6 +52,66 @@ public class SnapshottingTest extends RevenoBaseTest {
         reveno.shutdown();
     }
 
+    @Test
+    public void testShutdownSnapshottingChunked() throws Exception {
+        Reveno reveno = createEngine();
+        reveno.config().snapshotting().atShutdown(true);
+        reveno.startup();
+
+        generateAndSendCommands(reveno, 10_000);
+        reveno.shutdown();
+
+        Arrays.asList(tempDir.listFiles((dir, name) -> !(name.startsWith("snp")))).forEach(File::delete);
+
+        // loads snapshot of previous format and writes the chunked one
+        reveno = createEngine();
+        reveno.config().snapshotting().atShutdown(true).chunked(true).parallelism(3);
+        reveno.startup();
+
+        Assert.assertEquals(10_000, reveno.query().select(AccountView.class).size());
+        generateAndSendCommands(reveno, 5_000);
+        reveno.shutdown();
+
+        Arrays.asList(tempDir.listFiles((dir, name) -> !(name.startsWith("snp")))).forEach(File::delete);
+
+        reveno = createEngine();
+        reveno.config().snapshotting().chunked(true);
+        reveno.startup();
+
+        Assert.assertEquals(15_000, reveno.query().select(AccountView.class).size());
+        Assert.assertEquals(15_000, reveno.query().select(OrderView.class).size());
+
+        reveno.shutdown();
+    }
+
+    @Test
+    public void testShutdownSnapshottingLazy() throws Exception {
+        Reveno reveno = createEngine();
+        reveno.config().snapshotting().atShutdown(true).chunked(true);
+        reveno.startup();
+
+        generateAndSendCommands(reveno, 10_000);
+        reveno.shutdown();
+
+        // journal written on top of the mapped snapshot
+        reveno = createEngine();
+        reveno.config().snapshotting().lazy(true);
+        reveno.startup();
+
+        Assert.assertEquals(10_000, reveno.query().select(AccountView.class).size());
+        generateAndSendCommands(reveno, 5_000);
+        reveno.shutdown();
+
+        reveno = createEngine();
+        reveno.config().snapshotting().lazy(true);
+        reveno.startup();
+
+        Assert.assertEquals(15_000, reveno.query().select(AccountView.class).size());
+        Assert.assertEquals(15_000, reveno.query().select(OrderView.class).size());
+
+        reveno.shutdown();
+    }
+
     @Test
     public void testSnapshottingEveryJavaSerializer() throws Exception {
         testSnapshottingEvery(new DefaultJavaSerializer());//测试快照间隔
@@ -66,6 +127,12 @@ public class SnapshottingTest extends RevenoBaseTest {
         testSnapshottingEvery(null, new InMemorySnapshotter());
     }
 
+    @Test
+    public void testSnapshottingEveryChunked() throws Exception {
+        testSnapshottingEvery(null, new ChunkedSnapshotter(new FileSystemStorage(tempDir,
+                new RevenoConfiguration.RevenoJournalingConfiguration()), getClass().getClassLoader()).chunkSize(100));
+    }
+
     @Test
     public void testSnapshottingIntervalJavaSerializer() throws Exception {
         testSnapshottingInterval(new DefaultJavaSerializer());
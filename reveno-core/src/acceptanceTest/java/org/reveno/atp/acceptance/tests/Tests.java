@@ -16,16 +16,29 @@ import org.reveno.atp.acceptance.model.Account;
 import org.reveno.atp.acceptance.model.Order.OrderType;
 import org.reveno.atp.acceptance.views.AccountView;
 import org.reveno.atp.acceptance.views.OrderView;
+import org.reveno.atp.api.Configuration.CpuConsumption;
 import org.reveno.atp.api.Configuration.ModelType;
 import org.reveno.atp.api.Configuration.MutableModelFailover;
+import org.reveno.atp.api.Configuration.PipelineMode;
 import org.reveno.atp.api.Reveno;
 import org.reveno.atp.api.commands.EmptyResult;
+import org.reveno.atp.api.commands.Result;
+import org.reveno.atp.api.exceptions.CommandRejectedException;
 import org.reveno.atp.api.domain.Repository;
+import org.reveno.atp.api.domain.WriteableRepository;
+import org.reveno.atp.api.transaction.TransactionBatch;
+import org.reveno.atp.api.transaction.TransactionInterceptor;
+import org.reveno.atp.api.transaction.TransactionStage;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
@@ -59,6 +72,203 @@ public class Tests extends RevenoBaseTest {
         reveno.shutdown();
     }
 
+    @Test
+    public void testAdaptiveCpuConsumption() throws Exception {
+        Reveno reveno = createEngine(r -> r.config().cpuConsumption(CpuConsumption.ADAPTIVE)
+                .eventsCpuConsumption(CpuConsumption.ADAPTIVE).txThreadsAffinity(0).eventsThreadsAffinity(0));
+        reveno.startup();
+
+        Waiter accountCreatedEvent = listenFor(reveno, AccountCreatedEvent.class);
+        long accountId = sendCommandSync(reveno, new CreateNewAccountCommand("USD", 1000_000L));
+        Assert.assertTrue(accountCreatedEvent.isArrived());
+        // pipes become idle and park
+        Thread.sleep(50);
+        long orderId = sendCommandSync(reveno, new NewOrderCommand(accountId, null, "EUR/USD", 134000, 1000, OrderType.MARKET));
+
+        Assert.assertEquals(orderId, reveno.query().find(OrderView.class, orderId).id);
+        Assert.assertEquals(1, reveno.query().find(AccountView.class, accountId).orders().size());
+
+        reveno.shutdown();
+    }
+
+    @Test
+    public void testFusedPipeline() throws Exception {
+        Consumer<TestRevenoEngine> fused = r -> r.config().pipelineMode(PipelineMode.FUSED);
+        Reveno reveno = createEngine(fused);
+        reveno.startup();
+
+        Waiter accountsCreated = listenFor(reveno, AccountCreatedEvent.class, 1_000);
+        sendCommandsBatch(reveno, new CreateNewAccountCommand("USD", 1000_000L), 1_000);
+        Assert.assertTrue(accountsCreated.isArrived());
+        Assert.assertEquals(1_000, reveno.query().select(AccountView.class).size());
+        long orderId = sendCommandSync(reveno, new NewOrderCommand(1L, null, "EUR/USD", 134000, 1000, OrderType.MARKET));
+        Assert.assertEquals(orderId, reveno.query().find(OrderView.class, orderId).id);
+        Assert.assertEquals(1, reveno.query().find(AccountView.class, 1L).orders().size());
+        reveno.shutdown();
+
+        reveno = createEngine(fused);
+        reveno.startup();
+        Assert.assertEquals(1_000, reveno.query().select(AccountView.class).size());
+        Assert.assertEquals(1, reveno.query().find(AccountView.class, 1L).orders().size());
+        reveno.shutdown();
+    }
+
+    @Test
+    public void testProducerLanes() throws Exception {
+        Reveno reveno = createEngine(r -> r.config().disruptor().producerLanes(true).laneSize(16));
+        reveno.startup();
+
+        ExecutorService producers = Executors.newFixedThreadPool(8);
+        List<Future<List<CompletableFuture<Result<Long>>>>> results = new ArrayList<>();
+        IntStream.range(0, 8).forEach(i -> results.add(producers.submit(() -> {
+            List<CompletableFuture<Result<Long>>> ids = new ArrayList<>();
+            for (int j = 0; j < 500; j++) {
+                ids.add(reveno.executeCommand(new CreateNewAccountCommand("USD", 1000_000L)));
+            }
+            return ids;
+        })));
+        for (Future<List<CompletableFuture<Result<Long>>>> result : results) {
+            long previous = 0;
+            // commands of the same producer are executed in order
+            for (CompletableFuture<Result<Long>> id : result.get()) {
+                Assert.assertTrue(id.get().getResult() > previous);
+                previous = id.get().getResult();
+            }
+        }
+        producers.shutdown();
+
+        Assert.assertEquals(4_000, reveno.query().select(AccountView.class).size());
+        reveno.shutdown();
+    }
+
+    @Test
+    public void testProducerLanesWithSmallBuffer() throws Exception {
+        // lane backlog is larger than the whole ring buffer
+        Reveno reveno = createEngine(r -> r.config().disruptor().bufferSize(16).producerLanes(true).laneSize(128));
+        reveno.startup();
+
+        List<CompletableFuture<Result<Long>>> ids = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            ids.add(reveno.executeCommand(new CreateNewAccountCommand("USD", 1000_000L)));
+        }
+        for (CompletableFuture<Result<Long>> id : ids) {
+            Assert.assertTrue(id.get(10, TimeUnit.SECONDS).isSuccess());
+        }
+        Assert.assertEquals(1_000, reveno.query().select(AccountView.class).size());
+        reveno.shutdown();
+    }
+
+    @Test
+    public void testLoadShedding() throws Exception {
+        testLoadShedding(false);
+    }
+
+    @Test
+    public void testLoadSheddingWithProducerLanes() throws Exception {
+        // lanes are larger than the buffer, so their backlog must count as well
+        testLoadShedding(true);
+    }
+
+    @Test
+    public void testLoadSheddingWatermarkAboveBuffer() throws Exception {
+        Reveno reveno = createEngine(r -> r.config().disruptor().bufferSize(16).loadShedding(48, 8)
+                .producerLanes(true).laneSize(64));
+        reveno.startup();
+        Assert.assertTrue(reveno.tryExecuteCommand(new CreateNewAccountCommand("USD", 1000_000L)).get().isSuccess());
+        reveno.shutdown();
+
+        try {
+            createEngine(r -> r.config().disruptor().bufferSize(16).loadShedding(48, 8)).startup();
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    protected void testLoadShedding(boolean producerLanes) throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Reveno reveno = createEngine(r -> {
+            r.config().disruptor().bufferSize(16).loadShedding(8, 2).producerLanes(producerLanes).laneSize(64);
+            r.domain().command(BlockingCommand.class, (c, ctx) -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        });
+        reveno.startup();
+
+        CompletableFuture<Result<Object>> blocking = reveno.executeCommand(new BlockingCommand());
+        List<CompletableFuture<Result<Long>>> accepted = new ArrayList<>();
+        int rejected = 0;
+        for (int i = 0; i < 32; i++) {
+            CompletableFuture<Result<Long>> f = reveno.tryExecuteCommand(new CreateNewAccountCommand("USD", 1000_000L));
+            if (f.isDone() && f.get().getException() instanceof CommandRejectedException) {
+                // the pipe is never full here, so only the watermark rejects
+                Assert.assertEquals("Transactions pipe sheds load.", f.get().getException().getMessage());
+                rejected++;
+            } else {
+                accepted.add(f);
+            }
+        }
+        Assert.assertTrue(accepted.size() < 16);
+        Assert.assertEquals(32 - accepted.size(), rejected);
+        Assert.assertFalse(reveno.executeCommand(new CreateNewAccountCommand("USD", 1000_000L)).get().isSuccess());
+
+        latch.countDown();
+        Assert.assertTrue(blocking.get().isSuccess());
+        for (CompletableFuture<Result<Long>> f : accepted) {
+            Assert.assertTrue(f.get().isSuccess());
+        }
+        // last stage may still be behind results
+        sleep(100);
+        Assert.assertTrue(reveno.tryExecuteCommand(new CreateNewAccountCommand("USD", 1000_000L)).get().isSuccess());
+        Assert.assertEquals(accepted.size() + 1, reveno.query().select(AccountView.class).size());
+
+        reveno.shutdown();
+    }
+
+    @Test
+    public void testBatchInterceptors() throws Exception {
+        TestRevenoEngine reveno = createEngine();
+        AtomicLong intercepted = new AtomicLong(), summed = new AtomicLong(), lastId = new AtomicLong();
+        AtomicLong starts = new AtomicLong(), ends = new AtomicLong();
+        reveno.interceptors().add(TransactionStage.JOURNALING, new TransactionInterceptor() {
+            @Override
+            public void intercept(long transactionId, long time, long flags, WriteableRepository repository, TransactionStage stage) {
+                intercepted.incrementAndGet();
+            }
+
+            @Override
+            public void onBatchStart(TransactionStage stage) {
+                starts.incrementAndGet();
+            }
+
+            @Override
+            public void onBatchEnd(TransactionBatch batch, WriteableRepository repository, TransactionStage stage) {
+                ends.incrementAndGet();
+                Assert.assertTrue(batch.firstTransactionId() > lastId.get());
+                Assert.assertTrue(batch.lastTransactionId() >= batch.firstTransactionId());
+                Assert.assertEquals(0, batch.abortedCount());
+                lastId.set(batch.lastTransactionId());
+                summed.addAndGet(batch.count());
+            }
+
+            @Override
+            public void destroy() {
+            }
+        });
+        reveno.startup();
+
+        sendCommandsBatch(reveno, new CreateNewAccountCommand("USD", 1000_000L), 1_000);
+
+        Assert.assertTrue(intercepted.get() >= 1_000);
+        Assert.assertEquals(intercepted.get(), summed.get());
+        Assert.assertEquals(starts.get(), ends.get());
+        Assert.assertTrue(ends.get() <= summed.get());
+        reveno.shutdown();
+    }
+
     @Test
     public void testAsyncHandlers() throws Exception {
         Reveno reveno = createEngine();
@@ -275,4 +485,50 @@ public class Tests extends RevenoBaseTest {
         reveno.shutdown();
     }
 
+    @Test
+    public void testTransactionWithFieldUndo() throws Exception {
+        if (modelType != ModelType.MUTABLE) {
+            return;
+        }
+
+        class TestTx {
+        }
+        class TestCmd {
+        }
+
+        Repository[] repo = new Repository[1];
+        Consumer<TestRevenoEngine> consumer = r -> {
+            r.config().mutableModel().mutableModelFailover(MutableModelFailover.FIELD_UNDO);
+            r.domain().command(TestCmd.class, (c, d) -> d.executeTxAction(new TestTx()));
+            r.domain().transactionAction(TestTx.class, (a, b) -> {
+                repo[0] = b.repo();
+                throw new RuntimeException();
+            });
+        };
+        Reveno reveno = createEngine(consumer);
+        reveno.startup();
+
+        long accountId = sendCommandSync(reveno, new CreateNewAccountCommand("USD", 1000));
+        Future<EmptyResult> f = reveno.performCommands(Arrays.asList(new Credit(accountId, 15, 0), new Debit(accountId, 8),
+                new NewOrderCommand(accountId, null, "EUR/USD", 134000, 1, OrderType.MARKET), new TestCmd()));
+
+        Assert.assertFalse(f.get().isSuccess());
+        Assert.assertEquals(RuntimeException.class, f.get().getException().getClass());
+        Assert.assertEquals(1000, repo[0].get(Account.class, accountId).balance());
+        Assert.assertEquals(0, repo[0].get(Account.class, accountId).orders().size());
+        Assert.assertEquals(1000, reveno.query().find(AccountView.class, accountId).balance);
+
+        reveno.shutdown();
+
+        reveno = createEngine(consumer);
+        reveno.startup();
+
+        Assert.assertEquals(1000, reveno.query().find(AccountView.class, accountId).balance);
+
+        reveno.shutdown();
+    }
+
+    public static class BlockingCommand {
+    }
+
 }
@@ -0,0 +1,260 @@
+package org.reveno.atp.acceptance.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.reveno.atp.api.Configuration.ModelType;
+import org.reveno.atp.api.Reveno;
+
+import java.util.function.BooleanSupplier;
+
+public class TimersTests extends RevenoBaseTest {
+
+    @Test
+    public void testTimers() throws Exception {
+        Reveno reveno = createEngine(e -> e.config().timerTick(5));
+        domain(reveno);
+        reveno.startup();
+
+        long now = System.currentTimeMillis();
+        reveno.executeSync(new Schedule(1L, now + 1000));
+        reveno.executeSync(new Schedule(1L, now + 1000));
+        long cancelled = reveno.executeSync(new Schedule(1L, now + 1000));
+        reveno.executeSync(new Schedule(2L, now + 60_000));
+        reveno.executeSync(new Cancel(cancelled));
+
+        Assert.assertTrue(await(() -> value(reveno, 1L) == 2L));
+        sleep(100);
+        Assert.assertEquals(2L, value(reveno, 1L));
+        Assert.assertEquals(0L, value(reveno, 2L));
+        reveno.executeSync(new Schedule(3L, System.currentTimeMillis() + 300));
+        reveno.shutdown();
+
+        // firing is replayed from journals, pending timers are restored
+        Reveno restarted = createEngine(e -> e.config().timerTick(5));
+        restarted.config().snapshotting().atShutdown(true);
+        domain(restarted);
+        restarted.startup();
+        Assert.assertEquals(2L, value(restarted, 1L));
+        Assert.assertTrue(await(() -> value(restarted, 3L) == 1L));
+        Assert.assertEquals(0L, value(restarted, 2L));
+        restarted.executeSync(new Schedule(4L, System.currentTimeMillis() + 300));
+        restarted.shutdown();
+
+        // pending timers are restored from snapshot as well
+        Reveno snapshotted = createEngine(e -> e.config().timerTick(5));
+        domain(snapshotted);
+        snapshotted.startup();
+        Assert.assertEquals(1L, value(snapshotted, 3L));
+        Assert.assertTrue(await(() -> value(snapshotted, 4L) == 1L));
+        Assert.assertEquals(0L, value(snapshotted, 2L));
+        snapshotted.shutdown();
+    }
+
+    @Test
+    public void testRolledBackTimerIdIsFiredOnce() throws Exception {
+        // failed transactions of immutable model are compensated, not rolled back
+        if (modelType != ModelType.MUTABLE) {
+            return;
+        }
+        Reveno reveno = createEngine(e -> e.config().timerTick(5));
+        domain(reveno);
+        reveno.startup();
+
+        long fireAt = System.currentTimeMillis() + 300;
+        Assert.assertFalse(reveno.executeCommand(new FailingSchedule(1L, fireAt)).get().isSuccess());
+        // gets the id of the rolled back timer, which is still in the wheel, so both expire on the same tick
+        Assert.assertEquals(1L, (long) reveno.executeSync(new Schedule(1L, fireAt)));
+
+        Assert.assertTrue(await(() -> value(reveno, 1L) == 1L));
+        sleep(100);
+        Assert.assertEquals(1L, value(reveno, 1L));
+        reveno.shutdown();
+
+        Reveno restarted = createEngine(e -> e.config().timerTick(5));
+        domain(restarted);
+        restarted.startup();
+        Assert.assertEquals(1L, value(restarted, 1L));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testFailedTimerActionIsRetried() throws Exception {
+        Reveno reveno = createEngine(e -> e.config().timerTick(5));
+        domain(reveno);
+        reveno.startup();
+
+        long fireAt = System.currentTimeMillis() + 300;
+        reveno.executeSync(new Schedule(1L, fireAt));
+        reveno.executeSync(new SchedulePoison(2L, fireAt));
+        reveno.executeSync(new Schedule(1L, fireAt));
+
+        // co-due timers are fired once, while the poisoned one fails and is retried
+        Assert.assertTrue(await(() -> value(reveno, 1L) == 2L));
+        sleep(1500);
+        Assert.assertEquals(2L, value(reveno, 1L));
+        Assert.assertEquals(0L, value(reveno, 2L));
+
+        reveno.executeSync(new Defuse());
+        Assert.assertTrue(await(() -> value(reveno, 2L) == 1L));
+        sleep(100);
+        Assert.assertEquals(1L, value(reveno, 2L));
+        reveno.shutdown();
+
+        Reveno restarted = createEngine(e -> e.config().timerTick(5));
+        domain(restarted);
+        restarted.startup();
+        Assert.assertEquals(2L, value(restarted, 1L));
+        Assert.assertEquals(1L, value(restarted, 2L));
+        restarted.shutdown();
+    }
+
+    protected void domain(Reveno reveno) {
+        reveno.domain().command(Schedule.class, Long.class, (c, ctx) -> {
+            ctx.executeTxAction(c);
+            return ctx.repo().getO(Sequence.class, 0L).map(s -> s.value).orElse(0L) + 1;
+        });
+        reveno.domain().transactionAction(Schedule.class, (t, ctx) -> {
+            long id = ctx.timers().schedule(t.fireAt, new Increment(t.counter));
+            ctx.repo().store(0L, new Sequence(id));
+        });
+        reveno.domain().command(FailingSchedule.class, (c, ctx) -> {
+            ctx.executeTxAction(new Schedule(c.counter, c.fireAt));
+            ctx.executeTxAction(c);
+        });
+        reveno.domain().transactionAction(FailingSchedule.class, (t, ctx) -> {
+            throw new IllegalStateException("Schedule is rolled back.");
+        });
+        reveno.domain().command(SchedulePoison.class, (c, ctx) -> ctx.executeTxAction(c));
+        reveno.domain().transactionAction(SchedulePoison.class, (t, ctx) -> {
+            ctx.timers().schedule(t.fireAt, new Poison(t.counter));
+            ctx.repo().store(0L, new Fuse());
+        });
+        reveno.domain().command(Defuse.class, (c, ctx) -> ctx.executeTxAction(c));
+        reveno.domain().transactionAction(Defuse.class, (t, ctx) -> ctx.repo().remove(Fuse.class, 0L));
+        reveno.domain().transactionAction(Poison.class, (t, ctx) -> {
+            if (ctx.repo().has(Fuse.class, 0L)) {
+                throw new IllegalStateException("Timer action fails.");
+            }
+            Counter counter = ctx.repo().get(Counter.class, t.counter);
+            ctx.repo().store(t.counter, new Counter((counter == null ? 0 : counter.value) + 1));
+        });
+        reveno.domain().command(Cancel.class, (c, ctx) -> ctx.executeTxAction(c));
+        reveno.domain().transactionAction(Cancel.class, (t, ctx) -> Assert.assertTrue(ctx.timers().cancel(t.timerId)));
+        reveno.domain().transactionAction(Increment.class, (t, ctx) -> {
+            Counter counter = ctx.repo().get(Counter.class, t.counter);
+            ctx.repo().store(t.counter, new Counter((counter == null ? 0 : counter.value) + 1));
+        });
+        reveno.domain().viewMapper(Counter.class, Counter.class, (id, e, r) -> e);
+    }
+
+    protected long value(Reveno reveno, long id) {
+        Counter counter = reveno.query().find(Counter.class, id);
+        return counter == null ? 0L : counter.value;
+    }
+
+    protected boolean await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            sleep(5);
+        }
+        return true;
+    }
+
+    public static class Schedule {
+        public long counter;
+        public long fireAt;
+
+        public Schedule(long counter, long fireAt) {
+            this.counter = counter;
+            this.fireAt = fireAt;
+        }
+
+        public Schedule() {
+        }
+    }
+
+    public static class FailingSchedule {
+        public long counter;
+        public long fireAt;
+
+        public FailingSchedule(long counter, long fireAt) {
+            this.counter = counter;
+            this.fireAt = fireAt;
+        }
+
+        public FailingSchedule() {
+        }
+    }
+
+    public static class SchedulePoison {
+        public long counter;
+        public long fireAt;
+
+        public SchedulePoison(long counter, long fireAt) {
+            this.counter = counter;
+            this.fireAt = fireAt;
+        }
+
+        public SchedulePoison() {
+        }
+    }
+
+    public static class Poison {
+        public long counter;
+
+        public Poison(long counter) {
+            this.counter = counter;
+        }
+
+        public Poison() {
+        }
+    }
+
+    public static class Defuse {
+    }
+
+    public static class Fuse {
+    }
+
+    public static class Cancel {
+        public long timerId;
+
+        public Cancel(long timerId) {
+            this.timerId = timerId;
+        }
+
+        public Cancel() {
+        }
+    }
+
+    public static class Increment {
+        public long counter;
+
+        public Increment(long counter) {
+            this.counter = counter;
+        }
+
+        public Increment() {
+        }
+    }
+
+    public static class Counter {
+        public final long value;
+
+        public Counter(long value) {
+            this.value = value;
+        }
+    }
+
+    public static class Sequence {
+        public final long value;
+
+        public Sequence(long value) {
+            this.value = value;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.reveno.atp.acceptance.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.reveno.atp.api.Reveno;
+import org.reveno.atp.api.WireSchema;
+import org.reveno.atp.api.commands.Result;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WireCommandsTests extends RevenoBaseTest {
+
+    @Test
+    public void testWireCommands() throws Exception {
+        AtomicInteger encoded = new AtomicInteger();
+        Reveno reveno = createEngine();
+        domain(reveno, encoded);
+        reveno.startup();
+
+        for (int i = 0; i < 10; i++) {
+            Result<Long> r = reveno.<Long>executeCommand(Deposit.class, deposit(i % 2, 10)).get();
+            Assert.assertTrue(r.isSuccess());
+        }
+        Assert.assertEquals(50L, reveno.query().find(Counter.class, 0L).value);
+        Assert.assertEquals(50L, reveno.query().find(Counter.class, 1L).value);
+        // journaled as original bytes
+        Assert.assertEquals(10, encoded.get());
+        reveno.shutdown();
+
+        reveno = createEngine();
+        domain(reveno, encoded);
+        reveno.startup();
+        Assert.assertEquals(50L, reveno.query().find(Counter.class, 0L).value);
+        Assert.assertEquals(50L, reveno.query().find(Counter.class, 1L).value);
+        reveno.shutdown();
+    }
+
+    protected void domain(Reveno reveno, AtomicInteger encoded) {
+        WireSchema<Deposit> schema = new WireSchema<Deposit>() {
+            @Override
+            public Deposit decode(ByteBuffer bytes) {
+                return new Deposit(bytes);
+            }
+
+            @Override
+            public ByteBuffer encode(Deposit object) {
+                encoded.incrementAndGet();
+                return object.bytes;
+            }
+        };
+        reveno.domain().wireSchema(Deposit.class, schema);
+        reveno.domain().command(Deposit.class, Long.class, (c, ctx) -> {
+            ctx.executeTxAction(c);
+            return c.account();
+        });
+        reveno.domain().transactionAction(Deposit.class, (t, ctx) -> {
+            Counter counter = ctx.repo().get(Counter.class, t.account());
+            ctx.repo().store(t.account(), new Counter((counter == null ? 0 : counter.value) + t.amount()));
+        });
+        reveno.domain().viewMapper(Counter.class, Counter.class, (id, e, r) -> e);
+    }
+
+    protected static ByteBuffer deposit(long account, long amount) {
+        ByteBuffer bytes = ByteBuffer.allocate(24);
+        bytes.position(8);
+        bytes.putLong(account).putLong(amount).flip();
+        bytes.position(8);
+        return bytes;
+    }
+
+    /**
+     * Flyweight, which is both command and transaction action.
+     */
+    public static class Deposit {
+        protected final ByteBuffer bytes;
+
+        public Deposit(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        public long account() {
+            return bytes.getLong(bytes.position());
+        }
+
+        public long amount() {
+            return bytes.getLong(bytes.position() + 8);
+        }
+    }
+
+    public static class Counter {
+        public final long value;
+
+        public Counter(long value) {
+            this.value = value;
+        }
+    }
+
+}
@@ -2,4 +2,18 @@ package org.reveno.atp.api;
 
 public interface ClusterManager {
 
+    boolean isClustered();
+
+    /**
+     * @return whether commands can be executed on this node. Slave nodes are
+     * available only for queries.
+     */
+    boolean isMaster();
+
+    /**
+     * @return on master node, count of replicated commands not yet acknowledged by
+     * all slaves, always zero on slave nodes.
+     */
+    long unprocessedCount();
+
 }
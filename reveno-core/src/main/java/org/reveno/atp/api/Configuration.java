@@ -15,12 +15,65 @@ public interface Configuration {
 
     Configuration mutableModelFailover(MutableModelFailover mutableModelFailover);
 
+    /**
+     * CPU consumption of the transactions pipe.
+     */
     Configuration cpuConsumption(CpuConsumption cpuConsumption);
 
+    /**
+     * CPU consumption of the events pipe, {@link CpuConsumption#NORMAL} by default.
+     */
+    Configuration eventsCpuConsumption(CpuConsumption cpuConsumption);
+
+    /**
+     * How stages of the transactions pipe are run, {@link PipelineMode#STAGED} by default.
+     */
+    Configuration pipelineMode(PipelineMode pipelineMode);
+
+    /**
+     * Binds threads of the transactions pipe to the given CPU cores in round robin order.
+     * Works on Linux only, threads stay unbound elsewhere.
+     */
+    Configuration txThreadsAffinity(int... cores);
+
+    /**
+     * Binds threads of the events pipe to the given CPU cores in round robin order.
+     * Works on Linux only, threads stay unbound elsewhere.
+     */
+    Configuration eventsThreadsAffinity(int... cores);
+
+    /**
+     * Amount of threads, which map views of entities changed by journals replayed on startup,
+     * once all of them are restored. Mappers must be thread safe if it's more than one, 1 by default.
+     */
+    Configuration restoreViewsParallelism(int threads);
+
+    /**
+     * Resolution of {@link org.reveno.atp.api.transaction.Timers} in milliseconds, 10 by default.
+     */
+    Configuration timerTick(long millis);
+
     void mapCapacity(int capacity);
 
     void mapLoadFactor(float loadFactor);
 
+    /**
+     * Keeps entities of the given types in columnar (struct-of-arrays) layout, which makes
+     * scans over their fields cache-friendly. Such entities must consist of primitive fields
+     * only, and since every read returns a new copy, they can be changed only by storing the
+     * new instance, which fits immutable model only. Engine with mutable model fails to start
+     * if any columnar entities are configured.
+     */
+    Configuration columnarEntities(Class<?>... entityTypes);
+
+    /**
+     * Keeps entities of the given types in paged arrays indexed directly by id instead
+     * of hash maps, which gives faster lookups, no rehashing and memory proportional to
+     * the amount of entities. Suits types whose ids are assigned sequentially by
+     * {@link org.reveno.atp.api.commands.CommandContext#id(Class)}.
+     */
+    Configuration denseIdEntities(Class<?>... entityTypes);
+
     default void modelType(ModelType modelType) {
         switch (modelType) {
             case MUTABLE:
@@ -34,9 +87,30 @@ public interface Configuration {
 
     enum ModelType {MUTABLE, IMMUTABLE} //可变的, 不可改变的
 
-    enum MutableModelFailover {SNAPSHOTS, COMPENSATING_ACTIONS}
-
-    enum CpuConsumption {LOW, NORMAL, HIGH, PHASED}
+    /**
+     * How the mutable model rolls back failed transactions: {@code SNAPSHOTS} serializes every
+     * entity touched by transaction, {@code FIELD_UNDO} keeps old field values of entities with
+     * primitive or immutable fields only and serializes the rest, {@code COMPENSATING_ACTIONS}
+     * relies on compensating actions of transactions.
+     */
+    enum MutableModelFailover {SNAPSHOTS, COMPENSATING_ACTIONS, FIELD_UNDO}
+
+    /**
+     * {@code STAGED} runs execution, views, journaling and result stages on separate threads,
+     * which gives the best throughput under load. {@code FUSED} runs all of them on the single
+     * thread, completing results and publishing events once the whole batch is journaled, which
+     * saves inter-thread hops and suits latency critical deployments with moderate load.
+     * Events are handled by their own pipe in both modes.
+     */
+    enum PipelineMode {STAGED, FUSED}
+
+    /**
+     * How pipe threads wait for work: {@code LOW} blocks, {@code NORMAL} sleeps, {@code HIGH} yields,
+     * {@code PHASED} spins, yields and then blocks within fixed time windows. {@code ADAPTIVE} spins
+     * and yields while work keeps arriving frequently, and parks right away when it becomes rare,
+     * which gives low latency under load and low CPU usage when idle.
+     */
+    enum CpuConsumption {LOW, NORMAL, HIGH, PHASED, ADAPTIVE}
 
     interface SnapshotConfiguration {
         SnapshotConfiguration atShutdown(boolean takeSnapshot);
@@ -44,10 +118,48 @@ public interface Configuration {
         SnapshotConfiguration every(long transactionCount);
 
         SnapshotConfiguration interval(long millis);
+
+        /**
+         * Writes snapshots partitioned by entity type into chunks, which are encoded
+         * and decoded in parallel. Snapshots of previous format are still loaded.
+         */
+        SnapshotConfiguration chunked(boolean chunked);
+
+        /**
+         * Maps the latest chunked snapshot into memory on startup instead of loading it, so
+         * that every entity is decoded on the first access only. Implies chunked snapshots.
+         * Snapshots of other formats are loaded as usual.
+         */
+        SnapshotConfiguration lazy(boolean lazy);
+
+        /**
+         * Amount of threads used by chunked snapshots, defaults to amount of processors.
+         */
+        SnapshotConfiguration parallelism(int threads);
     }
 
     interface DisruptorConfiguration {
         DisruptorConfiguration bufferSize(int bufferSize);
+
+        /**
+         * Gives every thread, which executes commands, its own lane, which is merged into the
+         * single producer ring buffer by the dedicated thread, so that producers don't contend
+         * with each other. Order of commands is kept only within the same producer thread.
+         */
+        DisruptorConfiguration producerLanes(boolean producerLanes);
+
+        /**
+         * Size of every producer lane, must be of power of 2.
+         */
+        DisruptorConfiguration laneSize(int laneSize);
+
+        /**
+         * Rejects user commands once the count of occupied slots of the transactions buffer,
+         * including ones of producer lanes, reaches the high watermark, until it falls to the low one. System commands, like
+         * snapshotting or sync, are never rejected. High watermark can't exceed the buffer size, plus
+         * the lane size if producer lanes are on. Disabled by default.
+         */
+        DisruptorConfiguration loadShedding(int highWatermark, int lowWatermark);
     }
 
 
@@ -5,6 +5,7 @@ import org.reveno.atp.api.commands.Result;
 import org.reveno.atp.api.dynamic.DynamicCommand;
 import org.reveno.atp.api.query.QueryManager;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -109,6 +110,25 @@ public interface Reveno {
 
     <R> R executeSync(Object command);
 
+    /**
+     * Same as {@link #executeCommand(Object)}, but never waits for free space in the transactions pipe.
+     * If it's full, or sheds load according to {@link Configuration.DisruptorConfiguration#loadShedding(int, int)},
+     * returned future is completed right away with {@link org.reveno.atp.api.exceptions.CommandRejectedException}.
+     *
+     * @param command to be executed.
+     */
+    <R> CompletableFuture<Result<R>> tryExecuteCommand(Object command);
+
+    /**
+     * Same as {@link #executeCommand(Object)}, but takes the command in binary form of {@link WireSchema},
+     * registered for its type by {@link RevenoManager#wireSchema(Class, WireSchema)}. Given bytes
+     * must not be changed until the command is executed.
+     *
+     * @param commandType type of the command.
+     * @param bytes of the command between position and limit.
+     */
+    <R> CompletableFuture<Result<R>> executeCommand(Class<?> commandType, ByteBuffer bytes);
+
     /**
      * Same as {@link #executeCommand(Object)}, but allows to execute a batch of
      * commands as a single atomic transaction.
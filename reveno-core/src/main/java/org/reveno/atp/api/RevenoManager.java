@@ -10,6 +10,7 @@ import org.reveno.atp.core.api.serialization.TransactionInfoSerializer;
 import org.reveno.atp.core.api.storage.FoldersStorage;
 import org.reveno.atp.core.api.storage.SnapshotStorage;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.BiConsumer;
@@ -70,6 +71,16 @@ public interface RevenoManager {
      */
     <C> void command(Class<C> commandType, BiConsumer<C, CommandContext> handler);
 
+    /**
+     * Registers binary form of the command or transaction action type, so that objects of it are
+     * submitted by {@link Reveno#executeCommand(Class, ByteBuffer)}, and journaled or replicated
+     * as their original bytes instead of being serialized. Handlers are registered as usual.
+     *
+     * @param type of commands or transaction actions
+     * @param schema decoding and encoding them
+     */
+    <T> void wireSchema(Class<T> type, WireSchema<T> schema);
+
     /**
      * TODO
      *
@@ -0,0 +1,27 @@
+package org.reveno.atp.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of commands or transaction actions, which already arrive serialized, e.g. from
+ * gateway. Objects of such types are written to journals and replicated as their own bytes,
+ * without re-encoding, and are decoded from bytes on restore.
+ * <p>
+ * Decoded object is expected to be a flyweight over the given bytes, which reads fields
+ * lazily, so that neither decoding nor encoding copies or parses the whole payload.
+ *
+ * @param <T> type of commands or transaction actions
+ */
+public interface WireSchema<T> {
+
+    /**
+     * @param bytes exclusively owned by the returned object from now on
+     */
+    T decode(ByteBuffer bytes);
+
+    /**
+     * @return bytes of the object between position and limit, e.g. the ones it was decoded from
+     */
+    ByteBuffer encode(T object);
+
+}
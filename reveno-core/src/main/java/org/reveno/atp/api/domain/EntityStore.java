@@ -0,0 +1,56 @@
+package org.reveno.atp.api.domain;
+
+/**
+ * Handle to all entities of a single type in {@link Repository}. It is resolved once
+ * by {@link Repository#entityStore(Class)}, so that subsequent operations don't have
+ * to look the type up on every call.
+ * <p>
+ * Handles obtained from the repository of the engine stay valid for its whole
+ * lifetime, so they can be kept e.g. in the fields of command or transaction handlers.
+ *
+ * @param <T> type of entities
+ */
+public interface EntityStore<T> {
+
+    Class<T> type();
+
+    /**
+     * Same as {@link Repository#get(Class, long)}.
+     */
+    T get(long id);
+
+    /**
+     * Same as {@link Repository#getClean(Class, long)}.
+     */
+    T getClean(long id);
+
+    boolean has(long id);
+
+    /**
+     * Creates handle which simply delegates to the given repository.
+     */
+    static <T> EntityStore<T> of(Repository repository, Class<T> type) {
+        return new EntityStore<T>() {
+            @Override
+            public Class<T> type() {
+                return type;
+            }
+
+            @Override
+            public T get(long id) {
+                return repository.get(type, id);
+            }
+
+            @Override
+            public T getClean(long id) {
+                return repository.getClean(type, id);
+            }
+
+            @Override
+            public boolean has(long id) {
+                return repository.has(type, id);
+            }
+        };
+    }
+
+}
@@ -51,6 +51,17 @@ public interface Repository {
 
     Map<Long, Object> getEntitiesClean(Class<?> entityType);
 
+    /**
+     * Resolves handle to the entities of the given type, which is cheaper to use than
+     * the methods of repository itself, since the type is looked up only once.
+     *
+     * @param entityType type of entities
+     * @return handle to the entities of given type
+     */
+    default <T> EntityStore<T> entityStore(Class<T> entityType) {
+        return EntityStore.of(this, entityType);
+    }
+
     /**
      * All entity types registered in that repository.
      *
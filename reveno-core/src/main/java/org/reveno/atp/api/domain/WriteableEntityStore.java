@@ -0,0 +1,57 @@
+package org.reveno.atp.api.domain;
+
+/**
+ * Writeable version of {@link EntityStore}, resolved by {@link WriteableRepository#entityStore(Class)}.
+ *
+ * @param <T> type of entities
+ */
+public interface WriteableEntityStore<T> extends EntityStore<T> {
+
+    /**
+     * Same as {@link WriteableRepository#store(long, Class, Object)}.
+     */
+    T store(long id, T entity);
+
+    /**
+     * Same as {@link WriteableRepository#remove(Class, long)}.
+     */
+    T remove(long id);
+
+    /**
+     * Creates handle which simply delegates to the given repository.
+     */
+    static <T> WriteableEntityStore<T> of(WriteableRepository repository, Class<T> type) {
+        return new WriteableEntityStore<T>() {
+            @Override
+            public Class<T> type() {
+                return type;
+            }
+
+            @Override
+            public T get(long id) {
+                return repository.get(type, id);
+            }
+
+            @Override
+            public T getClean(long id) {
+                return repository.getClean(type, id);
+            }
+
+            @Override
+            public boolean has(long id) {
+                return repository.has(type, id);
+            }
+
+            @Override
+            public T store(long id, T entity) {
+                return repository.store(id, type, entity);
+            }
+
+            @Override
+            public T remove(long id) {
+                return repository.remove(type, id);
+            }
+        };
+    }
+
+}
@@ -113,4 +113,9 @@ public interface WriteableRepository extends Repository {
 
     void load(Map<Class<?>, Map<Long, Object>> map);
 
+    @Override
+    default <T> WriteableEntityStore<T> entityStore(Class<T> entityType) {
+        return WriteableEntityStore.of(this, entityType);
+    }
+
 }
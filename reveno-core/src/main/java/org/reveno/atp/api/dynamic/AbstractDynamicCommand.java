@@ -1,7 +1,13 @@
 package org.reveno.atp.api.dynamic;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * Base of generated dynamic commands. Arguments are kept either in the map, or, if they
+ * were declared by {@link DirectTransactionBuilder#arg(String, Class)}, in the typed fields
+ * of the generated class described by its {@link DynamicSchema}.
+ */
 public class AbstractDynamicCommand {
     protected Map<String, Object> args;
 
@@ -13,26 +19,91 @@ public class AbstractDynamicCommand {
     }
 
     public AbstractDynamicCommand args(Map<String, Object> args) {
-        this.args = args;
+        DynamicSchema schema = schema();
+        if (schema == null) {
+            this.args = args;
+        } else {
+            args.forEach((name, value) -> schema.set(this, schema.slot(name), value));
+        }
         return this;
     }
 
     public Map<String, Object> args() {
-        return args;
+        DynamicSchema schema = schema();
+        if (schema == null) {
+            return args;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < schema.size(); i++) {
+            result.put(schema.name(i), schema.get(this, i));
+        }
+        return result;
+    }
+
+    public AbstractDynamicCommand arg(String name, Object value) {
+        DynamicSchema schema = schema();
+        if (schema == null) {
+            map().put(name, value);
+        } else {
+            schema.set(this, schema.slot(name), value);
+        }
+        return this;
+    }
+
+    public AbstractDynamicCommand arg(String name, long value) {
+        DynamicSchema schema = schema();
+        if (schema == null) {
+            map().put(name, value);
+        } else {
+            schema.setLong(this, schema.slot(name), value);
+        }
+        return this;
+    }
+
+    public AbstractDynamicCommand arg(String name, int value) {
+        DynamicSchema schema = schema();
+        if (schema == null) {
+            map().put(name, value);
+        } else {
+            schema.setInt(this, schema.slot(name), value);
+        }
+        return this;
+    }
+
+    public AbstractDynamicCommand arg(String name, double value) {
+        DynamicSchema schema = schema();
+        if (schema == null) {
+            map().put(name, value);
+        } else {
+            schema.setDouble(this, schema.slot(name), value);
+        }
+        return this;
+    }
+
+    public AbstractDynamicCommand arg(String name, boolean value) {
+        DynamicSchema schema = schema();
+        if (schema == null) {
+            map().put(name, value);
+        } else {
+            schema.setBoolean(this, schema.slot(name), value);
+        }
+        return this;
     }
 
     @SuppressWarnings("unchecked")
     public <T> T arg() {
-        return (T) args.values().iterator().next();
+        DynamicSchema schema = schema();
+        return schema == null ? (T) args.values().iterator().next() : (T) schema.get(this, 0);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T arg(String name) {
-        return (T) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (T) args.get(name) : (T) schema.get(this, schema.slot(name));
     }
 
     public byte byteArg(String name) {
-        return (byte) args.get(name);
+        return (byte) arg(name);
     }
 
     public byte byteArg() {
@@ -40,7 +111,7 @@ public class AbstractDynamicCommand {
     }
 
     public short shortArg(String name) {
-        return (short) args.get(name);
+        return (short) arg(name);
     }
 
     public short shortArg() {
@@ -48,7 +119,7 @@ public class AbstractDynamicCommand {
     }
 
     public float floatArg(String name) {
-        return (float) args.get(name);
+        return (float) arg(name);
     }
 
     public float floatArg() {
@@ -56,15 +127,17 @@ public class AbstractDynamicCommand {
     }
 
     public double doubleArg(String name) {
-        return (double) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (double) args.get(name) : schema.getDouble(this, schema.slot(name));
     }
 
     public double doubleArg() {
-        return (double) arg();
+        DynamicSchema schema = schema();
+        return schema == null ? (double) arg() : schema.getDouble(this, 0);
     }
 
     public char charArg(String name) {
-        return (char) args.get(name);
+        return (char) arg(name);
     }
 
     public char charArg() {
@@ -72,27 +145,47 @@ public class AbstractDynamicCommand {
     }
 
     public long longArg(String name) {
-        return (long) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (long) args.get(name) : schema.getLong(this, schema.slot(name));
     }
 
     public long longArg() {
-        return (long) arg();
+        DynamicSchema schema = schema();
+        return schema == null ? (long) arg() : schema.getLong(this, 0);
     }
 
     public int intArg(String name) {
-        return (int) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (int) args.get(name) : schema.getInt(this, schema.slot(name));
     }
 
     public int intArg() {
-        return (int) arg();
+        DynamicSchema schema = schema();
+        return schema == null ? (int) arg() : schema.getInt(this, 0);
     }
 
     public boolean bool(String name) {
-        return (boolean) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (boolean) args.get(name) : schema.getBoolean(this, schema.slot(name));
     }
 
     public boolean bool() {
-        return (boolean) arg();
+        DynamicSchema schema = schema();
+        return schema == null ? (boolean) arg() : schema.getBoolean(this, 0);
+    }
+
+    /**
+     * @return schema of typed arguments, or {@code null} if arguments are kept in map
+     */
+    public DynamicSchema schema() {
+        return DynamicSchema.of(getClass());
+    }
+
+    protected Map<String, Object> map() {
+        if (args == null) {
+            args = new LinkedHashMap<>();
+        }
+        return args;
     }
 
 }
@@ -2,33 +2,43 @@ package org.reveno.atp.api.dynamic;
 
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Base of generated dynamic transactions. Arguments are kept either in the map, or in the
+ * typed fields of the generated class, the same way as in its {@link AbstractDynamicCommand}.
+ */
 public class AbstractDynamicTransaction {
-    protected Object2LongOpenHashMap<Class<?>> ids = new Object2LongOpenHashMap<>();
-    protected Map<String, Object> args = new LinkedHashMap<>();
+    protected Object2LongOpenHashMap<Class<?>> ids;
+    protected Map<String, Object> args;
 
     public AbstractDynamicTransaction() {
     }
 
     public Optional<Object> opArg(String name) {
-        return Optional.ofNullable(args.get(name));
+        DynamicSchema schema = schema();
+        if (schema == null) {
+            return Optional.ofNullable(args().get(name));
+        }
+        return schema.has(name) ? Optional.ofNullable(schema.get(this, schema.slot(name))) : Optional.empty();
     }
 
     @SuppressWarnings("unchecked")
     public <T> T arg() {
-        return (T) args.values().iterator().next();
+        DynamicSchema schema = schema();
+        return schema == null ? (T) args().values().iterator().next() : (T) schema.get(this, 0);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T arg(String name) {
-        return (T) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (T) args().get(name) : (T) schema.get(this, schema.slot(name));
     }
 
     public byte byteArg(String name) {
-        return (byte) args.get(name);
+        return (byte) arg(name);
     }
 
     public byte byteArg() {
@@ -36,7 +46,7 @@ public class AbstractDynamicTransaction {
     }
 
     public short shortArg(String name) {
-        return (short) args.get(name);
+        return (short) arg(name);
     }
 
     public short shortArg() {
@@ -44,7 +54,7 @@ public class AbstractDynamicTransaction {
     }
 
     public float floatArg(String name) {
-        return (float) args.get(name);
+        return (float) arg(name);
     }
 
     public float floatArg() {
@@ -52,15 +62,17 @@ public class AbstractDynamicTransaction {
     }
 
     public double doubleArg(String name) {
-        return (double) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (double) args().get(name) : schema.getDouble(this, schema.slot(name));
     }
 
     public double doubleArg() {
-        return (double) arg();
+        DynamicSchema schema = schema();
+        return schema == null ? (double) arg() : schema.getDouble(this, 0);
     }
 
     public char charArg(String name) {
-        return (char) args.get(name);
+        return (char) arg(name);
     }
 
     public char charArg() {
@@ -68,35 +80,62 @@ public class AbstractDynamicTransaction {
     }
 
     public long longArg(String name) {
-        return (long) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (long) args().get(name) : schema.getLong(this, schema.slot(name));
     }
 
     public long longArg() {
-        return (long) arg();
+        DynamicSchema schema = schema();
+        return schema == null ? (long) arg() : schema.getLong(this, 0);
     }
 
     public int intArg(String name) {
-        return (int) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (int) args().get(name) : schema.getInt(this, schema.slot(name));
     }
 
     public int intArg() {
-        return (int) arg();
+        DynamicSchema schema = schema();
+        return schema == null ? (int) arg() : schema.getInt(this, 0);
     }
 
     public boolean bool(String name) {
-        return (boolean) args.get(name);
+        DynamicSchema schema = schema();
+        return schema == null ? (boolean) args().get(name) : schema.getBoolean(this, schema.slot(name));
     }
 
     public boolean bool() {
-        return (boolean) arg();
+        DynamicSchema schema = schema();
+        return schema == null ? (boolean) arg() : schema.getBoolean(this, 0);
     }
 
     public long id() {
-        return ids.values().iterator().nextLong();
+        return ids().values().iterator().nextLong();
     }
 
     public long id(Class<?> type) {
-        return ids.getLong(type);
+        return ids().getLong(type);
+    }
+
+    /**
+     * @return schema of typed arguments, or {@code null} if arguments are kept in map
+     */
+    public DynamicSchema schema() {
+        return DynamicSchema.of(getClass());
+    }
+
+    /**
+     * @return arguments kept in map, which is absent in transactions without them
+     */
+    protected Map<String, Object> args() {
+        return args == null ? Collections.emptyMap() : args;
+    }
+
+    protected Object2LongOpenHashMap<Class<?>> ids() {
+        if (ids == null) {
+            ids = new Object2LongOpenHashMap<>();
+        }
+        return ids;
     }
 
 }
@@ -1,6 +1,9 @@
 package org.reveno.atp.api.dynamic;
 
 import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.Ownership;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
 import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
 import org.reveno.atp.api.commands.CommandContext;
 import org.reveno.atp.api.transaction.TransactionContext;
@@ -10,8 +13,13 @@ import org.reveno.atp.core.engine.components.TransactionsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.BiConsumer;
@@ -26,6 +34,7 @@ public class DirectTransactionBuilder {
 
     protected final String name;
     protected final Set<Class<?>> entityTypes = new HashSet<>();
+    protected final Map<String, Class<?>> args = new LinkedHashMap<>();
     protected final BiConsumer<AbstractDynamicTransaction, TransactionContext> transactionHandler;
     protected final SerializersChain serializer;
     protected final TransactionsManager transactionsManager;
@@ -60,34 +69,57 @@ public class DirectTransactionBuilder {
     }
 
     protected void init() {
+        dynamicCommand = generate(AbstractDynamicCommand.class, COMMAND_NAME_PREFIX);
+        dynamicTransaction = generate(AbstractDynamicTransaction.class, TRANSACTION_NAME_PREFIX);
+        serializer.registerTransactionType(dynamicCommand);
+        serializer.registerTransactionType(dynamicTransaction);
+    }
+
+    protected <T> Class<? extends T> generate(Class<T> base, String prefix) {
+        Class<? extends T> type = null;
         try {
-            dynamicCommand = new ByteBuddy()
-                    .subclass(AbstractDynamicCommand.class)
-                    .name(PACKAGE + COMMAND_NAME_PREFIX + name)
-                    .make()
+            DynamicType.Builder<T> builder = new ByteBuddy().subclass(base).name(PACKAGE + prefix + name);
+            if (args.size() > 0) {
+                for (Map.Entry<String, Class<?>> arg : args.entrySet()) {
+                    builder = builder.defineField(arg.getKey(), arg.getValue(), Visibility.PUBLIC);
+                }
+                builder = builder.defineField(DynamicSchema.SCHEMA_FIELD, DynamicSchema.class, Visibility.PUBLIC, Ownership.STATIC);
+            }
+            type = builder.make()
                     .load(classLoader, ClassLoadingStrategy.Default.INJECTION)
                     .getLoaded();
         } catch (Exception e) {
             try {
-                dynamicCommand = (Class<? extends AbstractDynamicCommand>) classLoader.loadClass(PACKAGE + COMMAND_NAME_PREFIX + name);
+                type = (Class<? extends T>) classLoader.loadClass(PACKAGE + prefix + name);
             } catch (ClassNotFoundException ignored) {
             }
         }
-        try {
-            dynamicTransaction = new ByteBuddy()
-                    .subclass(AbstractDynamicTransaction.class)
-                    .name(PACKAGE + TRANSACTION_NAME_PREFIX + name)
-                    .make()
-                    .load(classLoader, ClassLoadingStrategy.Default.INJECTION)
-                    .getLoaded();
-        } catch (Exception e) {
+        if (type != null && args.size() > 0) {
             try {
-                dynamicTransaction = (Class<? extends AbstractDynamicTransaction>) classLoader.loadClass(PACKAGE + TRANSACTION_NAME_PREFIX + name);
-            } catch (ClassNotFoundException ignored) {
+                if (type.getField(DynamicSchema.SCHEMA_FIELD).get(null) == null) {
+                    type.getField(DynamicSchema.SCHEMA_FIELD).set(null,
+                            new DynamicSchema(type, args.keySet().toArray(new String[args.size()])));
+                }
+            } catch (NoSuchFieldException | IllegalAccessException e) {
+                throw new IllegalStateException(String.format("Dynamic command %s was already registered without typed arguments.", name), e);
             }
         }
-        serializer.registerTransactionType(dynamicCommand);
-        serializer.registerTransactionType(dynamicTransaction);
+        return type;
+    }
+
+    /**
+     * Declares typed argument, so that generated command and transaction keep it in their
+     * own field instead of the map of arguments. Primitives are neither boxed nor copied
+     * through maps then. Arguments are taken by {@code xxxArg()} calls in declaration order.
+     */
+    public DirectTransactionBuilder arg(String name, Class<?> type) {
+        if (!isIdentifier(name) || name.equals("args") || name.equals("ids")) {
+            throw new IllegalArgumentException(String.format("Illegal name of argument: %s.", name));
+        }
+        if (args.put(name, type) != null) {
+            throw new IllegalArgumentException(String.format("Argument %s is already declared.", name));
+        }
+        return this;
     }
 
     public DirectTransactionBuilder uniqueIdFor(Class<?>... entityTypes) {
@@ -115,6 +147,10 @@ public class DirectTransactionBuilder {
     public DynamicCommand command() {
         init();
 
+        final DynamicSchema commandSchema = DynamicSchema.of(dynamicCommand);
+        final DynamicSchema transactionSchema = DynamicSchema.of(dynamicTransaction);
+        final Class<?>[] idTypes = entityTypes.toArray(new Class<?>[entityTypes.size()]);
+        final MethodHandle transactionConstructor = constructor(dynamicTransaction);
         commandsManager.register(dynamicCommand, Object.class, (a, b) -> {
             Object result = null;
             if (commandInterceptor.isPresent()) {
@@ -124,19 +160,26 @@ public class DirectTransactionBuilder {
                     return null;
                 }
             }
+            AbstractDynamicTransaction tx;
             try {
-                AbstractDynamicTransaction tx = dynamicTransaction.newInstance();
-                tx.args.putAll(a.args);
-                entityTypes.forEach(c -> tx.ids.put(c, b.id(c)));
-
-                if (result == null && entityReturnIdType.isPresent()) {
-                    result = tx.ids.get(entityReturnIdType.get());
-                }
+                tx = (AbstractDynamicTransaction) transactionConstructor.invokeExact();
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+            if (commandSchema != null) {
+                commandSchema.copy(a, transactionSchema, tx);
+            } else if (a.args != null) {
+                tx.args = new LinkedHashMap<>(a.args);
+            }
+            for (Class<?> idType : idTypes) {
+                tx.ids().put(idType, b.id(idType));
+            }
 
-                b.executeTxAction(tx);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+            if (result == null && entityReturnIdType.isPresent()) {
+                result = tx.ids().getLong(entityReturnIdType.get());
             }
+
+            b.executeTxAction(tx);
             return result;
         });
         transactionsManager.registerTransaction((Class<AbstractDynamicTransaction>) dynamicTransaction, transactionHandler);
@@ -144,4 +187,25 @@ public class DirectTransactionBuilder {
         return new DynamicCommand(dynamicCommand, dynamicTransaction);
     }
 
+    protected static MethodHandle constructor(Class<?> type) {
+        try {
+            return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(AbstractDynamicTransaction.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static boolean isIdentifier(String name) {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 }
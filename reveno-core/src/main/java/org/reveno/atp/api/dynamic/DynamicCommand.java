@@ -1,14 +1,24 @@
 package org.reveno.atp.api.dynamic;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Map;
 
 public class DynamicCommand {
     protected final Class<? extends AbstractDynamicCommand> commandType;
     protected final Class<? extends AbstractDynamicTransaction> transactionType;
+    protected final MethodHandle constructor;
 
     public DynamicCommand(Class<? extends AbstractDynamicCommand> commandType, Class<? extends AbstractDynamicTransaction> transactionType) {
         this.commandType = commandType;
         this.transactionType = transactionType;
+        try {
+            this.constructor = MethodHandles.publicLookup().findConstructor(commandType, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(AbstractDynamicCommand.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public Class<?> commandType() {
@@ -19,8 +29,26 @@ public class DynamicCommand {
         return transactionType;
     }
 
+    /**
+     * @return schema of typed arguments, or {@code null} if arguments are kept in map
+     */
+    public DynamicSchema schema() {
+        return DynamicSchema.of(commandType);
+    }
+
+    /**
+     * Creates empty command, whose arguments are set by {@code arg(name, value)} calls.
+     */
+    public AbstractDynamicCommand newCommand() {
+        try {
+            return (AbstractDynamicCommand) constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
     public AbstractDynamicCommand newCommand(Map<String, Object> args) throws InstantiationException, IllegalAccessException {
-        return commandType.newInstance().args(args);
+        return newCommand().args(args);
     }
 
 }
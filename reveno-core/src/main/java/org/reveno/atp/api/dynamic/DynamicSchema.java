@@ -0,0 +1,249 @@
+package org.reveno.atp.api.dynamic;
+
+import org.reveno.atp.utils.Exceptions;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed arguments of the generated dynamic command or transaction class, which are kept
+ * in its own fields, so that primitives are neither boxed nor put into maps. Every argument
+ * has a slot, which is the same for the command and its transaction.
+ */
+public class DynamicSchema {
+    /**
+     * Static field of the generated class, which keeps its schema.
+     */
+    public static final String SCHEMA_FIELD = "$schema";
+    protected static final ClassValue<DynamicSchema> schemas = new ClassValue<DynamicSchema>() {
+        @Override
+        protected DynamicSchema computeValue(Class<?> type) {
+            try {
+                return (DynamicSchema) type.getField(SCHEMA_FIELD).get(null);
+            } catch (NoSuchFieldException e) {
+                return null;
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+    protected final String[] names;
+    protected final Class<?>[] types;
+    protected final Map<String, Integer> slots = new HashMap<>();
+    protected final MethodHandle[] getters;
+    protected final MethodHandle[] setters;
+    protected final MethodHandle[] boxedGetters;
+    protected final MethodHandle[] boxedSetters;
+
+    public DynamicSchema(Class<?> type, String[] names) {
+        this.names = names;
+        this.types = new Class<?>[names.length];
+        this.getters = new MethodHandle[names.length];
+        this.setters = new MethodHandle[names.length];
+        this.boxedGetters = new MethodHandle[names.length];
+        this.boxedSetters = new MethodHandle[names.length];
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            for (int i = 0; i < names.length; i++) {
+                Field field = type.getField(names[i]);
+                Class<?> t = field.getType().isPrimitive() ? field.getType() : Object.class;
+                types[i] = field.getType();
+                slots.put(names[i], i);
+                getters[i] = lookup.unreflectGetter(field).asType(MethodType.methodType(t, Object.class));
+                setters[i] = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, t));
+                boxedGetters[i] = getters[i].asType(MethodType.methodType(Object.class, Object.class));
+                boxedSetters[i] = setters[i].asType(MethodType.methodType(void.class, Object.class, Object.class));
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return schema of the generated class, or {@code null} if its arguments are kept in map
+     */
+    public static DynamicSchema of(Class<?> type) {
+        return schemas.get(type);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int slot) {
+        return names[slot];
+    }
+
+    public Class<?> type(int slot) {
+        return types[slot];
+    }
+
+    public int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            throw new IllegalArgumentException(String.format("Unknown argument %s, declared are %s.", name, slots.keySet()));
+        }
+        return slot;
+    }
+
+    public boolean has(String name) {
+        return slots.containsKey(name);
+    }
+
+    public Object get(Object target, int slot) {
+        try {
+            return boxedGetters[slot].invokeExact(target);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    /**
+     * Sets the argument, converting numbers to its declared primitive type.
+     */
+    public void set(Object target, int slot, Object value) {
+        if (value instanceof Number && types[slot].isPrimitive()) {
+            value = convert((Number) value, types[slot]);
+        }
+        try {
+            boxedSetters[slot].invokeExact(target, value);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    public long getLong(Object target, int slot) {
+        if (types[slot] != long.class) {
+            return (long) get(target, slot);
+        }
+        try {
+            return (long) getters[slot].invokeExact(target);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    public void setLong(Object target, int slot, long value) {
+        if (types[slot] != long.class) {
+            set(target, slot, value);
+            return;
+        }
+        try {
+            setters[slot].invokeExact(target, value);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    public int getInt(Object target, int slot) {
+        if (types[slot] != int.class) {
+            return (int) get(target, slot);
+        }
+        try {
+            return (int) getters[slot].invokeExact(target);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    public void setInt(Object target, int slot, int value) {
+        if (types[slot] != int.class) {
+            set(target, slot, value);
+            return;
+        }
+        try {
+            setters[slot].invokeExact(target, value);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    public double getDouble(Object target, int slot) {
+        if (types[slot] != double.class) {
+            return (double) get(target, slot);
+        }
+        try {
+            return (double) getters[slot].invokeExact(target);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    public void setDouble(Object target, int slot, double value) {
+        if (types[slot] != double.class) {
+            set(target, slot, value);
+            return;
+        }
+        try {
+            setters[slot].invokeExact(target, value);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    public boolean getBoolean(Object target, int slot) {
+        if (types[slot] != boolean.class) {
+            return (boolean) get(target, slot);
+        }
+        try {
+            return (boolean) getters[slot].invokeExact(target);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    public void setBoolean(Object target, int slot, boolean value) {
+        if (types[slot] != boolean.class) {
+            set(target, slot, value);
+            return;
+        }
+        try {
+            setters[slot].invokeExact(target, value);
+        } catch (Throwable t) {
+            throw Exceptions.runtime(t);
+        }
+    }
+
+    protected static Object convert(Number value, Class<?> type) {
+        if (type == long.class) {
+            return value.longValue();
+        } else if (type == int.class) {
+            return value.intValue();
+        } else if (type == double.class) {
+            return value.doubleValue();
+        } else if (type == float.class) {
+            return value.floatValue();
+        } else if (type == short.class) {
+            return value.shortValue();
+        } else if (type == byte.class) {
+            return value.byteValue();
+        }
+        return value;
+    }
+
+    /**
+     * Copies all arguments into the target of another schema with the same arguments,
+     * boxing only those of types not supported natively.
+     */
+    public void copy(Object from, DynamicSchema toSchema, Object to) {
+        for (int i = 0; i < names.length; i++) {
+            Class<?> t = types[i];
+            if (t == long.class) {
+                toSchema.setLong(to, i, getLong(from, i));
+            } else if (t == int.class) {
+                toSchema.setInt(to, i, getInt(from, i));
+            } else if (t == double.class) {
+                toSchema.setDouble(to, i, getDouble(from, i));
+            } else if (t == boolean.class) {
+                toSchema.setBoolean(to, i, getBoolean(from, i));
+            } else {
+                toSchema.set(to, i, get(from, i));
+            }
+        }
+    }
+
+}
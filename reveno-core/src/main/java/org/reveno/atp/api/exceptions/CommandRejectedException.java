@@ -0,0 +1,14 @@
+package org.reveno.atp.api.exceptions;
+
+/**
+ * Result of the command, which wasn't accepted since the pipe was full or shedding load.
+ * Has no stack trace, so that rejections stay cheap under overload.
+ */
+public class CommandRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 6305724312759038157L;
+
+    public CommandRejectedException(String message) {
+        super(message, null, false, false);
+    }
+
+}
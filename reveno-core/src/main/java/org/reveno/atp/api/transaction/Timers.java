@@ -0,0 +1,25 @@
+package org.reveno.atp.api.transaction;
+
+/**
+ * Timers of the domain model, which execute transaction actions at the given time. Timers are
+ * kept in the repository, so they are snapshotted and restored along with the model, and are
+ * fired by the journaled system command, so that replay doesn't depend on the clock.
+ */
+public interface Timers {
+
+    /**
+     * Schedules transaction action, which must be registered as usual.
+     *
+     * @param fireAt time in milliseconds since epoch, which must be taken from the transaction
+     *               action itself rather than from the clock, so that replay schedules the same
+     * @param transactionAction to be executed once the time comes
+     * @return id of the timer
+     */
+    long schedule(long fireAt, Object transactionAction);
+
+    /**
+     * @return false if there is no pending timer with the given id
+     */
+    boolean cancel(long timerId);
+
+}
@@ -0,0 +1,21 @@
+package org.reveno.atp.api.transaction;
+
+/**
+ * Summary of the batch of transactions, which passed some stage of the pipe at once.
+ * Transaction ids are assigned at {@link TransactionStage#TRANSACTION} stage, so they
+ * are not known at {@link TransactionStage#REPLICATION} stage yet.
+ */
+public interface TransactionBatch {
+
+    long firstTransactionId();
+
+    long lastTransactionId();
+
+    int count();
+
+    /**
+     * @return amount of transactions of the batch, which were aborted at the stage
+     */
+    int abortedCount();
+
+}
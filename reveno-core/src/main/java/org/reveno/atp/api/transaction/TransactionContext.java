@@ -12,4 +12,6 @@ public interface TransactionContext {
 
     Map<Object, Object> data();
 
+    Timers timers();
+
 }
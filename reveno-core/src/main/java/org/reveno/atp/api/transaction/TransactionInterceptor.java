@@ -11,10 +11,26 @@ import org.reveno.atp.core.api.Destroyable;
  *
  * Good practice is to use it for some statistics gathering, snapshotting logic, etc.
  *
+ * Interceptors which don't need every transaction, like metrics or audit, should
+ * rather do their work once per batch, in onBatchEnd.
  */
 public interface TransactionInterceptor extends Destroyable {
 
-    void intercept(long transactionId, long time, long flags,
-                   WriteableRepository repository, TransactionStage stage);
+    default void intercept(long transactionId, long time, long flags,
+                           WriteableRepository repository, TransactionStage stage) {
+    }
+
+    /*
+     * Called before the first transaction of the batch is intercepted at the stage.
+     */
+    default void onBatchStart(TransactionStage stage) {
+    }
+
+    /*
+     * Called once the last transaction of the batch passed the stage. The batch
+     * instance is reused, so it must not be kept.
+     */
+    default void onBatchEnd(TransactionBatch batch, WriteableRepository repository, TransactionStage stage) {
+    }
 
 }
@@ -28,6 +28,7 @@ public class NamedThreadFactory implements ThreadFactory {
     private final ThreadGroup group;
     private final AtomicInteger threadNumber = new AtomicInteger(1);
     private final String namePrefix;
+    private final int[] cores;
 
     /**
      * Creates a new ThreadFactory where threads are created with a name prefix
@@ -38,6 +39,18 @@ public class NamedThreadFactory implements ThreadFactory {
      *               {@link java.util.concurrent.Executors#defaultThreadFactory()}.
      */
     public NamedThreadFactory(String prefix) {
+        this(prefix, new int[0]);
+    }
+
+    /**
+     * Creates a new ThreadFactory, which binds its threads to the given CPU cores
+     * in round robin order with {@link ThreadAffinity}.
+     *
+     * @param prefix Thread name prefix.
+     * @param cores  cores to bind threads to, no binding happens if empty.
+     */
+    public NamedThreadFactory(String prefix, int... cores) {
+        this.cores = cores;
         SecurityManager s = System.getSecurityManager();
         group = (s != null) ? s.getThreadGroup()
                 : Thread.currentThread().getThreadGroup();
@@ -49,8 +62,17 @@ public class NamedThreadFactory implements ThreadFactory {
 
     @Override
     public Thread newThread(Runnable r) {
-        Thread t = new Thread(group, r,
-                namePrefix + threadNumber.getAndIncrement(),
+        int number = threadNumber.getAndIncrement();
+        Runnable runnable = r;
+        if (cores.length > 0) {
+            int core = cores[(number - 1) % cores.length];
+            runnable = () -> {
+                ThreadAffinity.bind(core);
+                r.run();
+            };
+        }
+        Thread t = new Thread(group, runnable,
+                namePrefix + number,
                 0);
         if (t.isDaemon()) {
             t.setDaemon(false);
@@ -0,0 +1,49 @@
+package org.reveno.atp.commons;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Binds threads to CPU cores. Since JDK has no API for that, {@code taskset} utility is used
+ * with the native id of the thread, so it works on Linux only. Failure to bind is not fatal,
+ * thread just stays unbound.
+ */
+public abstract class ThreadAffinity {
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadAffinity.class);
+    private static final File THREAD_SELF = new File("/proc/thread-self");
+
+    /**
+     * Binds the current thread to the given core.
+     *
+     * @return whether thread was bound
+     */
+    public static boolean bind(int core) {
+        if (!THREAD_SELF.exists()) {
+            LOG.warn("Thread affinity is not supported on this platform.");
+            return false;
+        }
+        try {
+            String tid = Files.readSymbolicLink(Paths.get(THREAD_SELF.getPath())).getFileName().toString();
+            Process taskset = new ProcessBuilder("taskset", "-pc", Integer.toString(core), tid)
+                    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.PIPE).start();
+            while (taskset.getInputStream().read() != -1) {
+                // output is only drained
+            }
+            if (taskset.waitFor() == 0) {
+                LOG.info("Thread {} is bound to core {}.", Thread.currentThread().getName(), core);
+                return true;
+            }
+            LOG.warn("Can't bind thread {} to core {}.", Thread.currentThread().getName(), core);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.warn("Can't bind thread {} to core {}: {}", Thread.currentThread().getName(), core, e.getMessage());
+        }
+        return false;
+    }
+
+}
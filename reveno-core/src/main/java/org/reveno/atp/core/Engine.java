@@ -1,7 +1,8 @@
 package org.reveno.atp.core;
 
 import org.reveno.atp.api.*;
-import org.reveno.atp.api.Configuration.CpuConsumption;
+import org.reveno.atp.api.Configuration.ModelType;
+import org.reveno.atp.api.Configuration.MutableModelFailover;
 import org.reveno.atp.api.commands.CommandContext;
 import org.reveno.atp.api.commands.EmptyResult;
 import org.reveno.atp.api.commands.Result;
@@ -28,6 +29,9 @@ import org.reveno.atp.core.disruptor.ProcessorContext;
 import org.reveno.atp.core.engine.WorkflowEngine;
 import org.reveno.atp.core.engine.components.*;
 import org.reveno.atp.core.engine.components.DefaultIdGenerator.NextIdTransaction;
+import org.reveno.atp.core.engine.components.TimersManager.FireTimer;
+import org.reveno.atp.core.engine.components.TimersManager.FireTimers;
+import org.reveno.atp.core.engine.components.TimersManager.FiredTimers;
 import org.reveno.atp.core.engine.processor.PipeProcessor;
 import org.reveno.atp.core.engine.processor.TransactionPipeProcessor;
 import org.reveno.atp.core.events.Event;
@@ -35,11 +39,15 @@ import org.reveno.atp.core.events.EventHandlersManager;
 import org.reveno.atp.core.events.EventPublisher;
 import org.reveno.atp.core.impl.EventsCommitInfoImpl;
 import org.reveno.atp.core.impl.TransactionCommitInfoImpl;
+import org.reveno.atp.core.repository.FieldUndoModelRepository;
 import org.reveno.atp.core.repository.HashMapRepository;
+import org.reveno.atp.core.repository.LazyRepository;
 import org.reveno.atp.core.repository.MutableModelRepository;
 import org.reveno.atp.core.repository.SnapshotBasedModelRepository;
 import org.reveno.atp.core.restore.DefaultSystemStateRestorer;
 import org.reveno.atp.core.serialization.SimpleEventsSerializer;
+import org.reveno.atp.core.snapshots.ChunkedSnapshotter;
+import org.reveno.atp.core.snapshots.MappedSnapshot;
 import org.reveno.atp.core.snapshots.SnapshottersManager;
 import org.reveno.atp.core.storage.FileSystemStorage;
 import org.reveno.atp.core.views.ViewsDefaultStorage;
@@ -50,19 +58,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
 public class Engine implements Reveno {
     protected static final Logger log = LoggerFactory.getLogger(Engine.class);
-    protected final ThreadFactory executor = new NamedThreadFactory("tx");
-    protected final ThreadFactory eventExecutor = new NamedThreadFactory("evn");
+    protected ThreadFactory executor;
+    protected ThreadFactory eventExecutor;
     protected final ScheduledExecutorService snapshotterIntervalExecutor = Executors.newSingleThreadScheduledExecutor();
+    protected final ScheduledExecutorService timersExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("timers"));
+    protected final AtomicBoolean timersFiring = new AtomicBoolean();
     protected volatile boolean isStarted = false;
     protected TxRepository repository;
     protected SerializersChain serializer;
@@ -81,6 +93,7 @@ public class Engine implements Reveno {
     protected FoldersStorage foldersStorage;
     protected SnapshotStorage snapshotStorage;
     protected SnapshottersManager snapshotsManager;
+    protected LazyRepository lazyRepository;
     protected EventsInfoSerializer eventsSerializer = new SimpleEventsSerializer();
     protected TransactionCommitInfo.Builder txBuilder = new TransactionCommitInfoImpl.PojoBuilder();
     protected EventsCommitInfo.Builder eventBuilder = new EventsCommitInfoImpl.PojoBuilder();
@@ -88,9 +101,13 @@ public class Engine implements Reveno {
     protected ViewsManager viewsManager = new ViewsManager();
     protected TransactionsManager transactionsManager = new TransactionsManager();
     protected CommandsManager commandsManager = new CommandsManager();
+    protected final Map<String, DynamicCommand> dynamicCommands = new ConcurrentHashMap<>();
+    protected final HandlersTable<WireSchema<?>> wireSchemas = new HandlersTable<>();
     protected InterceptorCollection interceptors = new InterceptorCollection();
     protected DefaultIdGenerator idGenerator = new DefaultIdGenerator();
+    protected TimersManager timers;
     protected RevenoConfiguration config = new RevenoConfiguration();
+    protected FailoverManager failoverManager = new UnclusteredFailoverManager();
     protected final TxRepositoryFactory factory = repositoryData -> {
         final TxRepository repository = createRepository();
         if (repositoryData != null) {
@@ -105,7 +122,7 @@ public class Engine implements Reveno {
         this.foldersStorage = foldersStorage;
         this.journalsStorage = journalsStorage;
         this.snapshotStorage = snapshotStorage;
-        this.snapshotsManager = new SnapshottersManager(snapshotStorage, classLoader);
+        this.snapshotsManager = new SnapshottersManager(snapshotStorage, classLoader, interceptors.ioListener());
         this.serializer = new SerializersChain(classLoader);
     }
 
@@ -114,12 +131,12 @@ public class Engine implements Reveno {
     }
 
     public Engine(File baseDir, ClassLoader classLoader) {
-        FileSystemStorage storage = new FileSystemStorage(baseDir, config.revenoJournaling());
+        FileSystemStorage storage = new FileSystemStorage(baseDir, config.revenoJournaling()).ioListener(interceptors.ioListener());
         this.classLoader = classLoader;
         this.foldersStorage = storage;
         this.journalsStorage = storage;
         this.snapshotStorage = storage;
-        this.snapshotsManager = new SnapshottersManager(snapshotStorage, classLoader);
+        this.snapshotsManager = new SnapshottersManager(snapshotStorage, classLoader, interceptors.ioListener());
         this.serializer = new SerializersChain(classLoader);
     }
 
@@ -158,9 +175,11 @@ public class Engine implements Reveno {
         eventPublisher.getPipe().sync();
 
         journalsManager.rollFrom(temp, workflowEngine.getLastTransactionId());
+        timers.rebuild(repository, System.currentTimeMillis());
 
         log.info("Engine is started.");
         isStarted = true;
+        failoverManager().start(serializer, workflowEngine.getLastTransactionId());
         postInit();
     }
 
@@ -181,6 +200,7 @@ public class Engine implements Reveno {
         eventsManager.close();
 
         snapshotterIntervalExecutor.shutdown();
+        timersExecutor.shutdown();
 
         if (config.revenoSnapshotting().atShutdown()) {
             log.info("Preforming shutdown snapshotting...");
@@ -189,6 +209,9 @@ public class Engine implements Reveno {
         if (repository instanceof Destroyable) {
             ((Destroyable) repository).destroy();
         }
+        if (lazyRepository != null) {
+            lazyRepository.destroy();
+        }
 
         log.info("Engine was stopped.");
     }
@@ -259,6 +282,12 @@ public class Engine implements Reveno {
                 commandsManager.register(commandType, resultType, handler);
             }
 
+            @Override
+            public <T> void wireSchema(Class<T> type, WireSchema<T> schema) {
+                serializer.registerWireSchema(type, schema);
+                wireSchemas.register(type, schema);
+            }
+
             @Override
             public void serializeWith(List<TransactionInfoSerializer> serializers) {
                 serializer = new SerializersChain(serializers);
@@ -278,7 +307,22 @@ public class Engine implements Reveno {
 
     @Override
     public ClusterManager cluster() {
-        return null;
+        return new ClusterManager() {
+            @Override
+            public boolean isClustered() {
+                return Engine.this.isClustered();
+            }
+
+            @Override
+            public boolean isMaster() {
+                return failoverManager().isMaster();
+            }
+
+            @Override
+            public long unprocessedCount() {
+                return failoverManager().unprocessedCount();
+            }
+        };
     }
 
     @Override
@@ -293,6 +337,22 @@ public class Engine implements Reveno {
         return workflowEngine.getPipe().execute(command);
     }
 
+    @Override
+    public <R> CompletableFuture<Result<R>> executeCommand(Class<?> commandType, ByteBuffer bytes) {
+        WireSchema<?> schema = wireSchemas.get(commandType);
+        if (schema == null) {
+            throw new IllegalArgumentException(String.format("Wire schema of %s isn't registered.", commandType));
+        }
+        return executeCommand(schema.decode(bytes));
+    }
+
+    @Override
+    public <R> CompletableFuture<Result<R>> tryExecuteCommand(Object command) {
+        checkIsStarted();
+
+        return workflowEngine.getPipe().tryExecute(command);
+    }
+
     @Override
     public CompletableFuture<EmptyResult> performCommands(List<Object> commands) {
         checkIsStarted();
@@ -341,8 +401,7 @@ public class Engine implements Reveno {
 
     @Override
     public <R> R executeSync(String command, Map<String, Object> args) {
-        Optional<DynamicCommand> dc = getDynamicCommand(command);
-        return executeSync(dc.get(), args);
+        return executeSync(getDynamicCommand(command), args);
     }
 
     @Override
@@ -352,8 +411,7 @@ public class Engine implements Reveno {
 
     @Override
     public <R> CompletableFuture<Result<R>> execute(String command, Map<String, Object> args) {
-        Optional<DynamicCommand> dc = getDynamicCommand(command);
-        return execute(dc.get(), args);
+        return execute(getDynamicCommand(command), args);
     }
 
     @Override
@@ -373,13 +431,57 @@ public class Engine implements Reveno {
                 });
             }, config.revenoSnapshotting().interval(), config.revenoSnapshotting().interval(), TimeUnit.MILLISECONDS);
         }
+        timersExecutor.scheduleAtFixedRate(this::fireTimers, config.timerTick(), config.timerTick(), TimeUnit.MILLISECONDS);
     }
 
-    protected Optional<DynamicCommand> getDynamicCommand(String command) {
-        Optional<DynamicCommand> dc = DirectTransactionBuilder.loadExistedCommand(command, classLoader);
-        if (!dc.isPresent()) {
-            throw new IllegalArgumentException(String.format("Command %s can't be found! Make sure it was registered" +
-                    " by domain().transaction(..).command() call!", command));
+    /**
+     * Publishes the tick of timers unless there are none, or the previous tick is still in the pipe.
+     * Never throws, since the failed run would cancel all the next ones.
+     */
+    protected void fireTimers() {
+        if (!isStarted || !timers.hasPending() || !failoverManager().isMaster() || failoverManager().isBlocked()
+                || !timersFiring.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            workflowEngine.getPipe().<long[]>execute(new FireTimers(now))
+                    .whenCompleteAsync((r, t) -> fireTimers(r, now), timersExecutor);
+        } catch (Throwable t) {
+            timersFiring.set(false);
+            log.error("Can't fire timers.", t);
+        }
+    }
+
+    /**
+     * Fires each of due timers by its own command, so the failed action doesn't affect others.
+     */
+    protected void fireTimers(Result<long[]> due, long now) {
+        try {
+            if (due != null && due.isSuccess() && due.getResult().length > 0) {
+                CompletableFuture<?>[] fired = new CompletableFuture<?>[due.getResult().length];
+                for (int i = 0; i < fired.length; i++) {
+                    fired[i] = workflowEngine.getPipe().execute(new FireTimer(due.getResult()[i], now));
+                }
+                CompletableFuture.allOf(fired).whenComplete((r, t) -> timersFiring.set(false));
+                return;
+            }
+        } catch (Throwable t) {
+            log.error("Can't fire timers.", t);
+        }
+        timersFiring.set(false);
+    }
+
+    protected DynamicCommand getDynamicCommand(String command) {
+        DynamicCommand dc = dynamicCommands.get(command);
+        if (dc == null) {
+            Optional<DynamicCommand> loaded = DirectTransactionBuilder.loadExistedCommand(command, classLoader);
+            if (!loaded.isPresent()) {
+                throw new IllegalArgumentException(String.format("Command %s can't be found! Make sure it was registered" +
+                        " by domain().transaction(..).command() call!", command));
+            }
+            dc = loaded.get();
+            dynamicCommands.put(command, dc);
         }
         return dc;
     }
@@ -390,11 +492,29 @@ public class Engine implements Reveno {
     }
 
     protected WriteableRepository repository() {
-        return new HashMapRepository(config.mapCapacity(), config.mapLoadFactor());
+        if (config.columnarEntities().size() > 0 && config.modelType() == ModelType.MUTABLE) {
+            // reads return copies, so in-place changes of the mutable model would be lost
+            throw new IllegalStateException("Columnar entities can't be used with mutable model.");
+        }
+        HashMapRepository repository = new HashMapRepository(config.mapCapacity(), config.mapLoadFactor());
+        config.columnarEntities().forEach(repository::columnar);
+        config.denseIdEntities().forEach(repository::paged);
+        return repository;
     }
 
     protected FailoverManager failoverManager() {
-        return new UnclusteredFailoverManager();
+        return failoverManager;
+    }
+
+    /**
+     * Replaces default single node {@link FailoverManager}, so that the engine becomes
+     * member of replicated cluster. Must be called before engine startup.
+     */
+    public Engine failoverManager(FailoverManager failoverManager) {
+        if (isStarted)
+            throw new IllegalStateException("Failover manager can't be changed on running engine.");
+        this.failoverManager = failoverManager;
+        return this;
     }
 
     public boolean isClustered() {
@@ -402,24 +522,37 @@ public class Engine implements Reveno {
     }
 
     protected void init() {
-        repository = factory.create(loadLastSnapshot());
+        if (config.revenoSnapshotting().chunked() || config.revenoSnapshotting().lazy()) {
+            snapshotsManager.replaceDefault(new ChunkedSnapshotter(snapshotStorage, classLoader)
+                    .parallelism(config.revenoSnapshotting().parallelism()).ioListener(interceptors.ioListener()));
+        }
+        repository = config.revenoSnapshotting().lazy() ? mapLastSnapshot() : factory.create(loadLastSnapshot());
         viewsStorage = new ViewsDefaultStorage(config.mapCapacity(), config.mapLoadFactor());
         viewsProcessor = new ViewsProcessor(viewsManager, viewsStorage);
-        processor = new DisruptorTransactionPipeProcessor(txBuilder, config.cpuConsumption(), config.revenoDisruptor().bufferSize(), executor);
-        eventProcessor = new DisruptorEventPipeProcessor(CpuConsumption.NORMAL, config.revenoDisruptor().bufferSize(), eventExecutor);
-        journalsManager = new JournalsManager(journalsStorage, config.revenoJournaling());
+        executor = new NamedThreadFactory("tx", config.txThreadsAffinity());
+        eventExecutor = new NamedThreadFactory("evn", config.eventsThreadsAffinity());
+        RevenoConfiguration.RevenoDisruptorConfiguration disruptor = config.revenoDisruptor();
+        processor = new DisruptorTransactionPipeProcessor(txBuilder, config.cpuConsumption(), disruptor.bufferSize(),
+                disruptor.producerLanes() ? disruptor.laneSize() : 0, executor)
+                .loadShedding(disruptor.highWatermark(), disruptor.lowWatermark())
+                .listeners(interceptors.getPipeListeners(PipeProcessor.TRANSACTIONS_PIPE));
+        eventProcessor = new DisruptorEventPipeProcessor(config.eventsCpuConsumption(), disruptor.bufferSize(), eventExecutor)
+                .listeners(interceptors.getPipeListeners(PipeProcessor.EVENTS_PIPE));
+        timers = new TimersManager(config.timerTick());
+        journalsManager = new JournalsManager(journalsStorage, config.revenoJournaling()).ioListener(interceptors.ioListener());
 
         EngineEventsContext eventsContext = new EngineEventsContext().serializer(eventsSerializer)
                 .eventsCommitBuilder(eventBuilder).eventsJournaler(journalsManager.getEventsJournaler()).manager(eventsManager);
         eventPublisher = new EventPublisher(eventProcessor, eventsContext);
 
         workflowContext = new EngineWorkflowContext().serializers(serializer).repository(repository).classLoader(classLoader)
-                .viewsProcessor(viewsProcessor).transactionsManager(transactionsManager).commandsManager(commandsManager)
+                .viewsProcessor(viewsProcessor).transactionsManager(transactionsManager).commandsManager(commandsManager).timers(timers)
                 .eventPublisher(eventPublisher).transactionCommitBuilder(txBuilder).transactionJournaler(journalsManager.getTransactionsJournaler())
                 .idGenerator(idGenerator).journalsManager(journalsManager).snapshotsManager(snapshotsManager).interceptorCollection(interceptors)
                 .configuration(config).failoverManager(failoverManager());
         workflowEngine = new WorkflowEngine(processor, workflowContext, config.modelType());
-        restorer = new DefaultSystemStateRestorer(journalsStorage, workflowContext, eventsContext, workflowEngine); //系统状态还原程序
+        restorer = new DefaultSystemStateRestorer(journalsStorage, workflowContext, eventsContext, workflowEngine)
+                .ioListener(interceptors.ioListener()); //系统状态还原程序
     }
 
     protected long journalVersionAfterSnapshot() {
@@ -434,16 +567,37 @@ public class Engine implements Reveno {
     }
 
     protected RepositoryData loadLastSnapshot() {
+        RepositorySnapshotter snapshotter = lastSnapshotter();
+        return snapshotter == null ? null : snapshotter.load();
+    }
+
+    /**
+     * Creates repository which decodes entities of the last snapshot on first access,
+     * or loads it as usual, if it's not chunked one.
+     */
+    protected TxRepository mapLastSnapshot() {
+        RepositorySnapshotter snapshotter = lastSnapshotter();
+        MappedSnapshot snapshot = snapshotter instanceof ChunkedSnapshotter ? ((ChunkedSnapshotter) snapshotter).map() : null;
+        if (snapshot == null) {
+            return factory.create(snapshotter == null ? null : snapshotter.load());
+        }
+        lazyRepository = new LazyRepository(repository(), snapshot);
+        return createRepository(lazyRepository);
+    }
+
+    protected RepositorySnapshotter lastSnapshotter() {
         if (restoreWith != null && restoreWith.hasAny()) {
-            return restoreWith.load();
+            return restoreWith;
         }
         return snapshotsManager.getAll().stream()
-                .filter(RepositorySnapshotter::hasAny).findFirst()
-                .map(RepositorySnapshotter::load).orElse(null);
+                .filter(RepositorySnapshotter::hasAny).findFirst().orElse(null);
     }
 
     protected void connectSystemHandlers() {
         domain().transactionAction(NextIdTransaction.class, idGenerator);
+        domain().transactionWithCompensatingAction(FiredTimers.class, timers, timers::compensate);
+        domain().command(FireTimers.class, long[].class, timers::fire);
+        domain().command(FireTimer.class, timers::fire);
         if (config.revenoSnapshotting().every() != -1 || config.revenoSnapshotting().interval() > 0) {
             TransactionInterceptor nTimeSnapshotter = new SnapshottingInterceptor(config,
                     snapshotsManager, snapshotStorage, journalsStorage, journalsManager);
@@ -453,11 +607,18 @@ public class Engine implements Reveno {
     }
 
     protected TxRepository createRepository() {
+        return createRepository(repository());
+    }
+
+    protected TxRepository createRepository(WriteableRepository repository) {
         switch (config.modelType()) {
             case IMMUTABLE:
-                return new SnapshotBasedModelRepository(repository());
+                return new SnapshotBasedModelRepository(repository);
             case MUTABLE:
-                return new MutableModelRepository(repository(), new SerializersChain(classLoader), classLoader);
+                if (config.mutableModelFailover() == MutableModelFailover.FIELD_UNDO) {
+                    return new FieldUndoModelRepository(repository, new SerializersChain(classLoader), classLoader);
+                }
+                return new MutableModelRepository(repository, new SerializersChain(classLoader), classLoader);
         }
         return null;
     }
@@ -5,6 +5,7 @@ import org.reveno.atp.core.api.TransactionCommitInfo.Builder;
 import org.reveno.atp.core.engine.WorkflowContext;
 import org.reveno.atp.core.engine.components.CommandsManager;
 import org.reveno.atp.core.engine.components.SerializersChain;
+import org.reveno.atp.core.engine.components.TimersManager;
 import org.reveno.atp.core.engine.components.TransactionsManager;
 import org.reveno.atp.core.events.EventPublisher;
 import org.reveno.atp.core.snapshots.SnapshottersManager;
@@ -19,6 +20,7 @@ public class EngineWorkflowContext implements WorkflowContext {
     private ViewsProcessor viewsProcessor;
     private TransactionsManager transactionsManager;
     private CommandsManager commandsManager;
+    private TimersManager timers;
     private EventPublisher eventPublisher;
     private Builder transactionCommitBuilder;
     private Journaler transactionJournaler;
@@ -107,6 +109,16 @@ public class EngineWorkflowContext implements WorkflowContext {
         return this;
     }
 
+    @Override
+    public TimersManager timers() {
+        return timers;
+    }
+
+    public EngineWorkflowContext timers(TimersManager timers) {
+        this.timers = timers;
+        return this;
+    }
+
     @Override
     public EventPublisher eventPublisher() {
         return eventPublisher;
@@ -2,6 +2,7 @@ package org.reveno.atp.core;
 
 import org.reveno.atp.core.RevenoConfiguration.RevenoJournalingConfiguration;
 import org.reveno.atp.core.api.Destroyable;
+import org.reveno.atp.core.api.IoListener;
 import org.reveno.atp.core.api.Journaler;
 import org.reveno.atp.core.api.storage.JournalsStorage;
 import org.reveno.atp.core.api.storage.JournalsStorage.JournalStore;
@@ -21,6 +22,7 @@ public class JournalsManager implements Destroyable {
     protected RevenoJournalingConfiguration configuration;
     protected ExecutorService executor = Executors.newSingleThreadExecutor();
     protected volatile boolean isRolling = false;
+    protected IoListener ioListener = IoListener.NONE;
 
     public JournalsManager(JournalsStorage storage, RevenoJournalingConfiguration configuration) {
         this.storage = storage;
@@ -70,6 +72,7 @@ public class JournalsManager implements Destroyable {
                                   JournalStore mergeFrom) {
         log.debug("Trying to roll to next store.");
         isRolling = true;
+        long start = System.nanoTime();
 
         try {
             if (!condition.get()) {
@@ -98,11 +101,17 @@ public class JournalsManager implements Destroyable {
             eventsJournaler.roll(storage.channel(store.getEventsCommitsAddress()), () -> {
             });
             transactionsJournaler.roll(storage.channel(store.getTransactionCommitsAddress()), completed);
+            ioListener.onRoll(System.nanoTime() - start);
         } finally {
             isRolling = false;
         }
     }
 
+    public JournalsManager ioListener(IoListener ioListener) {
+        this.ioListener = ioListener;
+        return this;
+    }
+
     public boolean isRolling() {
         return isRolling;
     }
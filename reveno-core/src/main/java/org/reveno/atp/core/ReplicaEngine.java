@@ -0,0 +1,196 @@
+package org.reveno.atp.core;
+
+import org.reveno.atp.api.ChannelOptions;
+import org.reveno.atp.api.commands.EmptyResult;
+import org.reveno.atp.api.commands.Result;
+import org.reveno.atp.api.exceptions.FailoverRulesException;
+import org.reveno.atp.api.transaction.EventBus;
+import org.reveno.atp.api.transaction.TransactionInterceptor;
+import org.reveno.atp.api.transaction.TransactionStage;
+import org.reveno.atp.commons.NamedThreadFactory;
+import org.reveno.atp.core.api.Destroyable;
+import org.reveno.atp.core.api.RestoreableEventBus;
+import org.reveno.atp.core.api.SystemInfo;
+import org.reveno.atp.core.api.TransactionCommitInfo;
+import org.reveno.atp.core.api.storage.FoldersStorage;
+import org.reveno.atp.core.api.storage.JournalsStorage;
+import org.reveno.atp.core.api.storage.SnapshotStorage;
+import org.reveno.atp.core.engine.components.DefaultIdGenerator.NextIdTransaction;
+import org.reveno.atp.core.engine.components.TimersManager.FiredTimers;
+import org.reveno.atp.core.restore.JournalTailer;
+import org.reveno.atp.core.restore.JournalTailer.CorruptedJournalException;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only engine which follows the journals of another engine working over the same
+ * directory, possibly in another JVM. It starts from the latest snapshot, same as usual
+ * engine does, and then continuously applies newly journaled transactions through the
+ * restore path to its own repository and views, so it can serve queries only.
+ * <p>
+ * Replica never writes to the directory: it doesn't journal, snapshot or publish events,
+ * and all commands are rejected with {@link FailoverRulesException}. If the writer deletes
+ * journals after snapshotting, the replica must keep up with it, otherwise it should be restarted.
+ */
+public class ReplicaEngine extends Engine {
+    protected ScheduledExecutorService tailExecutor;
+    protected JournalTailer tailer;
+    protected long pollInterval = 10;
+
+    public ReplicaEngine(FoldersStorage foldersStorage, JournalsStorage journalsStorage,
+                         SnapshotStorage snapshotStorage, ClassLoader classLoader) {
+        super(foldersStorage, journalsStorage, snapshotStorage, classLoader);
+    }
+
+    public ReplicaEngine(File baseDir) {
+        super(baseDir);
+    }
+
+    public ReplicaEngine(File baseDir, ClassLoader classLoader) {
+        super(baseDir, classLoader);
+    }
+
+    public ReplicaEngine(String baseDir) {
+        super(baseDir);
+    }
+
+    /**
+     * How often the journals are checked for new transactions, in milliseconds.
+     */
+    public ReplicaEngine pollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+        return this;
+    }
+
+    public long getLastTransactionId() {
+        return workflowEngine.getLastTransactionId();
+    }
+
+    @Override
+    public void startup() {
+        log.info("Replica startup initiated.");
+        if (isStarted)
+            throw new IllegalStateException("Can't startup engine which is already started.");
+
+        init();
+        connectSystemHandlers();
+
+        eventPublisher.getPipe().start();
+        workflowEngine.init();
+        viewsProcessor.process(repository);
+
+        long snapshotTransactionId = repository.getO(SystemInfo.class, 0L).orElse(new SystemInfo(0L)).lastTransactionId;
+        tailer = new JournalTailer(journalsStorage, serializer, txBuilder, journalVersionAfterSnapshot(), snapshotTransactionId)
+                .holdLastRecord(config.revenoJournaling().channelOptions() == ChannelOptions.BUFFERING_MMAP_OS);
+        viewsProcessor.defer();
+        // the pipe is idle until tailing is scheduled, so catch-up applies transactions directly
+        while (tailer.poll(tx -> workflowEngine.getRestoreExecutor().execute(SilentEventBus.INSTANCE, tx)) > 0) ;
+        workflowEngine.getPipe().sync();
+        viewsProcessor.flushDeferred(repository, config.restoreViewsParallelism());
+        workflowEngine.setLastTransactionId(tailer.lastTransactionId());
+
+        tailExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("replica"));
+        tailExecutor.scheduleWithFixedDelay(this::tail, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+
+        log.info("Replica is started at transaction {}.", tailer.lastTransactionId());
+        isStarted = true;
+    }
+
+    @Override
+    public void shutdown() {
+        log.info("Shutting down replica.");
+        isStarted = false;
+
+        tailExecutor.shutdown();
+        try {
+            tailExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workflowEngine.shutdown();
+        eventPublisher.getPipe().shutdown();
+
+        interceptors.getInterceptors(TransactionStage.TRANSACTION).forEach(TransactionInterceptor::destroy);
+        tailer.close();
+        snapshotterIntervalExecutor.shutdown();
+        timersExecutor.shutdown();
+        if (repository instanceof Destroyable) {
+            ((Destroyable) repository).destroy();
+        }
+
+        log.info("Replica was stopped.");
+    }
+
+    @Override
+    public <R> CompletableFuture<Result<R>> executeCommand(Object command) {
+        throw readOnly();
+    }
+
+    @Override
+    public <R> CompletableFuture<Result<R>> tryExecuteCommand(Object command) {
+        throw readOnly();
+    }
+
+    @Override
+    public CompletableFuture<EmptyResult> performCommands(List<Object> commands) {
+        throw readOnly();
+    }
+
+    @Override
+    protected void connectSystemHandlers() {
+        domain().transactionAction(NextIdTransaction.class, idGenerator);
+        domain().transactionAction(FiredTimers.class, timers.indexed(false));
+    }
+
+    protected void tail() {
+        try {
+            if (tailer.poll(this::apply) > 0) {
+                workflowEngine.getPipe().sync();
+                workflowEngine.setLastTransactionId(tailer.lastTransactionId());
+            }
+        } catch (CorruptedJournalException e) {
+            // nothing after the corrupted record can be applied, so the state is kept as is for queries
+            workflowEngine.getPipe().sync();
+            workflowEngine.setLastTransactionId(tailer.lastTransactionId());
+            log.error("Replica stopped tailing at transaction {}.", tailer.lastTransactionId());
+            tailExecutor.shutdown();
+        } catch (Throwable t) {
+            log.error("tail", t);
+        }
+    }
+
+    protected void apply(TransactionCommitInfo tx) {
+        workflowEngine.getPipe().executeRestore(SilentEventBus.INSTANCE, tx);
+    }
+
+    protected FailoverRulesException readOnly() {
+        return new FailoverRulesException("Replica engine is read-only.");
+    }
+
+    /**
+     * Events are the writer's side effects, so replica never publishes them.
+     */
+    protected static class SilentEventBus implements RestoreableEventBus {
+        protected static final SilentEventBus INSTANCE = new SilentEventBus();
+
+        @Override
+        public void publishEvent(Object event) {
+        }
+
+        @Override
+        public RestoreableEventBus currentTransactionId(long transactionId) {
+            return this;
+        }
+
+        @Override
+        public RestoreableEventBus underlyingEventBus(EventBus eventBus) {
+            return this;
+        }
+    }
+
+}
@@ -3,6 +3,10 @@ package org.reveno.atp.core;
 import org.reveno.atp.api.ChannelOptions;
 import org.reveno.atp.api.Configuration;
 
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import static org.reveno.atp.utils.MeasureUtils.kb;
 
 public class RevenoConfiguration implements Configuration {
@@ -10,10 +14,18 @@ public class RevenoConfiguration implements Configuration {
     protected RevenoDisruptorConfiguration disruptor = new RevenoDisruptorConfiguration();
     protected RevenoJournalingConfiguration journaling = new RevenoJournalingConfiguration();
     protected CpuConsumption cpuConsumption = CpuConsumption.NORMAL;
+    protected CpuConsumption eventsCpuConsumption = CpuConsumption.NORMAL;
+    protected PipelineMode pipelineMode = PipelineMode.STAGED;
+    protected int[] txThreadsAffinity = new int[0];
+    protected int[] eventsThreadsAffinity = new int[0];
     protected ModelType modelType = ModelType.IMMUTABLE;
+    protected long timerTick = 10L;
+    protected int restoreViewsParallelism = 1;
     protected int mapCapacity = 524288;
     protected float mapLoadFactor = 0.75f;
     protected MutableModelFailover mutableModelFailover = MutableModelFailover.SNAPSHOTS;
+    protected Set<Class<?>> columnarEntities = new LinkedHashSet<>();
+    protected Set<Class<?>> denseIdEntities = new LinkedHashSet<>();
 
     @Override
     public SnapshotConfiguration snapshotting() {
@@ -96,10 +108,99 @@ public class RevenoConfiguration implements Configuration {
         return cpuConsumption;
     }
 
+    @Override
+    public Configuration eventsCpuConsumption(CpuConsumption cpuConsumption) {
+        this.eventsCpuConsumption = cpuConsumption;
+        return this;
+    }
+
+    public CpuConsumption eventsCpuConsumption() {
+        return eventsCpuConsumption;
+    }
+
+    @Override
+    public Configuration pipelineMode(PipelineMode pipelineMode) {
+        this.pipelineMode = pipelineMode;
+        return this;
+    }
+
+    public PipelineMode pipelineMode() {
+        return pipelineMode;
+    }
+
+    @Override
+    public Configuration restoreViewsParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Restore views parallelism must be positive.");
+        }
+        this.restoreViewsParallelism = threads;
+        return this;
+    }
+
+    public int restoreViewsParallelism() {
+        return restoreViewsParallelism;
+    }
+
+    @Override
+    public Configuration timerTick(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Timer tick must be positive.");
+        }
+        this.timerTick = millis;
+        return this;
+    }
+
+    public long timerTick() {
+        return timerTick;
+    }
+
+    @Override
+    public Configuration txThreadsAffinity(int... cores) {
+        this.txThreadsAffinity = cores;
+        return this;
+    }
+
+    public int[] txThreadsAffinity() {
+        return txThreadsAffinity;
+    }
+
+    @Override
+    public Configuration eventsThreadsAffinity(int... cores) {
+        this.eventsThreadsAffinity = cores;
+        return this;
+    }
+
+    public int[] eventsThreadsAffinity() {
+        return eventsThreadsAffinity;
+    }
+
+    @Override
+    public Configuration columnarEntities(Class<?>... entityTypes) {
+        this.columnarEntities.addAll(Arrays.asList(entityTypes));
+        return this;
+    }
+
+    public Set<Class<?>> columnarEntities() {
+        return columnarEntities;
+    }
+
+    @Override
+    public Configuration denseIdEntities(Class<?>... entityTypes) {
+        this.denseIdEntities.addAll(Arrays.asList(entityTypes));
+        return this;
+    }
+
+    public Set<Class<?>> denseIdEntities() {
+        return denseIdEntities;
+    }
+
     public static class RevenoSnapshotConfiguration implements SnapshotConfiguration {
         private boolean snapshotAtShutdown = false;
         private long snapshotEvery = -1;
         private long interval = -1;
+        private boolean chunked = false;
+        private boolean lazy = false;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
 
         @Override
         public SnapshotConfiguration atShutdown(boolean takeSnapshot) {
@@ -130,10 +231,44 @@ public class RevenoConfiguration implements Configuration {
         public long interval() {
             return interval;
         }
+
+        @Override
+        public SnapshotConfiguration chunked(boolean chunked) {
+            this.chunked = chunked;
+            return this;
+        }
+
+        public boolean chunked() {
+            return chunked;
+        }
+
+        @Override
+        public SnapshotConfiguration lazy(boolean lazy) {
+            this.lazy = lazy;
+            return this;
+        }
+
+        public boolean lazy() {
+            return lazy;
+        }
+
+        @Override
+        public SnapshotConfiguration parallelism(int threads) {
+            this.parallelism = threads;
+            return this;
+        }
+
+        public int parallelism() {
+            return parallelism;
+        }
     }
 
     public static class RevenoDisruptorConfiguration implements DisruptorConfiguration {
         private int bufferSize = 1024;
+        private boolean producerLanes = false;
+        private int laneSize = 256;
+        private int highWatermark = 0;
+        private int lowWatermark = 0;
 
         @Override
         public DisruptorConfiguration bufferSize(int bufferSize) {
@@ -147,6 +282,47 @@ public class RevenoConfiguration implements Configuration {
         public int bufferSize() {
             return bufferSize;
         }
+
+        @Override
+        public DisruptorConfiguration producerLanes(boolean producerLanes) {
+            this.producerLanes = producerLanes;
+            return this;
+        }
+
+        public boolean producerLanes() {
+            return producerLanes;
+        }
+
+        @Override
+        public DisruptorConfiguration laneSize(int laneSize) {
+            if (Integer.bitCount(laneSize) != 1) {
+                throw new IllegalArgumentException("Producer lane size must be of power of 2.");
+            }
+            this.laneSize = laneSize;
+            return this;
+        }
+
+        public int laneSize() {
+            return laneSize;
+        }
+
+        @Override
+        public DisruptorConfiguration loadShedding(int highWatermark, int lowWatermark) {
+            if (lowWatermark < 0 || lowWatermark > highWatermark) {
+                throw new IllegalArgumentException("Low watermark must be between 0 and high one.");
+            }
+            this.highWatermark = highWatermark;
+            this.lowWatermark = lowWatermark;
+            return this;
+        }
+
+        public int highWatermark() {
+            return highWatermark;
+        }
+
+        public int lowWatermark() {
+            return lowWatermark;
+        }
     }
 
     public static class RevenoJournalingConfiguration implements JournalingConfiguration {
@@ -17,6 +17,7 @@
 package org.reveno.atp.core.api;
 
 import org.reveno.atp.core.api.channel.Buffer;
+import org.reveno.atp.core.api.serialization.TransactionInfoSerializer;
 
 import java.util.List;
 import java.util.function.Consumer;
@@ -41,7 +42,27 @@ public interface FailoverManager {
 
     boolean replicate(Consumer<Buffer> bufferWriter);
 
+    /**
+     * Called by replication stage at the end of each batch, so that all messages
+     * replicated since last call can be sent at once.
+     */
+    default void flush() {
+    }
+
     long unprocessedCount();
 
     void processPendingMessages();
+
+    /**
+     * Called once the engine was started and restored its state, so it is safe
+     * to join the cluster and start accepting replication messages.
+     *
+     * @param serializer        which is used to serialize replicated commands
+     * @param lastTransactionId the last transaction id, restored from journals
+     */
+    default void start(TransactionInfoSerializer serializer, long lastTransactionId) {
+    }
+
+    default void stop() {
+    }
 }
@@ -4,12 +4,19 @@ import it.unimi.dsi.fastutil.bytes.Byte2ObjectMap;
 import it.unimi.dsi.fastutil.bytes.Byte2ObjectOpenHashMap;
 import org.reveno.atp.api.transaction.TransactionInterceptor;
 import org.reveno.atp.api.transaction.TransactionStage;
+import org.reveno.atp.core.engine.processor.PipeProcessorListener;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class InterceptorCollection {
     private Byte2ObjectMap<List<TransactionInterceptor>> interceptors = new Byte2ObjectOpenHashMap<>();
+    private List<PipelineTimingsListener> timingsListeners = new CopyOnWriteArrayList<>();
+    private Map<String, List<PipeProcessorListener>> pipeListeners = new ConcurrentHashMap<>();
+    private IoListeners ioListeners = new IoListeners();
 
     public List<TransactionInterceptor> getInterceptors(TransactionStage stage) {
         return interceptors.computeIfAbsent(stage.getType(), k -> new ArrayList<>());
@@ -19,4 +26,45 @@ public class InterceptorCollection {
         getInterceptors(stage).add(interceptor);
     }
 
+    public List<PipelineTimingsListener> getTimingsListeners() {
+        return timingsListeners;
+    }
+
+    public void addTimingsListener(PipelineTimingsListener listener) {
+        timingsListeners.add(listener);
+    }
+
+    /**
+     * Listeners are bound to the pipe processor on engine startup, so they should be
+     * registered before it.
+     *
+     * @param pipe one of {@code PipeProcessor.*_PIPE} names
+     */
+    public List<PipeProcessorListener> getPipeListeners(String pipe) {
+        return pipeListeners.computeIfAbsent(pipe, k -> new CopyOnWriteArrayList<>());
+    }
+
+    public void addPipeListener(String pipe, PipeProcessorListener listener) {
+        getPipeListeners(pipe).add(listener);
+    }
+
+    /**
+     * @return listener which dispatches to all registered ones, to be bound to I/O components
+     */
+    public IoListener ioListener() {
+        return ioListeners;
+    }
+
+    public List<IoListener> getIoListeners() {
+        return ioListeners.getListeners();
+    }
+
+    public void addIoListener(IoListener listener) {
+        ioListeners.add(listener);
+    }
+
+    public boolean removeIoListener(IoListener listener) {
+        return ioListeners.remove(listener);
+    }
+
 }
@@ -0,0 +1,49 @@
+package org.reveno.atp.core.api;
+
+/**
+ * Receives measurements of journaling, snapshotting and restore I/O. All durations are
+ * in nanoseconds. Callbacks are invoked synchronously from the thread which performs
+ * I/O, so implementations should be thread-safe and cheap.
+ */
+public interface IoListener {
+
+    IoListener NONE = new IoListener() {
+    };
+
+    /**
+     * @param bytes count of bytes, which were handed to the OS (or put to mmap region)
+     */
+    default void onWrite(long bytes) {
+    }
+
+    /**
+     * Buffered data was written to file channel.
+     */
+    default void onFlush(long nanos) {
+    }
+
+    /**
+     * Memory mapped data was forced to the storage device.
+     */
+    default void onForce(long nanos) {
+    }
+
+    default void onRoll(long nanos) {
+    }
+
+    default void onPreallocate(long bytes, long nanos) {
+    }
+
+    default void onSnapshot(long bytes, long nanos) {
+    }
+
+    default void onSnapshotLoad(long bytes, long nanos) {
+    }
+
+    /**
+     * @param records count of transactions, read from journals and replayed
+     */
+    default void onRestore(long records, long nanos) {
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.reveno.atp.core.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dispatches every measurement to all currently registered listeners. Listeners are copied
+ * into array on every change, so dispatching on the journaling path doesn't allocate.
+ */
+public class IoListeners implements IoListener {
+    protected volatile IoListener[] listeners = new IoListener[0];
+
+    public List<IoListener> getListeners() {
+        return Collections.unmodifiableList(Arrays.asList(listeners));
+    }
+
+    public synchronized void add(IoListener listener) {
+        IoListener[] l = Arrays.copyOf(listeners, listeners.length + 1);
+        l[l.length - 1] = listener;
+        listeners = l;
+    }
+
+    public synchronized boolean remove(IoListener listener) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) {
+            if (l[i].equals(listener)) {
+                IoListener[] r = new IoListener[l.length - 1];
+                System.arraycopy(l, 0, r, 0, i);
+                System.arraycopy(l, i + 1, r, i, l.length - i - 1);
+                listeners = r;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onWrite(long bytes) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) l[i].onWrite(bytes);
+    }
+
+    @Override
+    public void onFlush(long nanos) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) l[i].onFlush(nanos);
+    }
+
+    @Override
+    public void onForce(long nanos) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) l[i].onForce(nanos);
+    }
+
+    @Override
+    public void onRoll(long nanos) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) l[i].onRoll(nanos);
+    }
+
+    @Override
+    public void onPreallocate(long bytes, long nanos) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) l[i].onPreallocate(bytes, nanos);
+    }
+
+    @Override
+    public void onSnapshot(long bytes, long nanos) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) l[i].onSnapshot(bytes, nanos);
+    }
+
+    @Override
+    public void onSnapshotLoad(long bytes, long nanos) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) l[i].onSnapshotLoad(bytes, nanos);
+    }
+
+    @Override
+    public void onRestore(long records, long nanos) {
+        IoListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) l[i].onRestore(records, nanos);
+    }
+
+}
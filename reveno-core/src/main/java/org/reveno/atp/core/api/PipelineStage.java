@@ -0,0 +1,9 @@
+package org.reveno.atp.core.api;
+
+/**
+ * Stages of transaction pipeline, which are timed separately when
+ * {@link PipelineTimingsListener} is registered in {@link InterceptorCollection}.
+ */
+public enum PipelineStage {
+    EXECUTION, VIEWS, JOURNALING, RESULT
+}
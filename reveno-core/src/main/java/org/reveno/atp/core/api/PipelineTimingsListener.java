@@ -0,0 +1,16 @@
+package org.reveno.atp.core.api;
+
+/**
+ * Receives {@link System#nanoTime()} stamps of every pipeline stage after the command
+ * result was completed. Enqueue wait can be calculated as {@code starts[EXECUTION] - submitted}.
+ * <p>
+ * Invoked from pipeline thread, so implementation should be as cheap as possible. Arrays
+ * are reused across transactions and must not be retained. Stages which were not executed
+ * for particular transaction have zero values.
+ */
+@FunctionalInterface
+public interface PipelineTimingsListener {
+
+    void onTimings(long transactionId, long submitted, long[] starts, long[] ends);
+
+}
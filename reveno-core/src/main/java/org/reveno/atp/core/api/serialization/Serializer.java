@@ -1,5 +1,6 @@
 package org.reveno.atp.core.api.serialization;
 
+import org.reveno.atp.api.WireSchema;
 import org.reveno.atp.core.api.channel.Buffer;
 
 public interface Serializer {
@@ -10,6 +11,13 @@ public interface Serializer {
 
     void registerTransactionType(Class<?> txDataType);
 
+    /**
+     * Registers type, whose objects are written as bytes of the given schema. Serializers
+     * which don't support it just skip it.
+     */
+    default <T> void registerWireSchema(Class<T> type, WireSchema<T> schema) {
+    }
+
     void serializeObject(Buffer buffer, Object tc);
 
     Object deserializeObject(Buffer buffer);
@@ -3,6 +3,8 @@ package org.reveno.atp.core.api.storage;
 import org.reveno.atp.api.RepositorySnapshotter.SnapshotIdentifier;
 import org.reveno.atp.core.api.channel.Channel;
 
+import java.io.File;
+
 public interface SnapshotStorage {
 
     Channel snapshotChannel(String address);
@@ -19,6 +21,8 @@ public interface SnapshotStorage {
 
     void removeLastSnapshotStore();
 
+    File getBaseDir();
+
 
     class SnapshotStore implements SnapshotIdentifier {
         public static final byte TYPE = 0x1;
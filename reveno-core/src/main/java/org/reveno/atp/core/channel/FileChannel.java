@@ -1,6 +1,7 @@
 package org.reveno.atp.core.channel;
 
 import org.reveno.atp.api.ChannelOptions;
+import org.reveno.atp.core.api.IoListener;
 import org.reveno.atp.core.api.channel.Buffer;
 import org.reveno.atp.core.api.channel.Channel;
 import org.reveno.atp.utils.MathUtils;
@@ -36,6 +37,7 @@ public class FileChannel implements Channel {
     protected long mmapBufferGeneration = 0;
     protected ByteBuffer buffer = ByteBuffer.allocateDirect(MeasureUtils.kb(32));
     protected ChannelBuffer revenoBuffer;
+    protected IoListener ioListener = IoListener.NONE;
 
     public FileChannel(File file) {
         this.file = file;
@@ -60,7 +62,9 @@ public class FileChannel implements Channel {
             log.info("Closing channel " + file);
             if (channel().isOpen() && writer.isInitialized()) {
                 if (channelOptions == ChannelOptions.BUFFERING_MMAP_OS) {
+                    long start = System.nanoTime();
                     ((MappedByteBuffer) buffer).force();
+                    ioListener.onForce(System.nanoTime() - start);
                 } else {
                     write(b -> {
                     }, true);
@@ -122,6 +126,11 @@ public class FileChannel implements Channel {
         return this;
     }
 
+    public FileChannel ioListener(IoListener ioListener) {
+        this.ioListener = ioListener;
+        return this;
+    }
+
     public java.nio.channels.FileChannel channel() {
         if (channel == null)
             channel = raf.getChannel();
@@ -271,7 +280,10 @@ public class FileChannel implements Channel {
             if (flush && buffer.position() > 0) {
                 int size = buffer.position();
                 buffer.flip();
+                long start = System.nanoTime();
                 write0(buffer, size);
+                ioListener.onFlush(System.nanoTime() - start);
+                ioListener.onWrite(size);
                 buffer.clear();
             } else if (flush) {
                 write0(ZERO, 0);
@@ -290,7 +302,9 @@ public class FileChannel implements Channel {
         @Override
         public void write(Consumer<Buffer> writer, boolean flush) {
             writer.accept(revenoBuffer);
-            position = mmapBufferGeneration + buffer.position();
+            long newPosition = mmapBufferGeneration + buffer.position();
+            ioListener.onWrite(newPosition - position);
+            position = newPosition;
         }
     }
 
@@ -10,6 +10,7 @@ import static org.reveno.atp.utils.MeasureUtils.kb;
 
 public class NettyBasedBuffer implements Buffer {
     private final ByteBuf buffer;
+    private int sizePosition = -1;
 
     public NettyBasedBuffer() {
         this(kb(3), true);
@@ -190,17 +191,18 @@ public class NettyBasedBuffer implements Buffer {
 
     @Override
     public void markSize() {
-        throw new UnsupportedOperationException();
+        sizePosition = buffer.writerIndex();
+        buffer.writeInt(0);
     }
 
     @Override
     public int sizeMarkPosition() {
-        throw new UnsupportedOperationException();
+        return sizePosition;
     }
 
     @Override
     public void writeSize() {
-        throw new UnsupportedOperationException();
+        buffer.setInt(sizePosition, buffer.writerIndex() - sizePosition - 4);
     }
 
 }
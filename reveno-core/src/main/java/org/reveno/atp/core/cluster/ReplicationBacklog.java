@@ -0,0 +1,69 @@
+package org.reveno.atp.core.cluster;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Keeps the most recent replicated messages, so that reconnected slaves can catch up
+ * from their last received sequence. Old messages are evicted once total size of
+ * stored messages exceeds the given capacity.
+ */
+public class ReplicationBacklog {
+    protected final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    protected final long capacity;
+    protected long size = 0;
+    protected long lastSequence = 0;
+
+    public ReplicationBacklog(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void add(long sequence, byte[] data) {
+        entries.addLast(new Entry(sequence, data));
+        lastSequence = sequence;
+        size += data.length;
+        while (size > capacity && entries.size() > 1) {
+            size -= entries.removeFirst().data.length;
+        }
+    }
+
+    /**
+     * @return whether all messages after the given sequence are still stored
+     */
+    public synchronized boolean contains(long after) {
+        if (after == lastSequence) {
+            return true;
+        }
+        return !entries.isEmpty() && entries.peekFirst().sequence <= after + 1 && after < lastSequence;
+    }
+
+    public synchronized void forEachAfter(long after, Visitor visitor) throws IOException {
+        for (Entry e : entries) {
+            if (e.sequence > after) {
+                visitor.visit(e.sequence, e.data);
+            }
+        }
+    }
+
+    public synchronized void reset(long sequence) {
+        entries.clear();
+        size = 0;
+        lastSequence = sequence;
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long sequence, byte[] data) throws IOException;
+    }
+
+    protected static class Entry {
+        protected final long sequence;
+        protected final byte[] data;
+
+        public Entry(long sequence, byte[] data) {
+            this.sequence = sequence;
+            this.data = data;
+        }
+    }
+
+}
@@ -0,0 +1,699 @@
+package org.reveno.atp.core.cluster;
+
+import org.reveno.atp.core.api.FailoverManager;
+import org.reveno.atp.core.api.channel.Buffer;
+import org.reveno.atp.core.api.serialization.TransactionInfoSerializer;
+import org.reveno.atp.core.channel.NettyBasedBuffer;
+import org.reveno.atp.utils.MeasureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Master/slave replication over plain TCP connections.
+ * <p>
+ * Every member listens on its own address from {@code members} list, index in the list is the
+ * node id. Slaves connect to the master and declare the last sequence they have received. Master
+ * assigns sequence to every replicated commands batch, keeps the most recent ones in
+ * {@link ReplicationBacklog} and streams them to all connected slaves, flushing the sockets at the
+ * end of each pipeline batch. Slaves apply received commands through the regular pipeline and
+ * acknowledge the last received sequence whenever they run out of input. With
+ * {@link #syncReplication(boolean)} the master holds the end of each batch until all connected slaves
+ * acknowledge it, so no result is completed before its commands reached every slave. Slave which
+ * doesn't acknowledge for {@link #maxAckHolds(int)} ack timeouts is disconnected, so that it can't
+ * stall the master for good.
+ * <p>
+ * Master sends heartbeats to idle slaves, so slave treats the master as lost once nothing was
+ * received for several heartbeat intervals. Then the election takes place: slave asks all reachable
+ * members about their state, follows the master if some member already became one, or otherwise
+ * the member with the highest received sequence (the lowest node id among equal ones) promotes
+ * itself to master. Network partitions are not handled, so two masters may appear if members can't
+ * reach each other while both alive.
+ * <p>
+ * Sequences are not persisted. A node which was restarted with non-empty journals can rejoin only
+ * a cluster which didn't replicate anything yet, otherwise it should be re-seeded from the master
+ * snapshot and journals.
+ */
+public class TcpFailoverManager implements FailoverManager {
+    protected static final Logger log = LoggerFactory.getLogger(TcpFailoverManager.class);
+    protected static final int HELLO = 1;
+    protected static final int STATUS = 2;
+    protected static final int ACCEPTED = 0;
+    protected static final int NOT_MASTER = 1;
+    protected static final int RESEED_REQUIRED = 2;
+    protected static final byte FRAME = 1;
+    protected static final byte HEARTBEAT = 2;
+    protected static final long UNKNOWN_SEQUENCE = -1L;
+
+    protected final int nodeId;
+    protected final List<InetSocketAddress> members;
+    protected int initialMaster = 0;
+    protected boolean syncReplication = false;
+    protected long ackTimeout = 1000;
+    protected int maxAckHolds = 10;
+    protected long heartbeatInterval = 200;
+    protected long electionTimeout = 1000;
+    protected int connectTimeout = 500;
+    protected long backlogSize = MeasureUtils.mb(64);
+
+    protected volatile boolean isMaster;
+    protected volatile boolean isBlocked = false;
+    protected volatile boolean isRunning = false;
+    protected volatile boolean isReseedRequired = false;
+    protected volatile long sequence = 0;
+    protected final Object replicationLock = new Object();
+    protected final Object ackLock = new Object();
+    protected final List<SlaveSession> sessions = new CopyOnWriteArrayList<>();
+    protected final List<Runnable> onBlocked = new CopyOnWriteArrayList<>();
+    protected final List<Runnable> onUnblocked = new CopyOnWriteArrayList<>();
+    protected Consumer<List<Object>> failoverHandler = c -> {
+    };
+    protected TransactionInfoSerializer serializer;
+    protected ReplicationBacklog backlog;
+    protected Buffer writeBuffer;
+    protected Buffer readBuffer;
+    protected ServerSocket serverSocket;
+    protected volatile Socket masterSocket;
+    protected ScheduledExecutorService heartbeats;
+    protected List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    public TcpFailoverManager(int nodeId, List<InetSocketAddress> members) {
+        if (nodeId < 0 || nodeId >= members.size()) {
+            throw new IllegalArgumentException("Node id must be the index of own address in members list.");
+        }
+        this.nodeId = nodeId;
+        this.members = new ArrayList<>(members);
+    }
+
+    public TcpFailoverManager initialMaster(int initialMaster) {
+        this.initialMaster = initialMaster;
+        return this;
+    }
+
+    /**
+     * Whether the master holds the end of every batch, and so results of its commands, until all
+     * connected slaves acknowledge it. The acknowledgement only means that commands were received
+     * by the slave, not that they were executed or journaled there, so they survive the failure of
+     * the master, but not the simultaneous failure of the slave. Slaves which disconnect, or are
+     * disconnected by {@link #maxAckHolds(int)}, stop being waited for.
+     */
+    public TcpFailoverManager syncReplication(boolean syncReplication) {
+        this.syncReplication = syncReplication;
+        return this;
+    }
+
+    /**
+     * How long acknowledgements are awaited on shutdown, and how often the master warns that
+     * the batch is still held with {@link #syncReplication(boolean)}.
+     */
+    public TcpFailoverManager ackTimeout(long millis) {
+        this.ackTimeout = millis;
+        return this;
+    }
+
+    /**
+     * How many ack timeouts the batch is held with {@link #syncReplication(boolean)}, before slaves
+     * which still haven't acknowledged it are disconnected. They reconnect and catch up from the
+     * backlog then, unless they are stuck.
+     */
+    public TcpFailoverManager maxAckHolds(int maxAckHolds) {
+        if (maxAckHolds < 1) {
+            throw new IllegalArgumentException("At least one ack timeout must be awaited.");
+        }
+        this.maxAckHolds = maxAckHolds;
+        return this;
+    }
+
+    public TcpFailoverManager heartbeatInterval(long millis) {
+        this.heartbeatInterval = millis;
+        return this;
+    }
+
+    public TcpFailoverManager electionTimeout(long millis) {
+        this.electionTimeout = millis;
+        return this;
+    }
+
+    public TcpFailoverManager connectTimeout(int millis) {
+        this.connectTimeout = millis;
+        return this;
+    }
+
+    public TcpFailoverManager backlogSize(long bytes) {
+        this.backlogSize = bytes;
+        return this;
+    }
+
+    public int nodeId() {
+        return nodeId;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public boolean isMaster() {
+        return isMaster;
+    }
+
+    @Override
+    public boolean isBlocked() {
+        return isBlocked;
+    }
+
+    @Override
+    public void onReplicationMessage(Consumer<List<Object>> failoverHandler) {
+        this.failoverHandler = failoverHandler;
+    }
+
+    @Override
+    public void addOnBlocked(Runnable handler) {
+        onBlocked.add(handler);
+    }
+
+    @Override
+    public void addOnUnblocked(Runnable handler) {
+        onUnblocked.add(handler);
+    }
+
+    @Override
+    public boolean replicate(Consumer<Buffer> bufferWriter) {
+        writeBuffer.clear();
+        bufferWriter.accept(writeBuffer);
+        byte[] data = new byte[writeBuffer.length()];
+        writeBuffer.readBytes(data, 0, data.length);
+
+        synchronized (replicationLock) {
+            long seq = sequence + 1;
+            backlog.add(seq, data);
+            sequence = seq;
+            for (SlaveSession session : sessions) {
+                session.send(seq, data);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        for (SlaveSession session : sessions) {
+            session.flush();
+        }
+        if (syncReplication) {
+            int holds = 0;
+            while (!awaitAcks(ackTimeout) && isRunning && !Thread.currentThread().isInterrupted()) {
+                if (++holds >= maxAckHolds) {
+                    disconnectLagging();
+                } else {
+                    log.warn("Slaves haven't acknowledged sequence {} in {} ms, the batch is held.", sequence, ackTimeout);
+                }
+            }
+        }
+    }
+
+    protected void disconnectLagging() {
+        long seq = sequence;
+        for (SlaveSession session : sessions) {
+            if (session.acked < seq) {
+                log.error("Slave {} hasn't acknowledged sequence {} in {} ms, it's disconnected.",
+                        session.slaveId, seq, ackTimeout * maxAckHolds);
+                session.disconnect();
+            }
+        }
+    }
+
+    @Override
+    public long unprocessedCount() {
+        if (!isMaster) {
+            return 0;
+        }
+        long unprocessed = 0;
+        for (SlaveSession session : sessions) {
+            unprocessed = Math.max(unprocessed, sequence - session.acked);
+        }
+        return unprocessed;
+    }
+
+    @Override
+    public void processPendingMessages() {
+        if (isMaster && isRunning) {
+            flush();
+            awaitAcks(ackTimeout);
+        }
+    }
+
+    @Override
+    public void start(TransactionInfoSerializer serializer, long lastTransactionId) {
+        this.serializer = serializer;
+        this.backlog = new ReplicationBacklog(backlogSize);
+        this.writeBuffer = new NettyBasedBuffer(MeasureUtils.kb(64), false);
+        this.readBuffer = new NettyBasedBuffer(MeasureUtils.kb(64), false);
+        this.isRunning = true;
+        // we can't know which sequence the restored state corresponds to
+        this.isReseedRequired = lastTransactionId > 0;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(members.get(nodeId));
+        } catch (IOException e) {
+            throw new RuntimeException("Can't listen on " + members.get(nodeId), e);
+        }
+        startThread("acceptor", this::acceptLoop);
+
+        heartbeats = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "heartbeat"));
+        heartbeats.scheduleAtFixedRate(this::heartbeat, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+
+        int master = findMaster();
+        if (master == -1 && nodeId == initialMaster) {
+            log.info("Node {} started as master.", nodeId);
+            isMaster = true;
+        } else {
+            startThread("follower", () -> followLoop(master == -1 ? initialMaster : master));
+        }
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+        closeQuietly(serverSocket);
+        closeQuietly(masterSocket);
+        sessions.forEach(SlaveSession::close);
+        sessions.clear();
+        if (heartbeats != null) {
+            heartbeats.shutdownNow();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join(electionTimeout + connectTimeout);
+            } catch (InterruptedException ignored) {
+            }
+        }
+        threads.clear();
+        if (writeBuffer != null) writeBuffer.release();
+        if (readBuffer != null) readBuffer.release();
+    }
+
+    protected boolean awaitAcks(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (ackLock) {
+            while (unprocessedCount() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !isRunning) {
+                    return false;
+                }
+                try {
+                    ackLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Master side.
+     */
+
+    protected void acceptLoop() {
+        while (isRunning) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (isRunning) log.error("accept", e);
+                continue;
+            }
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(connectTimeout * 2);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), MeasureUtils.kb(64)));
+                int type = in.readInt();
+                if (type == STATUS) {
+                    out.writeInt(nodeId);
+                    out.writeBoolean(isMaster);
+                    out.writeLong(sequence);
+                    out.flush();
+                    socket.close();
+                } else if (type == HELLO) {
+                    handshake(socket, in, out);
+                } else {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to handle connection from {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    protected void handshake(Socket socket, DataInputStream in, DataOutputStream out) throws IOException {
+        int slaveId = in.readInt();
+        long slaveSequence = in.readLong();
+        synchronized (replicationLock) {
+            if (!isMaster) {
+                out.writeInt(NOT_MASTER);
+                out.writeLong(sequence);
+                out.flush();
+                socket.close();
+                return;
+            }
+            if (slaveSequence == UNKNOWN_SEQUENCE && sequence == 0) {
+                slaveSequence = 0;
+            }
+            if (slaveSequence == UNKNOWN_SEQUENCE || slaveSequence > sequence || !backlog.contains(slaveSequence)) {
+                log.error("Slave {} with sequence {} can't catch up with master sequence {}, it must be re-seeded.",
+                        slaveId, slaveSequence, sequence);
+                out.writeInt(RESEED_REQUIRED);
+                out.writeLong(sequence);
+                out.flush();
+                socket.close();
+                return;
+            }
+            out.writeInt(ACCEPTED);
+            out.writeLong(sequence);
+            socket.setSoTimeout(0);
+            SlaveSession session = new SlaveSession(slaveId, socket, in, out, slaveSequence);
+            backlog.forEachAfter(slaveSequence, session::write);
+            out.flush();
+            sessions.add(session);
+            startThread("acks-" + slaveId, session::readAcks);
+            log.info("Slave {} joined from sequence {}, master sequence is {}.", slaveId, slaveSequence, sequence);
+        }
+    }
+
+    protected void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (SlaveSession session : sessions) {
+            session.heartbeat(now - heartbeatInterval);
+        }
+    }
+
+    /*
+     * Slave side.
+     */
+
+    protected void followLoop(int master) {
+        long lostSince = System.currentTimeMillis();
+        while (isRunning && !isMaster && !isReseedRequired) {
+            if (master != nodeId && follow(master)) {
+                lostSince = System.currentTimeMillis();
+            }
+            if (!isRunning || isReseedRequired) {
+                break;
+            }
+            if (System.currentTimeMillis() - lostSince < electionTimeout) {
+                sleep(heartbeatInterval);
+                continue;
+            }
+            master = elect();
+            if (master == nodeId) {
+                promote();
+            } else if (master == -1) {
+                sleep(heartbeatInterval);
+            }
+        }
+    }
+
+    /**
+     * @return whether connection to the master was established
+     */
+    protected boolean follow(int master) {
+        Socket socket = connect(master);
+        if (socket == null) {
+            return false;
+        }
+        masterSocket = socket;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), MeasureUtils.kb(64)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(HELLO);
+            out.writeInt(nodeId);
+            out.writeLong(isReseedRequired && sequence == 0 ? UNKNOWN_SEQUENCE : sequence);
+            out.flush();
+
+            int reply = in.readInt();
+            long masterSequence = in.readLong();
+            if (reply == NOT_MASTER) {
+                return false;
+            } else if (reply == RESEED_REQUIRED) {
+                log.error("Node {} is too far behind master {} (sequence {} vs {}), it must be re-seeded.",
+                        nodeId, master, sequence, masterSequence);
+                isReseedRequired = true;
+                return false;
+            }
+            isReseedRequired = false;
+            log.info("Node {} follows master {} from sequence {}.", nodeId, master, sequence);
+            socket.setSoTimeout((int) heartbeatInterval * 5);
+            receive(in, out);
+        } catch (SocketTimeoutException e) {
+            log.warn("Master {} is silent for too long.", master);
+        } catch (EOFException e) {
+            if (isRunning) log.warn("Master {} closed the connection.", master);
+        } catch (IOException e) {
+            if (isRunning) log.warn("Connection to master {} lost: {}", master, e.getMessage());
+        } finally {
+            closeQuietly(socket);
+            masterSocket = null;
+        }
+        return true;
+    }
+
+    protected void receive(DataInputStream in, DataOutputStream out) throws IOException {
+        while (isRunning) {
+            byte type = in.readByte();
+            if (type == FRAME) {
+                long seq = in.readLong();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                if (seq != sequence + 1) {
+                    throw new IOException(String.format("Sequence gap: expected %d, received %d.", sequence + 1, seq));
+                }
+                readBuffer.clear();
+                readBuffer.writeBytes(data);
+                failoverHandler.accept(serializer.deserializeCommands(readBuffer));
+                backlog.add(seq, data);
+                sequence = seq;
+            }
+            if (in.available() == 0) {
+                out.writeLong(sequence);
+                out.flush();
+            }
+        }
+    }
+
+    protected int elect() {
+        int best = nodeId;
+        long bestSequence = sequence;
+        for (int i = 0; i < members.size(); i++) {
+            if (i == nodeId) continue;
+            try (Socket socket = connect(i)) {
+                if (socket == null) continue;
+                socket.setSoTimeout(connectTimeout);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                out.writeInt(STATUS);
+                out.flush();
+                int id = in.readInt();
+                boolean master = in.readBoolean();
+                long seq = in.readLong();
+                if (master) {
+                    return id;
+                }
+                if (seq > bestSequence || (seq == bestSequence && id < best)) {
+                    best = id;
+                    bestSequence = seq;
+                }
+            } catch (IOException e) {
+                log.debug("Member {} is not available: {}", i, e.getMessage());
+            }
+        }
+        log.info("Node {} elected node {} with sequence {} as new master.", nodeId, best, bestSequence);
+        return best;
+    }
+
+    /**
+     * @return the id of member which is master at the moment, or -1 if none found
+     */
+    protected int findMaster() {
+        for (int i = 0; i < members.size(); i++) {
+            if (i == nodeId) continue;
+            try (Socket socket = connect(i)) {
+                if (socket == null) continue;
+                socket.setSoTimeout(connectTimeout);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                out.writeInt(STATUS);
+                out.flush();
+                int id = in.readInt();
+                if (in.readBoolean()) {
+                    return id;
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        return -1;
+    }
+
+    protected void promote() {
+        log.info("Node {} is promoting to master at sequence {}.", nodeId, sequence);
+        isBlocked = true;
+        try {
+            onBlocked.forEach(Runnable::run);
+            synchronized (replicationLock) {
+                isMaster = true;
+            }
+        } finally {
+            isBlocked = false;
+        }
+        onUnblocked.forEach(Runnable::run);
+        log.info("Node {} is master now.", nodeId);
+    }
+
+    protected Socket connect(int member) {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(members.get(member), connectTimeout);
+            return socket;
+        } catch (IOException e) {
+            closeQuietly(socket);
+            return null;
+        }
+    }
+
+    protected void startThread(String name, Runnable r) {
+        Thread t = daemon(r, name);
+        threads.add(t);
+        t.start();
+    }
+
+    protected Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, "reveno-cluster-" + nodeId + "-" + name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    protected void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    protected class SlaveSession {
+        protected final int slaveId;
+        protected final Socket socket;
+        protected final DataInputStream in;
+        protected final DataOutputStream out;
+        protected volatile long acked;
+        protected long lastWrite = System.currentTimeMillis();
+
+        public SlaveSession(int slaveId, Socket socket, DataInputStream in, DataOutputStream out, long acked) {
+            this.slaveId = slaveId;
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+            this.acked = acked;
+        }
+
+        public synchronized void write(long seq, byte[] data) throws IOException {
+            out.writeByte(FRAME);
+            out.writeLong(seq);
+            out.writeInt(data.length);
+            out.write(data);
+            lastWrite = System.currentTimeMillis();
+        }
+
+        public void send(long seq, byte[] data) {
+            try {
+                write(seq, data);
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        public synchronized void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        public synchronized void heartbeat(long idleSince) {
+            if (lastWrite < idleSince) {
+                try {
+                    out.writeByte(HEARTBEAT);
+                    out.flush();
+                    lastWrite = System.currentTimeMillis();
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        public void readAcks() {
+            try {
+                while (isRunning) {
+                    acked = in.readLong();
+                    synchronized (ackLock) {
+                        ackLock.notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                failed(e);
+            }
+        }
+
+        public void close() {
+            closeQuietly(socket);
+        }
+
+        protected void failed(IOException e) {
+            if (disconnect() && isRunning) {
+                log.warn("Slave {} disconnected: {}", slaveId, e.getMessage());
+            }
+        }
+
+        /**
+         * @return false if the session was already disconnected
+         */
+        protected boolean disconnect() {
+            if (sessions.remove(this)) {
+                close();
+                synchronized (ackLock) {
+                    ackLock.notifyAll();
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package org.reveno.atp.core.disruptor;
+
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.WaitStrategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wait strategy which spins, then yields, then parks with growing intervals. How long it
+ * spins and yields depends on the observed arrival rate: while events keep arriving within
+ * the spin window, consumer spins for them, and once waits become longer than that, it
+ * skips straight to parking, so that idle pipe doesn't burn CPU.
+ * <p>
+ * Every consumer thread keeps its own statistics.
+ */
+public class AdaptiveWaitStrategy implements WaitStrategy {
+    protected static final int CHECK_TIME_EVERY = 64;
+    protected static final int MIN_SPINS = 100;
+    protected final long spinNanos;
+    protected final long yieldNanos;
+    protected final long maxParkNanos;
+    protected final ThreadLocal<long[]> averageWait = ThreadLocal.withInitial(() -> new long[1]);
+
+    public AdaptiveWaitStrategy() {
+        this(TimeUnit.MICROSECONDS.toNanos(50), TimeUnit.MICROSECONDS.toNanos(500), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * @param spinNanos max time to spin, while events arrive frequently
+     * @param yieldNanos max time to spin and yield, while events arrive frequently
+     * @param maxParkNanos max time of single park
+     */
+    public AdaptiveWaitStrategy(long spinNanos, long yieldNanos, long maxParkNanos) {
+        this.spinNanos = spinNanos;
+        this.yieldNanos = yieldNanos;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, Sequence dependentSequence, SequenceBarrier barrier)
+            throws AlertException {
+        long availableSequence = dependentSequence.get();
+        if (availableSequence >= sequence) {
+            return availableSequence;
+        }
+
+        long[] average = averageWait.get();
+        boolean busy = average[0] <= yieldNanos;
+        long start = System.nanoTime();
+        long waited = 0;
+        long parkNanos = 1000;
+        long counter = 0;
+        while ((availableSequence = dependentSequence.get()) < sequence) {
+            barrier.checkAlert();
+            if (++counter % CHECK_TIME_EVERY == 0) {
+                waited = System.nanoTime() - start;
+            }
+            if ((busy && waited < spinNanos) || counter < MIN_SPINS) {
+                continue;
+            }
+            if (busy && waited < yieldNanos) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos << 1, maxParkNanos);
+                waited = System.nanoTime() - start;
+            }
+        }
+        average[0] = (average[0] * 7 + System.nanoTime() - start) >> 3;
+        return availableSequence;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+    }
+
+}
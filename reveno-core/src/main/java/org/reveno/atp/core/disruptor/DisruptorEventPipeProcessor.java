@@ -2,9 +2,11 @@ package org.reveno.atp.core.disruptor;
 
 import com.lmax.disruptor.EventFactory;
 import org.reveno.atp.api.Configuration.CpuConsumption;
+import org.reveno.atp.core.engine.processor.PipeProcessorListener;
 import org.reveno.atp.core.events.Event;
 import org.reveno.atp.core.events.EventPublisher;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadFactory;
 
@@ -20,6 +22,12 @@ public class DisruptorEventPipeProcessor extends DisruptorPipeProcessor<Event> {
         this.threadFactory = threadFactory;
     }
 
+    @Override
+    public DisruptorEventPipeProcessor listeners(List<PipeProcessorListener> listeners) {
+        super.listeners(listeners);
+        return this;
+    }
+
     @Override
     public void sync() {
         CompletableFuture<?> res = process((e, f) -> e.reset().flag(EventPublisher.SYNC_FLAG).syncFuture(f));
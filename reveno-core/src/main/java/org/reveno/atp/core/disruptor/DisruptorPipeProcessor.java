@@ -7,28 +7,37 @@ import com.lmax.disruptor.dsl.ProducerType;
 import org.reveno.atp.api.Configuration.CpuConsumption;
 import org.reveno.atp.core.api.Destroyable;
 import org.reveno.atp.core.engine.processor.PipeProcessor;
+import org.reveno.atp.core.engine.processor.PipeProcessorListener;
+import org.reveno.atp.core.engine.processor.PipeProcessorStats;
 import org.reveno.atp.core.engine.processor.ProcessorHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 
 @SuppressWarnings("unchecked")
-public abstract class DisruptorPipeProcessor<T extends Destroyable> implements PipeProcessor<T> {
+public abstract class DisruptorPipeProcessor<T extends Destroyable> implements PipeProcessor<T>, PipeProcessorStats {
     protected static final Logger log = LoggerFactory.getLogger(DisruptorPipeProcessor.class);
     protected volatile boolean isStarted = false;
     protected Disruptor<T> disruptor;
     protected List<ProcessorHandler<T>[]> handlers = new ArrayList<>();
+    protected List<EventHandler<T>[]> disruptorHandlers = Collections.emptyList();
+    protected List<PipeProcessorListener> listeners = Collections.emptyList();
+    protected ProducerLanes<T> lanes;
+    protected int highWatermark;
+    protected int lowWatermark;
+    protected final AtomicBoolean shedding = new AtomicBoolean();
 
     abstract CpuConsumption cpuConsumption();
 
-    abstract int bufferSize();
+    public abstract int bufferSize();
 
     abstract boolean singleProducer();
 
@@ -38,6 +47,13 @@ public abstract class DisruptorPipeProcessor<T extends Destroyable> implements P
 
     abstract void startupInterceptor();
 
+    /**
+     * Size of per producer lane, or 0 if producers publish into the ring buffer directly.
+     */
+    protected int laneSize() {
+        return 0;
+    }
+
     @Override
     public void start() {
         if (isStarted) throw new IllegalStateException("The Pipe Processor is already started.");
@@ -49,9 +65,14 @@ public abstract class DisruptorPipeProcessor<T extends Destroyable> implements P
         attachHandlers(disruptor);
         startupInterceptor();
         disruptor.start();
+        if (laneSize() > 0) {
+            lanes = new ProducerLanes<>(disruptor.getRingBuffer(), laneSize(), threadFactory());
+            lanes.start();
+        }
 
         log.info("Started.");
         isStarted = true;
+        listeners.forEach(l -> l.onStart(this));
     }
 
     @Override
@@ -59,6 +80,10 @@ public abstract class DisruptorPipeProcessor<T extends Destroyable> implements P
         if (!isStarted) throw new IllegalStateException("The Pipe Processor is already stopped.");
 
         isStarted = false;
+        if (lanes != null) {
+            lanes.stop();
+            lanes = null;
+        }
         disruptor.shutdown();
         log.info("Stopped.");
     }
@@ -90,10 +115,165 @@ public abstract class DisruptorPipeProcessor<T extends Destroyable> implements P
             throw new RuntimeException("Pipe Processor must be started!");
 
         final CompletableFuture<R> f = new CompletableFuture<R>();
-        disruptor.publishEvent((e, s) -> consumer.accept(e, f));
+        if (lanes != null) {
+            publishToLane(consumer, f);
+        } else if (listeners.size() == 0) {
+            disruptor.publishEvent((e, s) -> consumer.accept(e, f));
+        } else {
+            publishMeasured(consumer, f);
+        }
         return f;
     }
 
+    @Override
+    public <R> CompletableFuture<R> tryProcess(BiConsumer<T, CompletableFuture<R>> consumer) {
+        if (isShedding()) {
+            onReject();
+            return null;
+        }
+        return offer(consumer);
+    }
+
+    /**
+     * Same as {@link #tryProcess(BiConsumer)}, but doesn't shed load.
+     *
+     * @return {@code null} if the pipe is full
+     */
+    protected <R> CompletableFuture<R> offer(BiConsumer<T, CompletableFuture<R>> consumer) {
+        if (!isStarted)
+            throw new RuntimeException("Pipe Processor must be started!");
+
+        final CompletableFuture<R> f = new CompletableFuture<R>();
+        if (lanes != null ? !lanes.tryPublish(consumer, f) : !tryPublish(consumer, f)) {
+            onReject();
+            return null;
+        }
+        return f;
+    }
+
+    /**
+     * Starts shedding load once the count of occupied slots reaches the high watermark,
+     * and stops once it falls to the low one. Slots of producer lanes, which are not merged
+     * into the ring buffer yet, are counted as occupied as well. Only commands submitted by {@code tryProcess} or
+     * {@code execute} are shed, so that system ones always get through.
+     *
+     * @param highWatermark count of occupied slots, 0 disables shedding. Can't exceed the size of the
+     *                      buffer, plus the size of lane, which the single producer can fill, if lanes are on.
+     */
+    public DisruptorPipeProcessor<T> loadShedding(int highWatermark, int lowWatermark) {
+        long capacity = (long) bufferSize() + laneSize();
+        if (highWatermark < 0 || lowWatermark < 0 || lowWatermark > highWatermark || highWatermark > capacity) {
+            throw new IllegalArgumentException(String.format("Illegal watermarks [high: %d, low: %d, capacity: %d].",
+                    highWatermark, lowWatermark, capacity));
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        return this;
+    }
+
+    @Override
+    public boolean isShedding() {
+        if (highWatermark == 0 || !isStarted) {
+            return false;
+        }
+        long used = bufferSize() - remainingCapacity();
+        ProducerLanes<T> l = lanes;
+        if (l != null) {
+            used += l.backlog();
+        }
+        // any producer might switch the state, but only the one which did it logs
+        boolean isShedding = shedding.get();
+        if (isShedding) {
+            if (used <= lowWatermark) {
+                isShedding = false;
+                if (shedding.compareAndSet(true, false)) {
+                    log.info("Load shedding is stopped.");
+                }
+            }
+        } else if (used >= highWatermark) {
+            isShedding = true;
+            if (shedding.compareAndSet(false, true)) {
+                log.warn("Load shedding is started, {} slots of {} are used.", used, bufferSize());
+            }
+        }
+        return isShedding;
+    }
+
+    public DisruptorPipeProcessor<T> listeners(List<PipeProcessorListener> listeners) {
+        this.listeners = listeners;
+        return this;
+    }
+
+    @Override
+    public long remainingCapacity() {
+        return disruptor.getRingBuffer().remainingCapacity();
+    }
+
+    @Override
+    public int stages() {
+        return disruptorHandlers.size();
+    }
+
+    @Override
+    public long consumerLag(int stage) {
+        long cursor = disruptor.getCursor();
+        long slowest = cursor;
+        for (EventHandler<T> h : disruptorHandlers.get(stage)) {
+            slowest = Math.min(slowest, disruptor.getSequenceValueFor(h));
+        }
+        return cursor - slowest;
+    }
+
+    protected <R> void publishMeasured(BiConsumer<T, CompletableFuture<R>> consumer, CompletableFuture<R> f) {
+        RingBuffer<T> ringBuffer = disruptor.getRingBuffer();
+        long start = System.nanoTime();
+        long sequence = ringBuffer.next();
+        long wait = System.nanoTime() - start;
+        try {
+            consumer.accept(ringBuffer.get(sequence), f);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onClaim(wait);
+        }
+    }
+
+    protected <R> boolean tryPublish(BiConsumer<T, CompletableFuture<R>> consumer, CompletableFuture<R> f) {
+        RingBuffer<T> ringBuffer = disruptor.getRingBuffer();
+        long sequence;
+        try {
+            sequence = ringBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            return false;
+        }
+        try {
+            consumer.accept(ringBuffer.get(sequence), f);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+        return true;
+    }
+
+    protected void onReject() {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onReject();
+        }
+    }
+
+    protected <R> void publishToLane(BiConsumer<T, CompletableFuture<R>> consumer, CompletableFuture<R> f) {
+        if (listeners.size() == 0) {
+            lanes.publish(consumer, f);
+        } else {
+            long start = System.nanoTime();
+            lanes.publish(consumer, f);
+            long wait = System.nanoTime() - start;
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onClaim(wait);
+            }
+        }
+    }
+
     protected WaitStrategy createWaitStrategy() {
         switch (cpuConsumption()) {
             case LOW:
@@ -105,27 +285,66 @@ public abstract class DisruptorPipeProcessor<T extends Destroyable> implements P
             case PHASED:
                 return PhasedBackoffWaitStrategy.withLiteLock((int) 2.5e5, (int) 8.5e5,
                         TimeUnit.NANOSECONDS);
+            case ADAPTIVE:
+                return new AdaptiveWaitStrategy();
         }
         return null;
     }
 
     protected void attachHandlers(Disruptor<T> disruptor) {
-        List<EventHandler<T>[]> disruptorHandlers = handlers.stream()
-                .<EventHandler<T>[]>map(this::convert)
-                .collect(Collectors.toList());
+        disruptorHandlers = new ArrayList<>(handlers.size());
+        for (int i = 0; i < handlers.size(); i++) {
+            disruptorHandlers.add(convert(handlers.get(i), i));
+        }
 
         EventHandlerGroup<T> h = disruptor.handleEventsWith(disruptorHandlers.get(0));
         for (int i = 1; i < disruptorHandlers.size(); i++)
             h = h.then(disruptorHandlers.get(i));
     }
 
-    protected EventHandler<T>[] convert(ProcessorHandler<T>[] h) {
+    protected EventHandler<T>[] convert(ProcessorHandler<T>[] h, int stage) {
         EventHandler<T>[] acs = new EventHandler[h.length];
         for (int i = 0; i < h.length; i++) {
             final ProcessorHandler<T> hh = h[i];
-            acs[i] = (e, c, eob) -> hh.handle(e, eob);
+            if (listeners.size() == 0) {
+                acs[i] = (e, c, eob) -> hh.handle(e, eob);
+            } else {
+                acs[i] = new BatchCountingHandler<>(hh, stage, listeners);
+            }
         }
         return acs;
     }
 
+    /**
+     * Reports the count of events, handled between two end of batch signals. Each
+     * instance is used by the single consumer thread only.
+     */
+    protected static class BatchCountingHandler<T> implements EventHandler<T> {
+        protected final ProcessorHandler<T> handler;
+        protected final int stage;
+        protected final List<PipeProcessorListener> listeners;
+        protected long batchSize;
+
+        public BatchCountingHandler(ProcessorHandler<T> handler, int stage, List<PipeProcessorListener> listeners) {
+            this.handler = handler;
+            this.stage = stage;
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void onEvent(T event, long sequence, boolean endOfBatch) {
+            try {
+                handler.handle(event, endOfBatch);
+            } finally {
+                batchSize++;
+                if (endOfBatch) {
+                    for (int i = 0; i < listeners.size(); i++) {
+                        listeners.get(i).onBatch(stage, batchSize);
+                    }
+                    batchSize = 0;
+                }
+            }
+        }
+    }
+
 }
@@ -5,8 +5,10 @@ import org.reveno.atp.api.Configuration.CpuConsumption;
 import org.reveno.atp.api.EventsManager.EventMetadata;
 import org.reveno.atp.api.commands.EmptyResult;
 import org.reveno.atp.api.commands.Result;
+import org.reveno.atp.api.exceptions.CommandRejectedException;
 import org.reveno.atp.core.api.RestoreableEventBus;
 import org.reveno.atp.core.api.TransactionCommitInfo;
+import org.reveno.atp.core.engine.processor.PipeProcessorListener;
 import org.reveno.atp.core.engine.processor.TransactionPipeProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,15 +19,27 @@ import java.util.concurrent.ThreadFactory;
 
 public class DisruptorTransactionPipeProcessor extends DisruptorPipeProcessor<ProcessorContext> implements TransactionPipeProcessor<ProcessorContext> {
     private static final Logger log = LoggerFactory.getLogger(DisruptorTransactionPipeProcessor.class);
+    protected static final String SHEDDING = "Transactions pipe sheds load.";
+    protected static final String FULL = "Transactions pipe is full.";
     protected final CpuConsumption cpuConsumption;
     protected final int bufferSize;
     protected final ThreadFactory threadFactory;
     protected final EventFactory<ProcessorContext> eventFactory;
+    protected final int laneSize;
 
     public DisruptorTransactionPipeProcessor(TransactionCommitInfo.Builder builder,
                                              CpuConsumption cpuConsumption, int bufferSize, ThreadFactory threadFactory) {
+        this(builder, cpuConsumption, bufferSize, 0, threadFactory);
+    }
+
+    /**
+     * @param laneSize size of per producer lane, or 0 to publish into the multi producer ring buffer directly
+     */
+    public DisruptorTransactionPipeProcessor(TransactionCommitInfo.Builder builder, CpuConsumption cpuConsumption,
+                                             int bufferSize, int laneSize, ThreadFactory threadFactory) {
         this.cpuConsumption = cpuConsumption;
         this.bufferSize = bufferSize;
+        this.laneSize = laneSize;
         this.threadFactory = threadFactory;
         this.eventFactory = () -> new ProcessorContext(builder.create());
     }
@@ -42,7 +56,12 @@ public class DisruptorTransactionPipeProcessor extends DisruptorPipeProcessor<Pr
 
     @Override
     boolean singleProducer() {
-        return false;
+        return laneSize > 0;
+    }
+
+    @Override
+    protected int laneSize() {
+        return laneSize;
     }
 
     @Override
@@ -60,6 +79,18 @@ public class DisruptorTransactionPipeProcessor extends DisruptorPipeProcessor<Pr
         // TODO exception listener that will stop disruptor, mark node Slave, etc.
     }
 
+    @Override
+    public DisruptorTransactionPipeProcessor listeners(List<PipeProcessorListener> listeners) {
+        super.listeners(listeners);
+        return this;
+    }
+
+    @Override
+    public DisruptorTransactionPipeProcessor loadShedding(int highWatermark, int lowWatermark) {
+        super.loadShedding(highWatermark, lowWatermark);
+        return this;
+    }
+
     @Override
     public void sync() {
         CompletableFuture<EmptyResult> res = process((c, f) -> c.reset().sync().systemFlag(SYNC_FLAG).future(f).abort(null));
@@ -72,14 +103,32 @@ public class DisruptorTransactionPipeProcessor extends DisruptorPipeProcessor<Pr
 
     @Override
     public CompletableFuture<EmptyResult> process(List<Object> commands) {
+        if (isShedding()) {
+            onReject();
+            return CompletableFuture.completedFuture(new EmptyResult(rejection(SHEDDING)));
+        }
         return process((e, f) -> e.reset().future(f).addCommands(commands).time(System.nanoTime()));
     }
 
     @Override
     public <R> CompletableFuture<Result<R>> execute(Object command) {
+        if (isShedding()) {
+            onReject();
+            return CompletableFuture.completedFuture(new Result<>(rejection(SHEDDING)));
+        }
         return process((e, f) -> e.reset().future(f).addCommand(command).time(System.nanoTime()).withResult());
     }
 
+    @Override
+    public <R> CompletableFuture<Result<R>> tryExecute(Object command) {
+        if (isShedding()) {
+            onReject();
+            return CompletableFuture.completedFuture(new Result<>(rejection(SHEDDING)));
+        }
+        CompletableFuture<Result<R>> result = offer((e, f) -> e.reset().future(f).addCommand(command).time(System.nanoTime()).withResult());
+        return result != null ? result : CompletableFuture.completedFuture(new Result<>(rejection(FULL)));
+    }
+
     @Override
     public void executeRestore(RestoreableEventBus eventBus, TransactionCommitInfo tx) {
         process((e, f) -> e.reset().restore().transactionId(tx.transactionId())
@@ -87,6 +136,10 @@ public class DisruptorTransactionPipeProcessor extends DisruptorPipeProcessor<Pr
                 .addAll(tx.transactionCommits()));
     }
 
+    protected CommandRejectedException rejection(String reason) {
+        return new CommandRejectedException(reason);
+    }
+
     protected EventMetadata metadata(TransactionCommitInfo tx) {
         return new EventMetadata(true, tx.time());
     }
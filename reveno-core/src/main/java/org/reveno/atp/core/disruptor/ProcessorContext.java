@@ -4,6 +4,7 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import org.reveno.atp.api.EventsManager.EventMetadata;
 import org.reveno.atp.api.transaction.EventBus;
 import org.reveno.atp.core.api.Destroyable;
+import org.reveno.atp.core.api.PipelineStage;
 import org.reveno.atp.core.api.RestoreableEventBus;
 import org.reveno.atp.core.api.TransactionCommitInfo;
 import org.reveno.atp.utils.MapUtils;
@@ -50,6 +51,10 @@ public class ProcessorContext implements Destroyable {
     private EventMetadata eventMetadata;
     @Contended
     private boolean isReplicated;
+    @Contended
+    private final long[] stageStarts = new long[PipelineStage.values().length];
+    @Contended
+    private final long[] stageEnds = new long[PipelineStage.values().length];
     private Throwable abortIssue;
     private RestoreableEventBus eventBus = defaultEventBus;
     private Map<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> markedRecords = MapUtils.linkedFastRepo();
@@ -142,6 +147,14 @@ public class ProcessorContext implements Destroyable {
         return commitInfo;
     }
 
+    public long[] stageStarts() {
+        return stageStarts;
+    }
+
+    public long[] stageEnds() {
+        return stageEnds;
+    }
+
     public Map<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> getMarkedRecords() {
         return markedRecords;
     }
@@ -156,6 +169,16 @@ public class ProcessorContext implements Destroyable {
         return this;
     }
 
+    public ProcessorContext stageStart(PipelineStage stage) {
+        stageStarts[stage.ordinal()] = System.nanoTime();
+        return this;
+    }
+
+    public ProcessorContext stageEnd(PipelineStage stage) {
+        stageEnds[stage.ordinal()] = System.nanoTime();
+        return this;
+    }
+
     public ProcessorContext skipViews() {
         this.skipViews = true;
         return this;
@@ -246,6 +269,10 @@ public class ProcessorContext implements Destroyable {
         commandResult = null;
         eventMetadata = null;
         eventBus = defaultEventBus;
+        for (int i = 0; i < stageStarts.length; i++) {
+            stageStarts[i] = 0L;
+            stageEnds[i] = 0L;
+        }
 
         return this;
     }
@@ -0,0 +1,241 @@
+package org.reveno.atp.core.disruptor;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Ingress of the ring buffer, which gives every producer thread its own single producer,
+ * single consumer lane of pre-allocated slots. The dedicated thread merges lanes in round
+ * robin order, at most {@link #BATCH} slots (or the size of the ring buffer, if it's smaller)
+ * of each lane at once, into the ring buffer, which has a single producer then. So producers
+ * never contend with each other, only with that thread.
+ * <p>
+ * Order of publications is kept within each producer thread only.
+ */
+public class ProducerLanes<T> {
+    protected static final Logger log = LoggerFactory.getLogger(ProducerLanes.class);
+    protected static final int BATCH = 64;
+    protected final RingBuffer<T> ringBuffer;
+    protected final int laneSize;
+    protected final int batch;
+    protected final ThreadLocal<Lane> lane = new ThreadLocal<>();
+    protected volatile Lane[] lanes = new Lane[0];
+    protected volatile boolean isRunning;
+    protected final Thread merger;
+
+    public ProducerLanes(RingBuffer<T> ringBuffer, int laneSize, ThreadFactory threadFactory) {
+        if (Integer.bitCount(laneSize) != 1) {
+            throw new IllegalArgumentException("Lane size must be of power of 2.");
+        }
+        this.ringBuffer = ringBuffer;
+        this.laneSize = laneSize;
+        // claiming more slots than the ring buffer has never succeeds
+        this.batch = Math.min(BATCH, ringBuffer.getBufferSize());
+        this.merger = threadFactory.newThread(this::merge);
+    }
+
+    public void start() {
+        isRunning = true;
+        merger.start();
+    }
+
+    /**
+     * Stops merging once all lanes are drained.
+     */
+    public void stop() {
+        isRunning = false;
+        LockSupport.unpark(merger);
+        try {
+            merger.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> void publish(BiConsumer<T, CompletableFuture<R>> consumer, CompletableFuture<R> future) {
+        Lane l = lane.get();
+        if (l == null) {
+            l = register();
+        }
+        l.offer((BiConsumer<T, CompletableFuture<?>>) (Object) consumer, future);
+    }
+
+    /**
+     * @return false if the lane of the current thread is full
+     */
+    @SuppressWarnings("unchecked")
+    public <R> boolean tryPublish(BiConsumer<T, CompletableFuture<R>> consumer, CompletableFuture<R> future) {
+        Lane l = lane.get();
+        if (l == null) {
+            l = register();
+        }
+        return l.tryOffer((BiConsumer<T, CompletableFuture<?>>) (Object) consumer, future);
+    }
+
+    /**
+     * @return count of slots published to lanes, which are not merged into the ring buffer yet
+     */
+    public long backlog() {
+        long backlog = 0;
+        for (Lane l : lanes) {
+            backlog += l.size();
+        }
+        return backlog;
+    }
+
+    protected synchronized Lane register() {
+        Lane l = new Lane(laneSize, Thread.currentThread());
+        Lane[] result = Arrays.copyOf(lanes, lanes.length + 1);
+        result[lanes.length] = l;
+        lanes = result;
+        lane.set(l);
+        return l;
+    }
+
+    protected synchronized void unregisterDead() {
+        List<Lane> alive = new ArrayList<>(lanes.length);
+        for (Lane l : lanes) {
+            if (l.owner.isAlive() || !l.isEmpty()) {
+                alive.add(l);
+            }
+        }
+        if (alive.size() != lanes.length) {
+            lanes = alive.toArray(new Lane[alive.size()]);
+        }
+    }
+
+    protected void merge() {
+        int idle = 0;
+        long rounds = 0;
+        while (true) {
+            boolean running = isRunning;
+            int merged = 0;
+            Lane[] current = lanes;
+            for (Lane l : current) {
+                merged += l.drainTo(ringBuffer, batch);
+            }
+            if (merged > 0) {
+                idle = 0;
+            } else if (!running) {
+                break;
+            } else {
+                idle(++idle);
+            }
+            if ((++rounds & 0xFFFF) == 0) {
+                unregisterDead();
+            }
+        }
+        log.info("Producer lanes are stopped.");
+    }
+
+    protected void idle(int idle) {
+        if (idle < 100) {
+            // spin
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(idle - 199, 50) * 1000L);
+        }
+    }
+
+    /**
+     * Single producer, single consumer queue of pre-allocated slots.
+     */
+    protected static class Lane {
+        protected final Thread owner;
+        protected final int mask;
+        protected final BiConsumer<Object, CompletableFuture<?>>[] consumers;
+        protected final CompletableFuture<?>[] futures;
+        // padded on both sides, so that producer and consumer don't false share
+        protected final Sequence head = new Sequence(0L);
+        protected final Sequence tail = new Sequence(0L);
+        protected long cachedHead;
+
+        public Lane(int size, Thread owner) {
+            this.owner = owner;
+            this.mask = size - 1;
+            this.consumers = newConsumers(size);
+            this.futures = new CompletableFuture<?>[size];
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        protected static BiConsumer<Object, CompletableFuture<?>>[] newConsumers(int size) {
+            return new BiConsumer[size];
+        }
+
+        public boolean isEmpty() {
+            return head.get() == tail.get();
+        }
+
+        public long size() {
+            // head is read first, so that the size is never negative
+            long h = head.get();
+            return tail.get() - h;
+        }
+
+        public void offer(BiConsumer<?, CompletableFuture<?>> consumer, CompletableFuture<?> future) {
+            long t = tail.get();
+            if (t - cachedHead > mask) {
+                while (t - (cachedHead = head.get()) > mask) {
+                    Thread.yield();
+                }
+            }
+            put(t, consumer, future);
+        }
+
+        public boolean tryOffer(BiConsumer<?, CompletableFuture<?>> consumer, CompletableFuture<?> future) {
+            long t = tail.get();
+            if (t - cachedHead > mask && t - (cachedHead = head.get()) > mask) {
+                return false;
+            }
+            put(t, consumer, future);
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected void put(long t, BiConsumer<?, CompletableFuture<?>> consumer, CompletableFuture<?> future) {
+            int index = (int) t & mask;
+            consumers[index] = (BiConsumer<Object, CompletableFuture<?>>) consumer;
+            futures[index] = future;
+            tail.set(t + 1);
+        }
+
+        public <T> int drainTo(RingBuffer<T> ringBuffer, int limit) {
+            long h = head.get();
+            int count = (int) Math.min(tail.get() - h, limit);
+            if (count == 0) {
+                return 0;
+            }
+            long hi = ringBuffer.next(count);
+            long lo = hi - count + 1;
+            try {
+                for (long s = lo; s <= hi; s++, h++) {
+                    int index = (int) h & mask;
+                    try {
+                        consumers[index].accept(ringBuffer.get(s), futures[index]);
+                    } catch (Throwable t) {
+                        futures[index].completeExceptionally(t);
+                    }
+                    consumers[index] = null;
+                    futures[index] = null;
+                }
+            } finally {
+                ringBuffer.publish(lo, hi);
+                head.set(h);
+            }
+            return count;
+        }
+    }
+
+}
@@ -3,17 +3,22 @@ package org.reveno.atp.core.engine;
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import org.reveno.atp.api.commands.EmptyResult;
 import org.reveno.atp.api.commands.Result;
+import org.reveno.atp.api.exceptions.FailoverRulesException;
 import org.reveno.atp.api.transaction.TransactionInterceptor;
 import org.reveno.atp.api.transaction.TransactionStage;
 import org.reveno.atp.commons.BoolBiConsumer;
+import org.reveno.atp.core.api.PipelineStage;
+import org.reveno.atp.core.api.PipelineTimingsListener;
 import org.reveno.atp.core.api.channel.Buffer;
 import org.reveno.atp.core.api.channel.Channel;
 import org.reveno.atp.core.disruptor.ProcessorContext;
+import org.reveno.atp.core.engine.components.InterceptedBatch;
 import org.reveno.atp.core.engine.components.TransactionExecutor;
 import org.reveno.atp.core.engine.processor.PipeProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -55,12 +60,21 @@ public class InputHandlers {
     protected List<TransactionInterceptor> replicationInterceptors;
     protected List<TransactionInterceptor> transactionInterceptors;
     protected List<TransactionInterceptor> journalingInterceptors;
+    protected List<PipelineTimingsListener> timingsListeners;
+    protected final InterceptedBatch[] batches = new InterceptedBatch[TransactionStage.values().length];
     private boolean changedClassLoaderReplicator = false;
+    protected ProcessorContext ctxR;
+    protected final Consumer<Buffer> replicationConsumer = b ->
+            services.serializer().serializeCommands(ctxR.getCommands(), b);
     protected final BoolBiConsumer<ProcessorContext> replicator = (c, eob) -> {
         if (!changedClassLoaderReplicator) {
             changeClassLoaderIfRequired();
             changedClassLoaderReplicator = true;
         }
+        this.ctxR = c;
+        if (!services.failoverManager().replicate(replicationConsumer)) {
+            throw new FailoverRulesException("Commands can't be replicated to slaves.");
+        }
     };
     private boolean endOfBatch = false;
     private boolean changedClassLoaderJournaler = false;
@@ -74,6 +88,7 @@ public class InputHandlers {
         services.transactionJournaler().writeData(journalerConsumer, eob);
     };
     private Map<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> markedEntitiesStore;
+    protected final List<ProcessorContext> fusedBatch = new ArrayList<>();
     protected final BoolBiConsumer<ProcessorContext> transactionImmutableExecutor = (c, eob) -> {
         Map<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> old = null;
         if (endOfBatch) {
@@ -102,6 +117,10 @@ public class InputHandlers {
         replicationInterceptors = context.interceptorCollection().getInterceptors(TransactionStage.REPLICATION);
         transactionInterceptors = context.interceptorCollection().getInterceptors(TransactionStage.TRANSACTION);
         journalingInterceptors = context.interceptorCollection().getInterceptors(TransactionStage.JOURNALING);
+        timingsListeners = context.interceptorCollection().getTimingsListeners();
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new InterceptedBatch();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -127,12 +146,13 @@ public class InputHandlers {
                    TransactionStage stage, List<TransactionInterceptor> interceptors,
                    BoolBiConsumer<ProcessorContext> body, boolean isLast) {
         if ((c.isSystem() && !c.isAborted()) || (!c.isAborted() && filter)) {
+            boolean intercepted = false;
             try {
                 if (c.isSystem()) {
                     c.transactionId(transactionId.getAsLong());
                 }
                 if (stage != null && interceptors != null) {
-                    interceptors(stage, interceptors, c);
+                    intercepted = interceptors(stage, interceptors, c);
                 }
                 if (!c.isSystem()) {
                     body.accept(c, eob);
@@ -144,45 +164,53 @@ public class InputHandlers {
                     c.future().complete(new EmptyResult(t));
                 }
             }
+            if (intercepted) {
+                batches[stage.ordinal()].add(c.transactionId(), c.isAborted());
+            }
         } else if (isLast && isSync(c)) {
             c.future().complete(EMPTY_RESULT);
         }
+        if (eob && stage != null && interceptors != null) {
+            batchEnd(stage, interceptors);
+        }
     }
 
     public void replication(ProcessorContext c, boolean endOfBatch) {
         ex(c, !c.isRestore() && !c.isSync() && !c.isReplicated(), endOfBatch,
                 TransactionStage.REPLICATION, replicationInterceptors, replicator);
+        if (endOfBatch) {
+            services.failoverManager().flush();
+        }
     }
 
     public void transactionImmutableExecution(ProcessorContext c, boolean endOfBatch) {
-        if (!c.isRestore() && !c.isSync()) {
-            c.transactionId(nextTransactionId.getAsLong());
-        }
-
-        ex(c, !c.isSync(), endOfBatch, TransactionStage.TRANSACTION, transactionInterceptors,
-                transactionImmutableExecutor);
+        transactionExecution(c, endOfBatch, transactionImmutableExecutor);
     }
 
     public void transactionMutableExecution(ProcessorContext c, boolean endOfBatch) {
-        if (!c.isRestore() && !c.isSync()) {
-            c.transactionId(nextTransactionId.getAsLong());
-        }
-
-        ex(c, !c.isSync(), endOfBatch, TransactionStage.TRANSACTION, transactionInterceptors,
-                transactionMutableExecutor);
+        transactionExecution(c, endOfBatch, transactionMutableExecutor);
     }
 
     public void journaling(ProcessorContext c, boolean endOfBatch) {
+        boolean timed = isTimed(c);
+        if (timed) c.stageStart(PipelineStage.JOURNALING);
         ex(c, !c.isSync() && c.getTransactions().size() > 0 && !c.isRestore(), endOfBatch,
                 TransactionStage.JOURNALING, journalingInterceptors, journaler);
+        if (timed) c.stageEnd(PipelineStage.JOURNALING);
     }
 
     public void viewsImmutableUpdate(ProcessorContext c, boolean endOfBatch) {
+        boolean timed = isTimed(c);
+        if (timed) c.stageStart(PipelineStage.VIEWS);
         ex(c, !c.isSync(), endOfBatch, viewsImmutableUpdater);
+        if (timed) c.stageEnd(PipelineStage.VIEWS);
     }
 
     public void viewsMutableUpdate(ProcessorContext c, boolean endOfBatch) {
+        boolean timed = isTimed(c);
+        if (timed) c.stageStart(PipelineStage.VIEWS);
         ex(c, !c.isSync(), endOfBatch, viewsMutableUpdater);
+        if (timed) c.stageEnd(PipelineStage.VIEWS);
     }
 
     public void eventsPublishing(ProcessorContext c, boolean endOfBatch) {
@@ -191,6 +219,8 @@ public class InputHandlers {
 
     @SuppressWarnings("unchecked")
     public void result(ProcessorContext c, boolean endOfBatch) {
+        boolean timed = isTimed(c);
+        if (timed) c.stageStart(PipelineStage.RESULT);
         if (!(c.isRestore() || isSync(c))) {
             if (c.isAborted()) {
                 c.future().complete(new EmptyResult(c.abortIssue()));
@@ -201,16 +231,111 @@ public class InputHandlers {
                     c.future().complete(EMPTY_RESULT);
             }
         }
+        if (timed) {
+            c.stageEnd(PipelineStage.RESULT);
+            notifyTimings(c);
+        }
+    }
+
+    /**
+     * Runs all stages of the mutable model pipe on the current thread.
+     */
+    public void fusedMutable(ProcessorContext c, boolean endOfBatch) {
+        transactionMutableExecution(c, endOfBatch);
+        if (!c.isAborted())
+            viewsMutableUpdate(c, endOfBatch);
+        fusedCompletion(c, endOfBatch);
+    }
+
+    /**
+     * Runs all stages of the immutable model pipe on the current thread.
+     */
+    public void fusedImmutable(ProcessorContext c, boolean endOfBatch) {
+        // views are updated right after execution, so marked records can't be shared across the batch
+        transactionExecution(c, endOfBatch, transactionMutableExecutor);
+        viewsImmutableUpdate(c, endOfBatch);
+        fusedCompletion(c, endOfBatch);
+    }
+
+    /*
+     * results and events of the batch are published only after the end of batch
+     * journaling, so that none of them is observed before it's flushed
+     */
+    protected void fusedCompletion(ProcessorContext c, boolean endOfBatch) {
+        journaling(c, endOfBatch);
+        fusedBatch.add(c);
+        if (endOfBatch) {
+            int last = fusedBatch.size() - 1;
+            for (int i = 0; i <= last; i++) {
+                ProcessorContext ctx = fusedBatch.get(i);
+                result(ctx, i == last);
+                eventsPublishing(ctx, i == last);
+            }
+            fusedBatch.clear();
+        }
+    }
+
+    protected void transactionExecution(ProcessorContext c, boolean endOfBatch, BoolBiConsumer<ProcessorContext> executor) {
+        if (!c.isRestore() && !c.isSync()) {
+            c.transactionId(nextTransactionId.getAsLong());
+        }
+
+        boolean timed = isTimed(c);
+        if (timed) c.stageStart(PipelineStage.EXECUTION);
+        ex(c, !c.isSync(), endOfBatch, TransactionStage.TRANSACTION, transactionInterceptors, executor);
+        if (timed) c.stageEnd(PipelineStage.EXECUTION);
     }
 
     public void destroy() {
     }
 
-    protected void interceptors(TransactionStage stage, List<TransactionInterceptor> interceptors, ProcessorContext c) {
-        if (!c.isRestore() && interceptors.size() > 0)
+    /**
+     * @return true if the transaction was intercepted
+     */
+    protected boolean interceptors(TransactionStage stage, List<TransactionInterceptor> interceptors, ProcessorContext c) {
+        if (c.isRestore() || interceptors.size() == 0) {
+            return false;
+        }
+        InterceptedBatch batch = batches[stage.ordinal()];
+        if (!batch.isStarted()) {
+            batch.start();
             for (int i = 0; i < interceptors.size(); i++) {
-                interceptors.get(i).intercept(c.transactionId(), c.time(), c.systemFlag(), services.repository(), stage);
+                interceptors.get(i).onBatchStart(stage);
+            }
+        }
+        for (int i = 0; i < interceptors.size(); i++) {
+            interceptors.get(i).intercept(c.transactionId(), c.time(), c.systemFlag(), services.repository(), stage);
+        }
+        return true;
+    }
+
+    protected void batchEnd(TransactionStage stage, List<TransactionInterceptor> interceptors) {
+        InterceptedBatch batch = batches[stage.ordinal()];
+        if (batch.isStarted()) {
+            try {
+                for (int i = 0; i < interceptors.size(); i++) {
+                    interceptors.get(i).onBatchEnd(batch, services.repository(), stage);
+                }
+            } catch (Throwable t) {
+                log.error("batchEnd", t);
+            } finally {
+                batch.reset();
             }
+        }
+    }
+
+    protected void notifyTimings(ProcessorContext c) {
+        for (int i = 0; i < timingsListeners.size(); i++) {
+            timingsListeners.get(i).onTimings(c.transactionId(), c.time(), c.stageStarts(), c.stageEnds());
+        }
+    }
+
+    /*
+     * only user commands are timed, since restore, sync and other system
+     * transactions would just pollute latency distribution
+     */
+    protected boolean isTimed(ProcessorContext c) {
+        return timingsListeners.size() > 0 && !c.isRestore() && !c.isSystem() && !c.isReplicated();
     }
 
     protected void rollIfRequired(long transactionId) {
@@ -0,0 +1,45 @@
+package org.reveno.atp.core.engine;
+
+import org.reveno.atp.api.EventsManager.EventMetadata;
+import org.reveno.atp.core.api.RestoreableEventBus;
+import org.reveno.atp.core.api.TransactionCommitInfo;
+import org.reveno.atp.core.disruptor.ProcessorContext;
+import org.reveno.atp.core.engine.components.TransactionExecutor;
+
+/**
+ * Applies replayed transactions right on the calling thread, instead of publishing them
+ * to the transactions pipe, since its replication, journaling and result stages do nothing
+ * on restore anyway. Views and events are handled inline the same way as by the pipe.
+ * <p>
+ * The repository is shared with the pipe without any synchronization, so it must be used
+ * only while the pipe is idle, like on startup.
+ */
+public class RestoreExecutor {
+    protected final WorkflowContext services;
+    protected final TransactionExecutor txExecutor = new TransactionExecutor();
+    protected final ProcessorContext context;
+
+    public RestoreExecutor(WorkflowContext services) {
+        this.services = services;
+        this.context = new ProcessorContext(services.transactionCommitBuilder().create());
+    }
+
+    /**
+     * @return false if the transaction was aborted
+     */
+    public boolean execute(RestoreableEventBus eventBus, TransactionCommitInfo tx) {
+        ProcessorContext c = context.reset().restore().transactionId(tx.transactionId())
+                .eventBus(eventBus).eventMetadata(new EventMetadata(true, tx.time()))
+                .addTransactions(tx.transactionCommits());
+        txExecutor.executeCommands(c, services);
+        if (c.isAborted()) {
+            return false;
+        }
+        services.viewsProcessor().process(c.getMarkedRecords());
+        if (c.getEvents().size() > 0) {
+            services.eventPublisher().publishEvents(true, c.transactionId(), c.eventMetadata(), c.getEvents().toArray());
+        }
+        return true;
+    }
+
+}
@@ -5,6 +5,7 @@ import org.reveno.atp.core.RevenoConfiguration;
 import org.reveno.atp.core.api.*;
 import org.reveno.atp.core.engine.components.CommandsManager;
 import org.reveno.atp.core.engine.components.SerializersChain;
+import org.reveno.atp.core.engine.components.TimersManager;
 import org.reveno.atp.core.engine.components.TransactionsManager;
 import org.reveno.atp.core.events.EventPublisher;
 import org.reveno.atp.core.snapshots.SnapshottersManager;
@@ -30,6 +31,8 @@ public interface WorkflowContext {
 
     CommandsManager commandsManager();
 
+    TimersManager timers();
+
     InterceptorCollection interceptorCollection();
 
 
@@ -1,6 +1,7 @@
 package org.reveno.atp.core.engine;
 
 import org.reveno.atp.api.Configuration.ModelType;
+import org.reveno.atp.api.Configuration.PipelineMode;
 import org.reveno.atp.api.commands.EmptyResult;
 import org.reveno.atp.api.commands.Result;
 import org.reveno.atp.api.exceptions.FailoverRulesException;
@@ -20,6 +21,7 @@ import java.util.function.Supplier;
 @SuppressWarnings("unchecked")
 public class WorkflowEngine {
     protected final InputHandlers handlers;
+    protected final RestoreExecutor restoreExecutor;
     protected volatile long lastTransactionId;
     protected volatile boolean started = false;
     protected ModelType modelType;
@@ -32,6 +34,7 @@ public class WorkflowEngine {
         this.context = context;
         this.inputProcessor = new PipeProcessorFailoverWrapper(inputProcessor);
         this.handlers = new InputHandlers(context, this::nextTransactionId, this::getLastTransactionId);
+        this.restoreExecutor = new RestoreExecutor(context);
     }
 
     public void init() {
@@ -60,6 +63,7 @@ public class WorkflowEngine {
         started = false;
 
         context.failoverManager().processPendingMessages();
+        context.failoverManager().stop();
         inputProcessor.shutdown();
         handlers.destroy();
     }
@@ -68,6 +72,13 @@ public class WorkflowEngine {
         return inputProcessor;
     }
 
+    /**
+     * Executor of replayed transactions, which bypasses the pipe, so it might be used only while the pipe is idle.
+     */
+    public RestoreExecutor getRestoreExecutor() {
+        return restoreExecutor;
+    }
+
     public long getLastTransactionId() {
         return lastTransactionId;
     }
@@ -81,7 +92,13 @@ public class WorkflowEngine {
     }
 
     protected void buildPipe(PipeProcessor<ProcessorContext> pipe) { // 生成管道
-        if (modelType == ModelType.MUTABLE) {
+        if (context.configuration().pipelineMode() == PipelineMode.FUSED) {
+            if (modelType == ModelType.MUTABLE) {
+                pipe.then(handlers::fusedMutable);
+            } else {
+                pipe.then(handlers::fusedImmutable);
+            }
+        } else if (modelType == ModelType.MUTABLE) {
             pipe.then((c, eof) -> {
                 handlers.transactionMutableExecution(c, eof);
                 if (!c.isAborted())
@@ -114,11 +131,21 @@ public class WorkflowEngine {
             return execute(() -> pipe.execute(command));
         }
 
+        @Override
+        public <R> CompletableFuture<Result<R>> tryExecute(Object command) {
+            return execute(() -> pipe.tryExecute(command));
+        }
+
         @Override
         public <R> CompletableFuture<R> process(BiConsumer<ProcessorContext, CompletableFuture<R>> consumer) {
             return execute(() -> pipe.process(consumer));
         }
 
+        @Override
+        public <R> CompletableFuture<R> tryProcess(BiConsumer<ProcessorContext, CompletableFuture<R>> consumer) {
+            return execute(() -> pipe.tryProcess(consumer));
+        }
+
         @Override
         public void executeRestore(RestoreableEventBus eventBus, TransactionCommitInfo transaction) {
             pipe.executeRestore(eventBus, transaction);
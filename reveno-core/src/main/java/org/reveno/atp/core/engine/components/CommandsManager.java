@@ -2,21 +2,19 @@ package org.reveno.atp.core.engine.components;
 
 import org.reveno.atp.api.commands.CommandContext;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
 public class CommandsManager {
 
-    protected Map<Class<?>, CommandWithResult<?, ?>> commandsHandlers = new HashMap<>();
+    protected HandlersTable<CommandWithResult<?, ?>> commandsHandlers = new HandlersTable<>();
 
     public <T, U> void register(Class<T> command, Class<U> result, BiFunction<T, CommandContext, U> handler) {
-        commandsHandlers.put(command, new CommandWithResult<T, U>(result, handler));
+        commandsHandlers.register(command, new CommandWithResult<T, U>(result, handler));
     }
 
     public <T> void register(Class<T> command, BiConsumer<T, CommandContext> handler) {
-        commandsHandlers.put(command, new CommandWithResult<T, Void>(handler));
+        commandsHandlers.register(command, new CommandWithResult<T, Void>(handler));
     }
 
     @SuppressWarnings({"rawtypes", "unchecked"})
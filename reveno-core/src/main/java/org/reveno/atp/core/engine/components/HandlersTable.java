@@ -0,0 +1,64 @@
+package org.reveno.atp.core.engine.components;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Handlers of types, stored in array by dense ids, which are assigned in order of registration.
+ * Ids are resolved through {@link ClassValue}, which caches them right in the classes, so that
+ * dispatch neither hashes classes nor walks hash buckets.
+ * <p>
+ * Registration is expected to happen before the pipe is started.
+ */
+@SuppressWarnings("unchecked")
+public class HandlersTable<H> {
+    public static final int NO_ID = -1;
+    protected final Map<Class<?>, Integer> ids = new HashMap<>();
+    protected Object[] handlers = new Object[16];
+    protected final ClassValue<Integer> classIds = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            synchronized (HandlersTable.this) {
+                return ids.getOrDefault(type, NO_ID);
+            }
+        }
+    };
+
+    /**
+     * @return id of the type
+     */
+    public synchronized int register(Class<?> type, H handler) {
+        Integer id = ids.get(type);
+        if (id == null) {
+            id = ids.size();
+            if (id == handlers.length) {
+                handlers = Arrays.copyOf(handlers, handlers.length << 1);
+            }
+            ids.put(type, id);
+            classIds.remove(type);
+        }
+        handlers[id] = handler;
+        return id;
+    }
+
+    /**
+     * @return id of the type, or {@link #NO_ID} if it wasn't registered
+     */
+    public int id(Class<?> type) {
+        return classIds.get(type);
+    }
+
+    public H get(int id) {
+        return id == NO_ID ? null : (H) handlers[id];
+    }
+
+    public H get(Class<?> type) {
+        return get(id(type));
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+}
@@ -0,0 +1,61 @@
+package org.reveno.atp.core.engine.components;
+
+import org.reveno.atp.api.transaction.TransactionBatch;
+
+/**
+ * Accumulates summary of transactions intercepted at some stage until the end of batch.
+ */
+public class InterceptedBatch implements TransactionBatch {
+    protected boolean started;
+    protected long first;
+    protected long last;
+    protected int count;
+    protected int aborted;
+
+    @Override
+    public long firstTransactionId() {
+        return first;
+    }
+
+    @Override
+    public long lastTransactionId() {
+        return last;
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public int abortedCount() {
+        return aborted;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public void start() {
+        started = true;
+    }
+
+    public void add(long transactionId, boolean isAborted) {
+        if (count++ == 0) {
+            first = transactionId;
+        }
+        last = transactionId;
+        if (isAborted) {
+            aborted++;
+        }
+    }
+
+    public void reset() {
+        started = false;
+        first = 0L;
+        last = 0L;
+        count = 0;
+        aborted = 0;
+    }
+
+}
@@ -2,8 +2,10 @@ package org.reveno.atp.core.engine.components;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.api.domain.WriteableEntityStore;
 import org.reveno.atp.api.domain.WriteableRepository;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -17,6 +19,7 @@ public class RecordingRepository implements WriteableRepository {
     protected static final Object EMPTY = new Object();
     protected Map<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> markedRecords;
     protected boolean readMarking = true;
+    protected final Map<Class<?>, RecordingEntityStore<?>> stores = new HashMap<>();
     private WriteableRepository underlyingRepo;
 
     public RecordingRepository underlying(WriteableRepository repository) {
@@ -109,4 +112,79 @@ public class RecordingRepository implements WriteableRepository {
         return underlyingRepo.getEntityTypes();
     }
 
+    /**
+     * Since both underlying repository and marked records map can be changed between transactions,
+     * handle resolves them again only when they are actually replaced.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> WriteableEntityStore<T> entityStore(Class<T> entityType) {
+        return (WriteableEntityStore<T>) stores.computeIfAbsent(entityType, RecordingEntityStore::new);
+    }
+
+    protected class RecordingEntityStore<T> implements WriteableEntityStore<T> {
+        protected final Class<T> type;
+        protected WriteableRepository repository;
+        protected WriteableEntityStore<T> underlying;
+        protected Map<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> marks;
+        protected Long2ObjectLinkedOpenHashMap<Object> marked;
+
+        public RecordingEntityStore(Class<T> type) {
+            this.type = type;
+        }
+
+        @Override
+        public Class<T> type() {
+            return type;
+        }
+
+        @Override
+        public T get(long id) {
+            T result = underlying().get(id);
+            if (result != null && readMarking)
+                marked().put(id, result);
+            return result;
+        }
+
+        @Override
+        public T getClean(long id) {
+            return underlying().getClean(id);
+        }
+
+        @Override
+        public boolean has(long id) {
+            return underlying().has(id);
+        }
+
+        @Override
+        public T store(long id, T entity) {
+            marked().put(id, entity);
+            return underlying().store(id, entity);
+        }
+
+        @Override
+        public T remove(long id) {
+            Long2ObjectLinkedOpenHashMap<Object> marked = marked();
+            marked.remove(id);
+            marked.put(-id, EMPTY);
+            return underlying().remove(id);
+        }
+
+        protected WriteableEntityStore<T> underlying() {
+            if (repository != underlyingRepo) {
+                repository = underlyingRepo;
+                underlying = repository.entityStore(type);
+            }
+            return underlying;
+        }
+
+        protected Long2ObjectLinkedOpenHashMap<Object> marked() {
+            if (marks != markedRecords) {
+                marks = markedRecords;
+                marked = marks.get(type);
+            }
+            return marked;
+        }
+    }
+
 }
@@ -2,6 +2,7 @@ package org.reveno.atp.core.engine.components;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.reveno.atp.api.WireSchema;
 import org.reveno.atp.api.exceptions.BufferOutOfBoundsException;
 import org.reveno.atp.core.api.TransactionCommitInfo;
 import org.reveno.atp.core.api.TransactionCommitInfo.Builder;
@@ -64,6 +65,11 @@ public class SerializersChain implements TransactionInfoSerializer {
         });
     }
 
+    @Override
+    public <T> void registerWireSchema(Class<T> type, WireSchema<T> schema) {
+        transactionSerializers.forEach(s -> s.registerWireSchema(type, schema));
+    }
+
     @Override
     public void serialize(TransactionCommitInfo info, Buffer buffer) {
         tryTo(buffer, serializer.get().with(buffer, info));
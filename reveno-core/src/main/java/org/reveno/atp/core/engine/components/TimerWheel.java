@@ -0,0 +1,168 @@
+package org.reveno.atp.core.engine.components;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hierarchical timer wheel of {@link #LEVELS} levels of {@link #SLOTS} slots each, where every
+ * slot of the level spans the whole level below. Timers are kept in intrusive linked lists over
+ * primitive arrays, so adding and expiring of the timer are O(1) and garbage free, and every tick
+ * touches a single slot, cascading timers of the upper levels down once per revolution of the
+ * level below.
+ * <p>
+ * Not thread safe, it's used by the transaction execution thread only.
+ */
+public class TimerWheel {
+    protected static final int BITS = 8;
+    protected static final int SLOTS = 1 << BITS;
+    protected static final int MASK = SLOTS - 1;
+    protected static final int LEVELS = 4;
+    protected static final long SPAN = 1L << (BITS * LEVELS);
+    protected static final int NIL = -1;
+    protected final long tickMillis;
+    protected final int[][] heads = new int[LEVELS][SLOTS];
+    protected long[] ids;
+    protected long[] deadlines;
+    protected int[] next;
+    protected int free = NIL;
+    protected int allocated;
+    protected int size;
+    /**
+     * The next tick to be expired.
+     */
+    protected long tick;
+
+    public TimerWheel(long tickMillis, int capacity) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive.");
+        }
+        this.tickMillis = tickMillis;
+        capacity = Math.max(capacity, 16);
+        this.ids = new long[capacity];
+        this.deadlines = new long[capacity];
+        this.next = new int[capacity];
+        reset(0L);
+    }
+
+    /**
+     * Removes all timers and moves the wheel to the given time.
+     */
+    public void reset(long now) {
+        for (int[] level : heads) {
+            Arrays.fill(level, NIL);
+        }
+        free = NIL;
+        allocated = 0;
+        size = 0;
+        tick = now / tickMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds timer, which will be expired by the first {@link #advance(long, LongConsumer)}
+     * to the time not earlier than {@code fireAt}. Timers which are already due are expired
+     * by the next advance.
+     */
+    public void add(long id, long fireAt) {
+        int e = allocate();
+        ids[e] = id;
+        deadlines[e] = Math.max(fireAt, 0L) / tickMillis + (fireAt % tickMillis > 0 ? 1 : 0);
+        insert(e);
+        size++;
+    }
+
+    /**
+     * Expires all timers due up to the given time.
+     *
+     * @return amount of expired timers
+     */
+    public int advance(long now, LongConsumer expired) {
+        long target = now / tickMillis;
+        int count = 0;
+        while (tick <= target) {
+            if (size == 0) {
+                tick = target + 1;
+                break;
+            }
+            int index = (int) (tick & MASK);
+            if (index == 0) {
+                for (int level = 1; level < LEVELS; level++) {
+                    int slot = (int) ((tick >>> (BITS * level)) & MASK);
+                    cascade(level, slot);
+                    if (slot != 0) {
+                        break;
+                    }
+                }
+            }
+            int e = heads[0][index];
+            heads[0][index] = NIL;
+            while (e != NIL) {
+                int n = next[e];
+                long id = ids[e];
+                release(e);
+                count++;
+                expired.accept(id);
+                e = n;
+            }
+            tick++;
+        }
+        return count;
+    }
+
+    protected void cascade(int level, int slot) {
+        int e = heads[level][slot];
+        heads[level][slot] = NIL;
+        while (e != NIL) {
+            int n = next[e];
+            insert(e);
+            e = n;
+        }
+    }
+
+    protected void insert(int e) {
+        long deadline = deadlines[e];
+        long delta = deadline - tick;
+        int level = 0;
+        int slot;
+        if (delta < SLOTS) {
+            slot = (int) (Math.max(deadline, tick) & MASK);
+        } else {
+            if (delta >= SPAN) {
+                // cascaded down and placed again once the top level turns around
+                deadline = tick + SPAN - 1;
+                delta = SPAN - 1;
+            }
+            while (delta >= 1L << (BITS * (level + 1))) {
+                level++;
+            }
+            slot = (int) ((deadline >>> (BITS * level)) & MASK);
+        }
+        next[e] = heads[level][slot];
+        heads[level][slot] = e;
+    }
+
+    protected int allocate() {
+        if (free != NIL) {
+            int e = free;
+            free = next[e];
+            return e;
+        }
+        if (allocated == ids.length) {
+            int capacity = ids.length << 1;
+            ids = Arrays.copyOf(ids, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return allocated++;
+    }
+
+    protected void release(int e) {
+        next[e] = free;
+        free = e;
+        size--;
+    }
+
+}
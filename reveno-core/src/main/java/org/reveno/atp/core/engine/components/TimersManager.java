@@ -0,0 +1,247 @@
+package org.reveno.atp.core.engine.components;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.reveno.atp.api.commands.CommandContext;
+import org.reveno.atp.api.domain.Repository;
+import org.reveno.atp.api.transaction.Timers;
+import org.reveno.atp.api.transaction.TransactionContext;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps timers as {@link Timer} entities of the repository, which is the only source of truth,
+ * and indexes them by the {@link TimerWheel}. The wheel is advanced by {@link FireTimers} system
+ * command, which only collects due timers. Each of them is fired then by its own {@link FireTimer}
+ * command, which executes the action of timer along with {@link FiredTimers} transaction removing it,
+ * so firing is journaled and replayed as any other transaction, and the failed action doesn't affect
+ * others.
+ * <p>
+ * Cancelled or rolled back timers are left in the wheel and skipped once expired, since only
+ * timers which are still in the repository are fired. Id of rolled back timer is reused by
+ * the next one, so the same id might expire twice within one tick, but is fired once.
+ * <p>
+ * Timer, which action has failed, is kept and fired again not earlier than {@link #retryDelay(long)}.
+ */
+public class TimersManager implements Timers, BiConsumer<TimersManager.FiredTimers, TransactionContext> {
+    protected final TimerWheel wheel;
+    protected final LongOpenHashSet due = new LongOpenHashSet();
+    protected TransactionContext context;
+    protected long retryDelay = 1000;
+    protected boolean indexed = true;
+    protected volatile boolean hasPending;
+
+    public TimersManager(long tickMillis) {
+        this.wheel = new TimerWheel(tickMillis, 1024);
+    }
+
+    public TimersManager context(TransactionContext context) {
+        this.context = context;
+        return this;
+    }
+
+    /**
+     * Whether timers are indexed for firing, which is not required on replicas.
+     */
+    public TimersManager indexed(boolean indexed) {
+        this.indexed = indexed;
+        return this;
+    }
+
+    /**
+     * Delay in milliseconds before the timer is fired again, if its action has failed.
+     */
+    public TimersManager retryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+        return this;
+    }
+
+    /**
+     * Might be called from any thread.
+     *
+     * @return true if there might be timers to be fired
+     */
+    public boolean hasPending() {
+        return hasPending;
+    }
+
+    @Override
+    public long schedule(long fireAt, Object transactionAction) {
+        TimersInfo info = context.repo().get(TimersInfo.class, 0L);
+        long id = (info == null ? 0L : info.lastId) + 1;
+        context.repo().store(0L, new TimersInfo(id));
+        context.repo().store(id, new Timer(fireAt, transactionAction));
+        index(id, fireAt);
+        return id;
+    }
+
+    @Override
+    public boolean cancel(long timerId) {
+        return context.repo().remove(Timer.class, timerId) != null;
+    }
+
+    /**
+     * Rebuilds the index from the repository, should be called once the state is restored.
+     */
+    public void rebuild(Repository repository, long now) {
+        wheel.reset(now);
+        Map<Long, Object> timers = repository.getEntitiesClean(Timer.class);
+        if (indexed && timers != null) {
+            timers.forEach((id, t) -> wheel.add(id, ((Timer) t).fireAt));
+        }
+        due.clear();
+        hasPending = wheel.size() > 0;
+    }
+
+    /**
+     * Handler of {@link FireTimers} command.
+     *
+     * @return ids of due timers, including ones collected by previous ticks but not fired yet
+     */
+    public long[] fire(FireTimers command, CommandContext ctx) {
+        wheel.advance(command.time, id -> {
+            Timer timer = ctx.repo().getClean(Timer.class, id);
+            // stale entry of rolled back timer might share id with the later one
+            if (timer != null && timer.fireAt <= command.time) {
+                due.add(id);
+            }
+        });
+        hasPending = wheel.size() > 0 || !due.isEmpty();
+        return due.toLongArray();
+    }
+
+    /**
+     * Handler of {@link FireTimer} command.
+     */
+    public void fire(FireTimer command, CommandContext ctx) {
+        if (due.remove(command.id)) {
+            hasPending = wheel.size() > 0 || !due.isEmpty();
+            Timer timer = ctx.repo().getClean(Timer.class, command.id);
+            if (timer != null && timer.fireAt <= command.time) {
+                ctx.executeTxAction(new FiredTimers(new long[] { command.id }));
+                ctx.executeTxAction(timer.action);
+            }
+        }
+    }
+
+    @Override
+    public void accept(FiredTimers t, TransactionContext ctx) {
+        t.removed = new Timer[t.ids.length];
+        for (int i = 0; i < t.ids.length; i++) {
+            t.removed[i] = ctx.repo().remove(Timer.class, t.ids[i]);
+        }
+    }
+
+    /**
+     * Restores timers, if the action fired along with them has failed, and puts them back
+     * to the index for retry.
+     */
+    public void compensate(FiredTimers t, TransactionContext ctx) {
+        for (int i = 0; i < t.ids.length; i++) {
+            if (t.removed != null && t.removed[i] != null) {
+                ctx.repo().store(t.ids[i], t.removed[i]);
+            }
+        }
+        rolledBack(t);
+    }
+
+    /**
+     * Puts timers back to the index for retry, if their firing was rolled back by the repository.
+     */
+    public void rolledBack(List<Object> transactions) {
+        for (int i = 0; i < transactions.size(); i++) {
+            if (transactions.get(i) instanceof FiredTimers) {
+                rolledBack((FiredTimers) transactions.get(i));
+            }
+        }
+    }
+
+    protected void rolledBack(FiredTimers t) {
+        long retryAt = System.currentTimeMillis() + retryDelay;
+        for (long id : t.ids) {
+            index(id, retryAt);
+        }
+    }
+
+    protected void index(long id, long fireAt) {
+        if (indexed) {
+            if (wheel.size() == 0) {
+                // the wheel isn't advanced while empty, so it's moved to now instead
+                wheel.reset(System.currentTimeMillis());
+            }
+            wheel.add(id, fireAt);
+            if (!hasPending) {
+                hasPending = true;
+            }
+        }
+    }
+
+    public static class Timer implements Serializable {
+        private static final long serialVersionUID = 1L;
+        public long fireAt;
+        public Object action;
+
+        public Timer(long fireAt, Object action) {
+            this.fireAt = fireAt;
+            this.action = action;
+        }
+
+        public Timer() {
+        }
+    }
+
+    public static class TimersInfo implements Serializable {
+        private static final long serialVersionUID = 1L;
+        public long lastId;
+
+        public TimersInfo(long lastId) {
+            this.lastId = lastId;
+        }
+
+        public TimersInfo() {
+        }
+    }
+
+    public static class FireTimers {
+        public long time;
+
+        public FireTimers(long time) {
+            this.time = time;
+        }
+
+        public FireTimers() {
+        }
+    }
+
+    public static class FireTimer {
+        public long id;
+        public long time;
+
+        public FireTimer(long id, long time) {
+            this.id = id;
+            this.time = time;
+        }
+
+        public FireTimer() {
+        }
+    }
+
+    public static class FiredTimers implements Serializable {
+        private static final long serialVersionUID = 1L;
+        public long[] ids;
+        /**
+         * Timers removed by the transaction, kept for compensation only.
+         */
+        public transient Timer[] removed;
+
+        public FiredTimers(long[] ids) {
+            this.ids = ids;
+        }
+
+        public FiredTimers() {
+        }
+    }
+
+}
@@ -6,6 +6,7 @@ import org.reveno.atp.api.commands.CommandContext;
 import org.reveno.atp.api.domain.Repository;
 import org.reveno.atp.api.domain.WriteableRepository;
 import org.reveno.atp.api.transaction.EventBus;
+import org.reveno.atp.api.transaction.Timers;
 import org.reveno.atp.api.transaction.TransactionContext;
 import org.reveno.atp.core.api.IdGenerator;
 import org.reveno.atp.core.disruptor.ProcessorContext;
@@ -31,7 +32,7 @@ public class TransactionExecutor {
         try {
             c.eventBus().currentTransactionId(c.transactionId()).underlyingEventBus(c.defaultEventBus());
             repository.underlying(services.repository()).map(c.getMarkedRecords()).enableReadMark();
-            transactionContext.withContext(c).withRepository(repository).reset();
+            transactionContext.withContext(c).withRepository(repository).withTimers(services.timers()).reset();
             commandContext.withRepository(repository).withTransactionsHolder(c.getTransactions()).idGenerator(services.idGenerator());
 
             begin(services);
@@ -61,8 +62,10 @@ public class TransactionExecutor {
 
     protected void rollback(WorkflowContext services, ProcessorContext c) {
         if (services.configuration().modelType() == ModelType.MUTABLE &&
-                services.configuration().mutableModelFailover() == MutableModelFailover.SNAPSHOTS) {
+                services.configuration().mutableModelFailover() != MutableModelFailover.COMPENSATING_ACTIONS) {
             services.repository().rollback();
+            // timers are restored by the repository, but not indexed
+            services.timers().rolledBack(c.getTransactions());
         } else {
             compensateTransactions(services, c.getTransactions().listIterator(c.getTransactions().size() - 1));
         }
@@ -70,13 +73,13 @@ public class TransactionExecutor {
 
     protected void commit(WorkflowContext services) {
         if (services.configuration().modelType() == ModelType.MUTABLE &&
-                services.configuration().mutableModelFailover() == MutableModelFailover.SNAPSHOTS)
+                services.configuration().mutableModelFailover() != MutableModelFailover.COMPENSATING_ACTIONS)
             services.repository().commit();
     }
 
     protected void begin(WorkflowContext services) {
         if (services.configuration().modelType() == ModelType.MUTABLE &&
-                services.configuration().mutableModelFailover() == MutableModelFailover.SNAPSHOTS)
+                services.configuration().mutableModelFailover() != MutableModelFailover.COMPENSATING_ACTIONS)
             services.repository().begin();
     }
 
@@ -143,6 +146,7 @@ public class TransactionExecutor {
     protected static class InnerTransactionContext implements TransactionContext {
         public EventBus eventBus;
         public WriteableRepository repository;
+        public Timers timers;
         // TODO make much more efficient
         protected Map<Object, Object> map = new HashMap<>();
 
@@ -166,10 +170,20 @@ public class TransactionExecutor {
             return this;
         }
 
+        public InnerTransactionContext withTimers(TimersManager timers) {
+            this.timers = timers == null ? null : timers.context(this);
+            return this;
+        }
+
         public void reset() {
             map.clear();
         }
 
+        @Override
+        public Timers timers() {
+            return timers;
+        }
+
         @Override
         public Map<Object, Object> data() {
             return map;
@@ -2,13 +2,11 @@ package org.reveno.atp.core.engine.components;
 
 import org.reveno.atp.api.transaction.TransactionContext;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.function.BiConsumer;
 
 public class TransactionsManager {
-    protected Map<Class<?>, BiConsumer<Object, TransactionContext>> txs = new HashMap<>();
-    protected Map<Class<?>, BiConsumer<Object, TransactionContext>> compensateTxs = new HashMap<>();
+    protected HandlersTable<BiConsumer<Object, TransactionContext>> txs = new HandlersTable<>();
+    protected HandlersTable<BiConsumer<Object, TransactionContext>> compensateTxs = new HandlersTable<>();
 
     public <T> void registerTransaction(Class<T> transactionType, BiConsumer<T, TransactionContext> handler) {
         registerTransaction(transactionType, handler, false);
@@ -17,14 +15,18 @@ public class TransactionsManager {
     @SuppressWarnings("unchecked")
     public <T> void registerTransaction(Class<T> transactionType, BiConsumer<T, TransactionContext> handler, boolean isCompensate) {
         if (!isCompensate) {
-            txs.put(transactionType, (BiConsumer<Object, TransactionContext>) handler);
+            txs.register(transactionType, (BiConsumer<Object, TransactionContext>) handler);
         } else {
-            compensateTxs.put(transactionType, (BiConsumer<Object, TransactionContext>) handler);
+            compensateTxs.register(transactionType, (BiConsumer<Object, TransactionContext>) handler);
         }
     }
 
     public void execute(Object transaction, TransactionContext context) {
-        txs.get(transaction.getClass()).accept(transaction, context);
+        BiConsumer<Object, TransactionContext> tx = txs.get(transaction.getClass());
+        if (tx == null)
+            throw new RuntimeException(String.format("Can't find handler for transaction [type:%s, tx:%s]",
+                    transaction.getClass(), transaction));
+        tx.accept(transaction, context);
     }
 
     public void compensate(Object transaction, TransactionContext context) {
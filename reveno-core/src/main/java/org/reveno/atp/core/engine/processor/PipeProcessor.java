@@ -9,11 +9,17 @@ import java.util.function.BiConsumer;
 public interface PipeProcessor<T extends Destroyable> {
 
     long SYNC_FLAG = 0x111;
+    String TRANSACTIONS_PIPE = "tx";
+    String EVENTS_PIPE = "events";
 
     void start();
 
     void stop();
 
+    /**
+     * Waits until everything submitted before is processed. With producer lanes, only submissions
+     * of the calling thread are ordered before it, ones of other threads might still wait in their lanes.
+     */
     void sync();
 
     void shutdown();
@@ -24,6 +30,13 @@ public interface PipeProcessor<T extends Destroyable> {
 
     <R> CompletableFuture<R> process(BiConsumer<T, CompletableFuture<R>> consumer);
 
+    /**
+     * Same as {@link #process(BiConsumer)}, but never waits for free space in the pipe.
+     *
+     * @return {@code null} if the pipe is full or sheds load
+     */
+    <R> CompletableFuture<R> tryProcess(BiConsumer<T, CompletableFuture<R>> consumer);
+
     default PipeProcessor<T> then(ProcessorHandler<T>... handler) {
         return pipe(handler);
     }
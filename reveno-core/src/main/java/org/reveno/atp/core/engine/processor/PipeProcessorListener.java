@@ -0,0 +1,31 @@
+package org.reveno.atp.core.engine.processor;
+
+/**
+ * Receives internal measurements of {@link PipeProcessor}. Callbacks are invoked directly
+ * from producer and handler threads, so implementations must be thread-safe and cheap.
+ */
+public interface PipeProcessorListener {
+
+    /**
+     * Called every time the processor is started.
+     */
+    void onStart(PipeProcessorStats stats);
+
+    /**
+     * @param waitNanos how long the producer was blocked while claiming the next slot
+     */
+    void onClaim(long waitNanos);
+
+    /**
+     * @param stage index of handler group
+     * @param size  count of events, handled by single handler of the group till end of batch
+     */
+    void onBatch(int stage, long size);
+
+    /**
+     * Called every time the command is rejected since the pipe is full or sheds load.
+     */
+    default void onReject() {
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.reveno.atp.core.engine.processor;
+
+/**
+ * Live view on the ring buffer of started {@link PipeProcessor}. All values are
+ * read without any synchronization, so they are approximate by nature.
+ */
+public interface PipeProcessorStats {
+
+    int bufferSize();
+
+    /**
+     * @return count of slots which are available for producers at the moment
+     */
+    long remainingCapacity();
+
+    /**
+     * @return count of handler groups, chained with {@link PipeProcessor#then}
+     */
+    int stages();
+
+    /**
+     * @return how many published sequences the slowest handler of given group is behind
+     * of the ring buffer cursor
+     */
+    long consumerLag(int stage);
+
+    /**
+     * @return whether user commands are rejected at the moment, since the buffer is filled
+     * above the high watermark and wasn't drained below the low one yet
+     */
+    default boolean isShedding() {
+        return false;
+    }
+
+}
@@ -15,6 +15,14 @@ public interface TransactionPipeProcessor<T extends Destroyable> extends PipePro
 
     <R> CompletableFuture<Result<R>> execute(Object command);
 
+    /**
+     * Same as {@link #execute(Object)}, but never waits for free space in the pipe.
+     *
+     * @return future, which is already completed with {@link org.reveno.atp.api.exceptions.CommandRejectedException}
+     * if the pipe is full or sheds load
+     */
+    <R> CompletableFuture<Result<R>> tryExecute(Object command);
+
     void executeRestore(RestoreableEventBus eventBus, TransactionCommitInfo transaction);
 
 }
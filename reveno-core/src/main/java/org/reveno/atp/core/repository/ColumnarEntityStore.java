@@ -0,0 +1,226 @@
+package org.reveno.atp.core.repository;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.reveno.atp.utils.UnsafeUtils;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Struct-of-arrays storage for entities which consist of primitive fields only. Every
+ * field is kept in its own column, so that scans over a single field (sums of balances,
+ * positions, etc.) walk over contiguous memory instead of chasing object references.
+ * Entities are packed densely, the removed one is replaced by the last.
+ * <p>
+ * Entities are not kept as objects: {@link #get(long)} returns a new copy each time,
+ * so any change of it must be stored back with {@link #store(long, Object)}.
+ */
+@SuppressWarnings("unchecked")
+public class ColumnarEntityStore<T> implements StandaloneEntityStore<T> {
+    protected static final Unsafe UNSAFE = UnsafeUtils.getUnsafe();
+    protected static final int INITIAL_CAPACITY = 1024;
+
+    protected final Class<T> type;
+    protected final String[] names;
+    protected final long[] offsets;
+    protected final Class<?>[] kinds;
+    protected final Long2IntOpenHashMap slots;
+    protected long[][] columns;
+    protected long[] ids;
+    protected int size = 0;
+
+    public ColumnarEntityStore(Class<T> type) {
+        this(type, INITIAL_CAPACITY);
+    }
+
+    public ColumnarEntityStore(Class<T> type, int capacity) {
+        this.type = type;
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers())) {
+                    continue;
+                }
+                if (!f.getType().isPrimitive()) {
+                    throw new IllegalArgumentException(String.format("Columnar entity %s can have only primitive fields, but %s is %s.",
+                            type.getName(), f.getName(), f.getType().getName()));
+                }
+                fields.add(f);
+            }
+        }
+        this.names = new String[fields.size()];
+        this.offsets = new long[fields.size()];
+        this.kinds = new Class<?>[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            names[i] = fields.get(i).getName();
+            offsets[i] = UNSAFE.objectFieldOffset(fields.get(i));
+            kinds[i] = fields.get(i).getType();
+        }
+        capacity = Math.max(capacity, 1);
+        this.columns = new long[fields.size()][capacity];
+        this.ids = new long[capacity];
+        this.slots = new Long2IntOpenHashMap(capacity);
+        this.slots.defaultReturnValue(-1);
+    }
+
+    @Override
+    public Class<T> type() {
+        return type;
+    }
+
+    @Override
+    public T get(long id) {
+        int slot = slots.get(id);
+        return slot == -1 ? null : read(slot);
+    }
+
+    @Override
+    public T getClean(long id) {
+        return get(id);
+    }
+
+    @Override
+    public boolean has(long id) {
+        return slots.containsKey(id);
+    }
+
+    @Override
+    public T store(long id, T entity) {
+        int slot = slots.get(id);
+        if (slot == -1) {
+            if (size == ids.length) {
+                grow();
+            }
+            slot = size++;
+            ids[slot] = id;
+            slots.put(id, slot);
+        }
+        write(slot, entity);
+        return entity;
+    }
+
+    @Override
+    public T remove(long id) {
+        int slot = slots.remove(id);
+        if (slot == -1) {
+            return null;
+        }
+        T entity = read(slot);
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            for (long[] column : columns) {
+                column[slot] = column[last];
+            }
+            slots.put(ids[slot], slot);
+        }
+        return entity;
+    }
+
+    /**
+     * @return amount of stored entities, valid slots are in {@code [0, size)} range
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return index of the column for the given field name
+     */
+    public int column(String field) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(field)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(String.format("%s has no field %s.", type.getName(), field));
+    }
+
+    /**
+     * @return identity of the entity stored in the given slot
+     */
+    public long id(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * Value of integral ({@code long}, {@code int}, {@code short}, {@code byte},
+     * {@code char} or {@code boolean}) field of entity in the given slot.
+     */
+    public long getLong(int column, int slot) {
+        return columns[column][slot];
+    }
+
+    /**
+     * Value of {@code double} or {@code float} field of entity in the given slot.
+     */
+    public double getDouble(int column, int slot) {
+        long bits = columns[column][slot];
+        return kinds[column] == float.class ? Float.intBitsToFloat((int) bits) : Double.longBitsToDouble(bits);
+    }
+
+    @Override
+    public void copyTo(Map<Long, Object> to) {
+        for (int i = 0; i < size; i++) {
+            to.put(ids[i], read(i));
+        }
+    }
+
+    @Override
+    public void clear() {
+        slots.clear();
+        size = 0;
+    }
+
+    protected T read(int slot) {
+        try {
+            Object entity = UNSAFE.allocateInstance(type);
+            for (int i = 0; i < columns.length; i++) {
+                long v = columns[i][slot];
+                Class<?> kind = kinds[i];
+                long offset = offsets[i];
+                if (kind == long.class) UNSAFE.putLong(entity, offset, v);
+                else if (kind == int.class) UNSAFE.putInt(entity, offset, (int) v);
+                else if (kind == double.class) UNSAFE.putLong(entity, offset, v);
+                else if (kind == float.class) UNSAFE.putInt(entity, offset, (int) v);
+                else if (kind == short.class) UNSAFE.putShort(entity, offset, (short) v);
+                else if (kind == byte.class) UNSAFE.putByte(entity, offset, (byte) v);
+                else if (kind == char.class) UNSAFE.putChar(entity, offset, (char) v);
+                else UNSAFE.putBoolean(entity, offset, v != 0);
+            }
+            return (T) entity;
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void write(int slot, T entity) {
+        for (int i = 0; i < columns.length; i++) {
+            Class<?> kind = kinds[i];
+            long offset = offsets[i];
+            long v;
+            if (kind == long.class || kind == double.class) v = UNSAFE.getLong(entity, offset);
+            else if (kind == int.class || kind == float.class) v = UNSAFE.getInt(entity, offset);
+            else if (kind == short.class) v = UNSAFE.getShort(entity, offset);
+            else if (kind == byte.class) v = UNSAFE.getByte(entity, offset);
+            else if (kind == char.class) v = UNSAFE.getChar(entity, offset);
+            else v = UNSAFE.getBoolean(entity, offset) ? 1 : 0;
+            columns[i][slot] = v;
+        }
+    }
+
+    protected void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Arrays.copyOf(columns[i], capacity);
+        }
+    }
+
+}
@@ -0,0 +1,281 @@
+package org.reveno.atp.core.repository;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.reveno.atp.api.domain.WriteableEntityStore;
+import org.reveno.atp.api.domain.WriteableRepository;
+import org.reveno.atp.core.api.serialization.Serializer;
+import org.reveno.atp.utils.UnsafeUtils;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutable model repository which avoids serializing entities to be able to roll back.
+ * <p>
+ * Stored or removed entities are recorded by reference only, since they are not changed
+ * in place. Entity which is read during the transaction is captured field by field into
+ * flat undo log, if all its fields are primitives or immutable values (strings, boxed
+ * primitives, enums, big numbers). On rollback such entities get their old field values
+ * back in place, so references to them stay valid. Entities holding mutable objects
+ * (collections, arrays, other entities) can be changed deeply, so they are still
+ * serialized as {@link MutableModelRepository} does.
+ */
+@SuppressWarnings("unchecked")
+public class FieldUndoModelRepository extends MutableModelRepository {
+    protected static final Unsafe UNSAFE = UnsafeUtils.getUnsafe();
+    protected static final int INITIAL_CAPACITY = 64;
+
+    protected final Map<Class<?>, EntityLayout> layouts = new HashMap<>();
+    protected Class<?>[] types = new Class<?>[INITIAL_CAPACITY];
+    protected long[] ids = new long[INITIAL_CAPACITY];
+    protected Object[] olds = new Object[INITIAL_CAPACITY];
+    protected int[] valuesFrom = new int[INITIAL_CAPACITY];
+    protected int[] referencesFrom = new int[INITIAL_CAPACITY];
+    protected long[] primitives = new long[INITIAL_CAPACITY];
+    protected Object[] references = new Object[INITIAL_CAPACITY];
+    protected int size = 0;
+    protected int primitivesSize = 0;
+    protected int referencesSize = 0;
+
+    public FieldUndoModelRepository(WriteableRepository repository, Serializer serializer, ClassLoader classLoader) {
+        super(repository, serializer, classLoader);
+    }
+
+    public FieldUndoModelRepository(WriteableRepository repository, Serializer serializer) {
+        super(repository, serializer);
+    }
+
+    @Override
+    public <T> T store(long entityId, T entity) {
+        return store(entityId, (Class<T>) entity.getClass(), entity);
+    }
+
+    @Override
+    public <T> T store(long entityId, Class<? super T> type, T entity) {
+        if (isTransaction.get() && entity != null) {
+            LongOpenHashSet stashedEntities = stashed.get(type);
+            if (stashedEntities.add(entityId)) {
+                record(type, entityId, repository.get(type, entityId), false);
+            }
+        }
+        return repository.store(entityId, type, entity);
+    }
+
+    @Override
+    public <T> T remove(Class<T> entityClass, long entityId) {
+        T entity = repository.remove(entityClass, entityId);
+        if (isTransaction.get() && entity != null && stashed.get(entityClass).add(entityId)) {
+            record(entityClass, entityId, entity, false);
+        }
+        return entity;
+    }
+
+    @Override
+    public <T> WriteableEntityStore<T> entityStore(Class<T> entityType) {
+        return (WriteableEntityStore<T>) stores.computeIfAbsent(entityType,
+                t -> new FieldUndoEntityStore<>(repository.entityStore(entityType), stashed.get(t)));
+    }
+
+    @Override
+    public void rollback() {
+        try {
+            for (int i = size - 1; i >= 0; i--) {
+                Class<Object> type = (Class<Object>) types[i];
+                Object old = olds[i];
+                if (old == null) {
+                    repository.remove(type, ids[i]);
+                } else {
+                    if (valuesFrom[i] >= 0) {
+                        restore(old, i);
+                    }
+                    repository.store(ids[i], type, old);
+                }
+            }
+        } finally {
+            super.rollback();
+        }
+    }
+
+    /**
+     * Called on read of existing entity, so it might be changed in place afterwards.
+     */
+    @Override
+    protected boolean saveEntityState(LongOpenHashSet stashedEntities, long entityId, Class<?> type,
+                                      Object entity, EntityRecoveryState state) {
+        if (stashedEntities.contains(entityId)) {
+            return false;
+        }
+        if (layout(entity.getClass()).isFlat) {
+            stashedEntities.add(entityId);
+            record(type, entityId, entity, true);
+            return true;
+        }
+        return super.saveEntityState(stashedEntities, entityId, type, entity, state);
+    }
+
+    @Override
+    protected void clearResources() {
+        super.clearResources();
+        if (size > 0) {
+            Arrays.fill(olds, 0, size, null);
+            Arrays.fill(references, 0, referencesSize, null);
+            size = 0;
+            primitivesSize = 0;
+            referencesSize = 0;
+        }
+    }
+
+    /**
+     * @param old entity before the change, or {@code null} if it didn't exist
+     * @param capture whether the current field values of old entity must be saved
+     */
+    protected void record(Class<?> type, long id, Object old, boolean capture) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            olds = Arrays.copyOf(olds, capacity);
+            valuesFrom = Arrays.copyOf(valuesFrom, capacity);
+            referencesFrom = Arrays.copyOf(referencesFrom, capacity);
+        }
+        types[size] = type;
+        ids[size] = id;
+        olds[size] = old;
+        valuesFrom[size] = -1;
+        if (capture) {
+            EntityLayout layout = layout(old.getClass());
+            valuesFrom[size] = primitivesSize;
+            referencesFrom[size] = referencesSize;
+            ensureValues(layout.primitiveOffsets.length, layout.referenceOffsets.length);
+            for (int i = 0; i < layout.primitiveOffsets.length; i++) {
+                primitives[primitivesSize++] = layout.read(old, i);
+            }
+            for (long offset : layout.referenceOffsets) {
+                references[referencesSize++] = UNSAFE.getObject(old, offset);
+            }
+        }
+        size++;
+    }
+
+    protected void restore(Object entity, int record) {
+        EntityLayout layout = layout(entity.getClass());
+        int p = valuesFrom[record];
+        for (int i = 0; i < layout.primitiveOffsets.length; i++) {
+            layout.write(entity, i, primitives[p++]);
+        }
+        int r = referencesFrom[record];
+        for (long offset : layout.referenceOffsets) {
+            UNSAFE.putObject(entity, offset, references[r++]);
+        }
+    }
+
+    protected void ensureValues(int primitivesCount, int referencesCount) {
+        if (primitivesSize + primitivesCount > primitives.length) {
+            primitives = Arrays.copyOf(primitives, Math.max(primitives.length * 2, primitivesSize + primitivesCount));
+        }
+        if (referencesSize + referencesCount > references.length) {
+            references = Arrays.copyOf(references, Math.max(references.length * 2, referencesSize + referencesCount));
+        }
+    }
+
+    protected EntityLayout layout(Class<?> type) {
+        EntityLayout layout = layouts.get(type);
+        if (layout == null) {
+            layout = new EntityLayout(type);
+            layouts.put(type, layout);
+        }
+        return layout;
+    }
+
+    protected static boolean isImmutable(Class<?> type) {
+        return type == String.class || type == Long.class || type == Integer.class || type == Double.class
+                || type == Float.class || type == Short.class || type == Byte.class || type == Character.class
+                || type == Boolean.class || type == BigDecimal.class || type == BigInteger.class
+                || type.isEnum() || type.getName().startsWith("java.time.");
+    }
+
+    protected static class EntityLayout {
+        protected final boolean isFlat;
+        protected final long[] primitiveOffsets;
+        protected final Class<?>[] primitiveKinds;
+        protected final long[] referenceOffsets;
+
+        public EntityLayout(Class<?> type) {
+            List<Field> primitiveFields = new ArrayList<>();
+            List<Field> referenceFields = new ArrayList<>();
+            boolean flat = true;
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers())) {
+                        continue;
+                    }
+                    if (f.getType().isPrimitive()) {
+                        primitiveFields.add(f);
+                    } else {
+                        referenceFields.add(f);
+                        flat &= isImmutable(f.getType());
+                    }
+                }
+            }
+            this.isFlat = flat;
+            this.primitiveOffsets = primitiveFields.stream().mapToLong(UNSAFE::objectFieldOffset).toArray();
+            this.primitiveKinds = primitiveFields.stream().map(Field::getType).toArray(Class<?>[]::new);
+            this.referenceOffsets = flat ? referenceFields.stream().mapToLong(UNSAFE::objectFieldOffset).toArray() : new long[0];
+        }
+
+        public long read(Object entity, int field) {
+            Class<?> kind = primitiveKinds[field];
+            long offset = primitiveOffsets[field];
+            if (kind == long.class || kind == double.class) return UNSAFE.getLong(entity, offset);
+            else if (kind == int.class || kind == float.class) return UNSAFE.getInt(entity, offset);
+            else if (kind == short.class) return UNSAFE.getShort(entity, offset);
+            else if (kind == byte.class) return UNSAFE.getByte(entity, offset);
+            else if (kind == char.class) return UNSAFE.getChar(entity, offset);
+            else return UNSAFE.getBoolean(entity, offset) ? 1 : 0;
+        }
+
+        public void write(Object entity, int field, long v) {
+            Class<?> kind = primitiveKinds[field];
+            long offset = primitiveOffsets[field];
+            if (kind == long.class || kind == double.class) UNSAFE.putLong(entity, offset, v);
+            else if (kind == int.class || kind == float.class) UNSAFE.putInt(entity, offset, (int) v);
+            else if (kind == short.class) UNSAFE.putShort(entity, offset, (short) v);
+            else if (kind == byte.class) UNSAFE.putByte(entity, offset, (byte) v);
+            else if (kind == char.class) UNSAFE.putChar(entity, offset, (char) v);
+            else UNSAFE.putBoolean(entity, offset, v != 0);
+        }
+    }
+
+    protected class FieldUndoEntityStore<T> extends MutableEntityStore<T> {
+
+        public FieldUndoEntityStore(WriteableEntityStore<T> underlying, LongOpenHashSet stashedEntities) {
+            super(underlying, stashedEntities);
+        }
+
+        @Override
+        public T store(long id, T entity) {
+            if (entity != null && isTransaction.get() && stashedEntities.add(id)) {
+                record(underlying.type(), id, underlying.get(id), false);
+            }
+            return underlying.store(id, entity);
+        }
+
+        @Override
+        public T remove(long id) {
+            T entity = underlying.remove(id);
+            if (entity != null && isTransaction.get() && stashedEntities.add(id)) {
+                record(underlying.type(), id, entity, false);
+            }
+            return entity;
+        }
+    }
+
+}
@@ -2,15 +2,21 @@ package org.reveno.atp.core.repository;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.api.domain.WriteableEntityStore;
 import org.reveno.atp.api.domain.WriteableRepository;
 import org.reveno.atp.utils.MapUtils;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 @SuppressWarnings("unchecked")
 public class HashMapRepository implements WriteableRepository {
     protected Map<Class<?>, Long2ObjectOpenHashMap<Object>> map;
+    protected Map<Class<?>, MapEntityStore<?>> stores = new HashMap<>();
+    protected Map<Class<?>, StandaloneEntityStore<?>> standalone = new HashMap<>();
     protected int capacity;
     protected float loadFactor;
 
@@ -20,8 +26,38 @@ public class HashMapRepository implements WriteableRepository {
         this.loadFactor = loadFactor;
     }
 
+    /**
+     * Keeps entities of the given type in {@link ColumnarEntityStore} instead of the hash map.
+     * Must be called before any entity of that type is stored.
+     */
+    public <T> ColumnarEntityStore<T> columnar(Class<T> entityType) {
+        return (ColumnarEntityStore<T>) standalone(entityType, ColumnarEntityStore.class, ColumnarEntityStore::new);
+    }
+
+    /**
+     * Keeps entities of the given type in {@link PagedEntityStore}, indexed directly by id,
+     * which suits ids assigned sequentially by {@link org.reveno.atp.core.api.IdGenerator}.
+     * Must be called before any entity of that type is stored.
+     */
+    public <T> PagedEntityStore<T> paged(Class<T> entityType) {
+        return (PagedEntityStore<T>) standalone(entityType, PagedEntityStore.class, PagedEntityStore::new);
+    }
+
+    @Override
+    public <T> WriteableEntityStore<T> entityStore(Class<T> entityType) {
+        StandaloneEntityStore<?> store = standaloneOf(entityType);
+        if (store != null) {
+            return (WriteableEntityStore<T>) store;
+        }
+        return (WriteableEntityStore<T>) stores.computeIfAbsent(entityType, t -> new MapEntityStore<>(t, map.get(t)));
+    }
+
     @Override
     public <T> T get(Class<T> entityType, long id) {
+        StandaloneEntityStore<?> store = standaloneOf(entityType);
+        if (store != null) {
+            return (T) store.get(id);
+        }
         return (T) map.get(entityType).get(id);
     }
 
@@ -39,23 +75,31 @@ public class HashMapRepository implements WriteableRepository {
     public RepositoryData getData() {
         Map<Class<?>, Map<Long, Object>> data = MapUtils.repositoryMap();
         map.forEach((k, v) -> data.get(k).putAll(v));
+        standalone.forEach((k, v) -> v.copyTo(data.get(k)));
         return new RepositoryData(data);
     }
 
     @Override
     public <T> T store(long entityId, T entity) {
-        map.get(entity.getClass()).put(entityId, entity);
-        return entity;
+        return store(entityId, (Class<T>) entity.getClass(), entity);
     }
 
     @Override
     public <T> T store(long entityId, Class<? super T> type, T entity) {
+        StandaloneEntityStore<T> store = (StandaloneEntityStore<T>) standaloneOf(type);
+        if (store != null) {
+            return store.store(entityId, entity);
+        }
         map.get(type).put(entityId, entity);
         return entity;
     }
 
     @Override
     public <T> T remove(Class<T> entityClass, long entityId) {
+        StandaloneEntityStore<?> store = standaloneOf(entityClass);
+        if (store != null) {
+            return (T) store.remove(entityId);
+        }
         Long2ObjectOpenHashMap<Object> data = map.get(entityClass);
         if (data != null)
             return (T) data.remove(entityId);
@@ -64,11 +108,28 @@ public class HashMapRepository implements WriteableRepository {
 
     @Override
     public void load(Map<Class<?>, Map<Long, Object>> data) {
-        data.forEach((k, v) -> map.put(k, new Long2ObjectOpenHashMap<>(v)));
+        data.forEach((k, v) -> {
+            StandaloneEntityStore<Object> store = (StandaloneEntityStore<Object>) standalone.get(k);
+            if (store != null) {
+                store.clear();
+                v.forEach(store::store);
+            } else {
+                // maps of snapshot loaded in chunks are built for the repository, so no need to copy them
+                map.put(k, v instanceof Long2ObjectOpenHashMap ? (Long2ObjectOpenHashMap<Object>) v : new Long2ObjectOpenHashMap<>(v));
+                MapEntityStore<?> mapStore = stores.get(k);
+                if (mapStore != null) {
+                    mapStore.data = map.get(k);
+                }
+            }
+        });
     }
 
     @Override
     public Map<Long, Object> getEntities(Class<?> entityType) {
+        StandaloneEntityStore<?> store = standaloneOf(entityType);
+        if (store != null) {
+            return store.toMap();
+        }
         return map.get(entityType);
     }
 
@@ -79,7 +140,71 @@ public class HashMapRepository implements WriteableRepository {
 
     @Override
     public Set<Class<?>> getEntityTypes() {
-        return map.keySet();
+        if (standalone.isEmpty()) {
+            return map.keySet();
+        }
+        Set<Class<?>> types = new HashSet<>(map.keySet());
+        types.addAll(standalone.keySet());
+        return types;
+    }
+
+    /**
+     * @return store of paged or columnar type, or null if it's kept in the hash map
+     */
+    protected StandaloneEntityStore<?> standaloneOf(Class<?> entityType) {
+        // no lookup at all while there are no such types
+        return standalone.isEmpty() ? null : standalone.get(entityType);
+    }
+
+    protected StandaloneEntityStore<?> standalone(Class<?> entityType, Class<?> storeType,
+                                                  Function<Class<?>, StandaloneEntityStore<?>> factory) {
+        StandaloneEntityStore<?> store = standalone.computeIfAbsent(entityType, factory);
+        if (!storeType.isInstance(store)) {
+            throw new IllegalStateException(String.format("%s is already kept in %s.",
+                    entityType.getName(), store.getClass().getSimpleName()));
+        }
+        return store;
+    }
+
+    protected static class MapEntityStore<T> implements WriteableEntityStore<T> {
+        protected final Class<T> type;
+        protected Long2ObjectOpenHashMap<Object> data;
+
+        public MapEntityStore(Class<T> type, Long2ObjectOpenHashMap<Object> data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        @Override
+        public Class<T> type() {
+            return type;
+        }
+
+        @Override
+        public T get(long id) {
+            return (T) data.get(id);
+        }
+
+        @Override
+        public T getClean(long id) {
+            return (T) data.get(id);
+        }
+
+        @Override
+        public boolean has(long id) {
+            return data.get(id) != null;
+        }
+
+        @Override
+        public T store(long id, T entity) {
+            data.put(id, entity);
+            return entity;
+        }
+
+        @Override
+        public T remove(long id) {
+            return (T) data.remove(id);
+        }
     }
 
 }
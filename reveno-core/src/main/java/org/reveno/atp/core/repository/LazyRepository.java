@@ -0,0 +1,188 @@
+package org.reveno.atp.core.repository;
+
+import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.api.domain.WriteableEntityStore;
+import org.reveno.atp.api.domain.WriteableRepository;
+import org.reveno.atp.core.api.Destroyable;
+import org.reveno.atp.core.snapshots.MappedSnapshot;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Repository which takes entities from {@link MappedSnapshot} on first access and keeps them in
+ * the underlying repository afterwards, so that memory grows with the working set only. Entities
+ * stored or removed are forgotten by the snapshot, so journal replayed on top of it always wins.
+ * <p>
+ * All remaining entities of the type are decoded once they are requested all together, e.g. on
+ * snapshotting or views rebuilding.
+ */
+@SuppressWarnings("unchecked")
+public class LazyRepository implements WriteableRepository, Destroyable {
+    protected final WriteableRepository repository;
+    protected final Map<Class<?>, WriteableEntityStore<?>> stores = new HashMap<>();
+    protected MappedSnapshot snapshot;
+
+    public LazyRepository(WriteableRepository repository, MappedSnapshot snapshot) {
+        this.repository = repository;
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public <T> T get(Class<T> entityType, long id) {
+        T entity = repository.get(entityType, id);
+        if (entity == null && snapshot != null) {
+            entity = take(entityType, id);
+        }
+        return entity;
+    }
+
+    @Override
+    public <T> boolean has(Class<T> entityType, long id) {
+        return repository.has(entityType, id) || (snapshot != null && snapshot.has(entityType, id));
+    }
+
+    @Override
+    public <T> T getClean(Class<T> entityType, long id) {
+        return get(entityType, id);
+    }
+
+    @Override
+    public RepositoryData getData() {
+        if (snapshot != null) {
+            new HashSet<>(snapshot.types()).forEach(this::materialize);
+        }
+        return repository.getData();
+    }
+
+    @Override
+    public Map<Long, Object> getEntities(Class<?> entityType) {
+        materialize(entityType);
+        return repository.getEntities(entityType);
+    }
+
+    @Override
+    public Map<Long, Object> getEntitiesClean(Class<?> entityType) {
+        return getEntities(entityType);
+    }
+
+    @Override
+    public <T> WriteableEntityStore<T> entityStore(Class<T> entityType) {
+        return (WriteableEntityStore<T>) stores.computeIfAbsent(entityType,
+                t -> new LazyEntityStore<>(repository.entityStore(entityType)));
+    }
+
+    @Override
+    public Set<Class<?>> getEntityTypes() {
+        if (snapshot == null) {
+            return repository.getEntityTypes();
+        }
+        Set<Class<?>> types = new HashSet<>(repository.getEntityTypes());
+        types.addAll(snapshot.types());
+        return types;
+    }
+
+    @Override
+    public <T> T store(long entityId, T entity) {
+        return store(entityId, (Class<T>) entity.getClass(), entity);
+    }
+
+    @Override
+    public <T> T store(long entityId, Class<? super T> type, T entity) {
+        if (snapshot != null) {
+            snapshot.forget(type, entityId);
+        }
+        return repository.store(entityId, type, entity);
+    }
+
+    @Override
+    public <T> T remove(Class<T> entityClass, long entityId) {
+        T entity = repository.remove(entityClass, entityId);
+        if (snapshot != null) {
+            T cold = snapshot.take(entityClass, entityId);
+            entity = entity == null ? cold : entity;
+        }
+        return entity;
+    }
+
+    @Override
+    public void load(Map<Class<?>, Map<Long, Object>> map) {
+        if (snapshot != null) {
+            map.keySet().forEach(snapshot::forgetAll);
+        }
+        repository.load(map);
+    }
+
+    @Override
+    public void destroy() {
+        if (snapshot != null) {
+            snapshot.close();
+            snapshot = null;
+        }
+    }
+
+    protected <T> T take(Class<T> entityType, long id) {
+        T entity = snapshot.take(entityType, id);
+        if (entity != null) {
+            repository.store(id, entityType, entity);
+        }
+        return entity;
+    }
+
+    protected void materialize(Class<?> entityType) {
+        if (snapshot != null) {
+            snapshot.takeAll(entityType, (id, e) -> repository.store(id, (Class<Object>) entityType, e));
+            if (snapshot.size() == 0) {
+                destroy();
+            }
+        }
+    }
+
+    protected class LazyEntityStore<T> implements WriteableEntityStore<T> {
+        protected final WriteableEntityStore<T> underlying;
+
+        public LazyEntityStore(WriteableEntityStore<T> underlying) {
+            this.underlying = underlying;
+        }
+
+        @Override
+        public Class<T> type() {
+            return underlying.type();
+        }
+
+        @Override
+        public T get(long id) {
+            T entity = underlying.get(id);
+            if (entity == null && snapshot != null) {
+                entity = take(underlying.type(), id);
+            }
+            return entity;
+        }
+
+        @Override
+        public T getClean(long id) {
+            return get(id);
+        }
+
+        @Override
+        public boolean has(long id) {
+            return underlying.has(id) || (snapshot != null && snapshot.has(underlying.type(), id));
+        }
+
+        @Override
+        public T store(long id, T entity) {
+            if (snapshot != null) {
+                snapshot.forget(underlying.type(), id);
+            }
+            return underlying.store(id, entity);
+        }
+
+        @Override
+        public T remove(long id) {
+            return LazyRepository.this.remove(underlying.type(), id);
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package org.reveno.atp.core.repository;
 
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.api.domain.WriteableEntityStore;
 import org.reveno.atp.api.domain.WriteableRepository;
 import org.reveno.atp.core.api.Destroyable;
 import org.reveno.atp.core.api.TxRepository;
@@ -14,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,6 +24,7 @@ import static org.reveno.atp.utils.MeasureUtils.kb;
 public class MutableModelRepository implements TxRepository, Destroyable {
     protected static final Logger log = LoggerFactory.getLogger(MutableModelRepository.class);
     protected final Map<Class<?>, LongOpenHashSet> stashed = MapUtils.fastSetRepo();
+    protected final Map<Class<?>, WriteableEntityStore<?>> stores = new HashMap<>();
     protected final WriteableRepository repository;
     protected final Serializer serializer;
     protected final ClassLoader classLoader;
@@ -110,6 +113,13 @@ public class MutableModelRepository implements TxRepository, Destroyable {
         return repository.getEntities(entityType);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> WriteableEntityStore<T> entityStore(Class<T> entityType) {
+        return (WriteableEntityStore<T>) stores.computeIfAbsent(entityType,
+                t -> new MutableEntityStore<>(repository.entityStore(entityType), stashed.get(t)));
+    }
+
     @Override
     public void begin() {
         isTransaction.set(true);
@@ -170,7 +180,11 @@ public class MutableModelRepository implements TxRepository, Destroyable {
     }
 
     protected boolean saveEntityState(long entityId, Class<?> type, Object entity, EntityRecoveryState state) {
-        LongOpenHashSet stashedEntities = stashed.get(type);
+        return saveEntityState(stashed.get(type), entityId, type, entity, state);
+    }
+
+    protected boolean saveEntityState(LongOpenHashSet stashedEntities, long entityId, Class<?> type,
+                                      Object entity, EntityRecoveryState state) {
         if (!stashedEntities.contains(entityId)) {
             if (!serializer.isRegistered(entity.getClass())) {
                 serializer.registerTransactionType(entity.getClass());
@@ -203,6 +217,58 @@ public class MutableModelRepository implements TxRepository, Destroyable {
         stashed.forEach((k, v) -> v.clear());
     }
 
+    protected class MutableEntityStore<T> implements WriteableEntityStore<T> {
+        protected final WriteableEntityStore<T> underlying;
+        protected final LongOpenHashSet stashedEntities;
+
+        public MutableEntityStore(WriteableEntityStore<T> underlying, LongOpenHashSet stashedEntities) {
+            this.underlying = underlying;
+            this.stashedEntities = stashedEntities;
+        }
+
+        @Override
+        public Class<T> type() {
+            return underlying.type();
+        }
+
+        @Override
+        public T get(long id) {
+            T entity = underlying.get(id);
+            if (entity != null && isTransaction.get()) {
+                saveEntityState(stashedEntities, id, underlying.type(), entity, EntityRecoveryState.UPDATE);
+            }
+            return entity;
+        }
+
+        @Override
+        public T getClean(long id) {
+            return underlying.get(id);
+        }
+
+        @Override
+        public boolean has(long id) {
+            return underlying.get(id) != null;
+        }
+
+        @Override
+        public T store(long id, T entity) {
+            underlying.store(id, entity);
+            if (entity != null && isTransaction.get()) {
+                saveEntityState(stashedEntities, id, underlying.type(), entity, EntityRecoveryState.REMOVE);
+            }
+            return entity;
+        }
+
+        @Override
+        public T remove(long id) {
+            T entity = underlying.remove(id);
+            if (entity != null && isTransaction.get()) {
+                saveEntityState(stashedEntities, id, underlying.type(), entity, EntityRecoveryState.ADD);
+            }
+            return entity;
+        }
+    }
+
     public enum EntityRecoveryState {
         ADD((byte) 1), REMOVE((byte) 2), UPDATE((byte) 3);
 
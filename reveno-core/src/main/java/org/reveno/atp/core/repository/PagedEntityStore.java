@@ -0,0 +1,159 @@
+package org.reveno.atp.core.repository;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Entity store indexed directly by id, for entity types which ids are assigned
+ * sequentially by {@link org.reveno.atp.core.api.IdGenerator}. Entities are kept in
+ * fixed size pages, which are allocated lazily on the first store into them and
+ * released once all their entities are removed, so the memory stays proportional
+ * to the amount of live entities, and there is no rehashing as the store grows.
+ * <p>
+ * Removed entity leaves {@code null} in its slot. Ids which are negative or too large
+ * to be paged are kept in the overflow hash map.
+ */
+@SuppressWarnings("unchecked")
+public class PagedEntityStore<T> implements StandaloneEntityStore<T> {
+    protected static final int PAGE_BITS = 12;
+    protected static final int PAGE_SIZE = 1 << PAGE_BITS;
+    protected static final int PAGE_MASK = PAGE_SIZE - 1;
+    protected static final long MAX_ID = (1L << 32) - 1;
+
+    protected final Class<T> type;
+    protected Object[][] pages = new Object[16][];
+    protected int[] counts = new int[16];
+    protected Long2ObjectOpenHashMap<Object> overflow;
+    protected int size = 0;
+
+    public PagedEntityStore(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public Class<T> type() {
+        return type;
+    }
+
+    @Override
+    public T get(long id) {
+        if (id < 0 || id > MAX_ID) {
+            return overflow == null ? null : (T) overflow.get(id);
+        }
+        int p = (int) (id >>> PAGE_BITS);
+        Object[] page;
+        if (p >= pages.length || (page = pages[p]) == null) {
+            return null;
+        }
+        return (T) page[(int) id & PAGE_MASK];
+    }
+
+    @Override
+    public T getClean(long id) {
+        return get(id);
+    }
+
+    @Override
+    public boolean has(long id) {
+        return get(id) != null;
+    }
+
+    @Override
+    public T store(long id, T entity) {
+        if (entity == null) {
+            // absent and null entities are the same, so it's not counted
+            remove(id);
+            return null;
+        }
+        if (id < 0 || id > MAX_ID) {
+            if (overflow == null) {
+                overflow = new Long2ObjectOpenHashMap<>();
+            }
+            if (overflow.put(id, entity) == null) {
+                size++;
+            }
+            return entity;
+        }
+        int p = (int) (id >>> PAGE_BITS);
+        if (p >= pages.length) {
+            int capacity = Math.max(pages.length * 2, p + 1);
+            pages = Arrays.copyOf(pages, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        Object[] page = pages[p];
+        if (page == null) {
+            page = pages[p] = new Object[PAGE_SIZE];
+        }
+        int i = (int) id & PAGE_MASK;
+        if (page[i] == null) {
+            counts[p]++;
+            size++;
+        }
+        page[i] = entity;
+        return entity;
+    }
+
+    @Override
+    public T remove(long id) {
+        if (id < 0 || id > MAX_ID) {
+            if (overflow == null) {
+                return null;
+            }
+            T entity = (T) overflow.remove(id);
+            if (entity != null) {
+                size--;
+            }
+            return entity;
+        }
+        int p = (int) (id >>> PAGE_BITS);
+        Object[] page;
+        if (p >= pages.length || (page = pages[p]) == null) {
+            return null;
+        }
+        int i = (int) id & PAGE_MASK;
+        T entity = (T) page[i];
+        if (entity != null) {
+            page[i] = null;
+            size--;
+            if (--counts[p] == 0) {
+                pages[p] = null;
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void copyTo(Map<Long, Object> to) {
+        for (int p = 0; p < pages.length; p++) {
+            Object[] page = pages[p];
+            if (page == null) {
+                continue;
+            }
+            long base = (long) p << PAGE_BITS;
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                if (page[i] != null) {
+                    to.put(base + i, page[i]);
+                }
+            }
+        }
+        if (overflow != null) {
+            to.putAll(overflow);
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(pages, null);
+        Arrays.fill(counts, 0);
+        overflow = null;
+        size = 0;
+    }
+
+}
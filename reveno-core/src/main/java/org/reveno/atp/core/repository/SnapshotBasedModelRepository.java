@@ -3,10 +3,12 @@ package org.reveno.atp.core.repository;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.api.domain.WriteableEntityStore;
 import org.reveno.atp.api.domain.WriteableRepository;
 import org.reveno.atp.core.api.TxRepository;
 import org.reveno.atp.utils.MapUtils;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -15,6 +17,7 @@ public class SnapshotBasedModelRepository implements TxRepository {
     protected final Map<Class<?>, LongOpenHashSet> added = MapUtils.fastSetRepo();
     protected final WriteableRepository repository;
     protected Map<Class<?>, Long2ObjectOpenHashMap<Object>> snapshotted = MapUtils.fastRepo();
+    protected final Map<Class<?>, WriteableEntityStore<?>> stores = new HashMap<>();
     protected volatile boolean isTransaction = false;
 
     public SnapshotBasedModelRepository(WriteableRepository repository) {
@@ -73,6 +76,12 @@ public class SnapshotBasedModelRepository implements TxRepository {
         return repository.getEntities(entityType);
     }
 
+    @Override
+    public <T> WriteableEntityStore<T> entityStore(Class<T> entityType) {
+        return (WriteableEntityStore<T>) stores.computeIfAbsent(entityType, t -> new SnapshotEntityStore<>(
+                repository.entityStore(entityType), added.get(t), snapshotted.get(t)));
+    }
+
     @Override
     public void begin() {
         isTransaction = true;
@@ -115,4 +124,60 @@ public class SnapshotBasedModelRepository implements TxRepository {
         }
     }
 
+    protected class SnapshotEntityStore<T> implements WriteableEntityStore<T> {
+        protected final WriteableEntityStore<T> underlying;
+        protected final LongOpenHashSet added;
+        protected final Long2ObjectOpenHashMap<Object> snapshotted;
+
+        public SnapshotEntityStore(WriteableEntityStore<T> underlying, LongOpenHashSet added,
+                                   Long2ObjectOpenHashMap<Object> snapshotted) {
+            this.underlying = underlying;
+            this.added = added;
+            this.snapshotted = snapshotted;
+        }
+
+        @Override
+        public Class<T> type() {
+            return underlying.type();
+        }
+
+        @Override
+        public T get(long id) {
+            return underlying.get(id);
+        }
+
+        @Override
+        public T getClean(long id) {
+            return underlying.get(id);
+        }
+
+        @Override
+        public boolean has(long id) {
+            return underlying.has(id);
+        }
+
+        @Override
+        public T store(long id, T entity) {
+            checkAndStore(id);
+            return underlying.store(id, entity);
+        }
+
+        @Override
+        public T remove(long id) {
+            checkAndStore(id);
+            return underlying.remove(id);
+        }
+
+        protected void checkAndStore(long id) {
+            if (isTransaction && !added.contains(id)) {
+                T old = underlying.get(id);
+                if (old == null) {
+                    added.add(id);
+                } else if (!snapshotted.containsKey(id)) {
+                    snapshotted.put(id, old);
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,29 @@
+package org.reveno.atp.core.repository;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.reveno.atp.api.domain.WriteableEntityStore;
+
+import java.util.Map;
+
+/**
+ * Entity store which keeps its data in its own layout, rather than in
+ * the per type hash map of {@link HashMapRepository}.
+ */
+public interface StandaloneEntityStore<T> extends WriteableEntityStore<T> {
+
+    /**
+     * @return amount of stored entities
+     */
+    int size();
+
+    void copyTo(Map<Long, Object> to);
+
+    void clear();
+
+    default Map<Long, Object> toMap() {
+        Long2ObjectOpenHashMap<Object> result = new Long2ObjectOpenHashMap<>(size());
+        copyTo(result);
+        return result;
+    }
+
+}
@@ -0,0 +1,201 @@
+package org.reveno.atp.core.repository;
+
+import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.api.domain.WriteableEntityStore;
+import org.reveno.atp.api.domain.WriteableRepository;
+import org.reveno.atp.core.api.TxRepository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transactional repository for immutable model, which writes directly to the underlying
+ * repository and records the previous value of every changed entity in a flat undo log.
+ * Rollback replays the log in reverse order, while begin and commit only reset it, so
+ * their cost depends on the amount of writes in the transaction, not on the amount of
+ * entity types.
+ * <p>
+ * Engine doesn't use it, since failed transactions of immutable model are compensated, not
+ * rolled back, so it's meant for direct users of repositories.
+ */
+@SuppressWarnings("unchecked")
+public class UndoLogModelRepository implements TxRepository {
+    protected static final int INITIAL_CAPACITY = 64;
+
+    protected final WriteableRepository repository;
+    protected final Map<Class<?>, WriteableEntityStore<?>> stores = new HashMap<>();
+    protected Class<?>[] types = new Class<?>[INITIAL_CAPACITY];
+    protected long[] ids = new long[INITIAL_CAPACITY];
+    protected Object[] values = new Object[INITIAL_CAPACITY];
+    protected int size = 0;
+    protected volatile boolean isTransaction = false;
+
+    public UndoLogModelRepository(WriteableRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public <T> T store(long entityId, T entity) {
+        return store(entityId, (Class<T>) entity.getClass(), entity);
+    }
+
+    @Override
+    public <T> T store(long entityId, Class<? super T> type, T entity) {
+        if (isTransaction) {
+            record(type, entityId, repository.get(type, entityId));
+        }
+        return repository.store(entityId, type, entity);
+    }
+
+    @Override
+    public <T> T remove(Class<T> entityClass, long entityId) {
+        T old = repository.remove(entityClass, entityId);
+        if (isTransaction && old != null) {
+            record(entityClass, entityId, old);
+        }
+        return old;
+    }
+
+    @Override
+    public void load(Map<Class<?>, Map<Long, Object>> map) {
+        repository.load(map);
+    }
+
+    @Override
+    public <T> T get(Class<T> entityType, long id) {
+        return repository.get(entityType, id);
+    }
+
+    @Override
+    public <T> boolean has(Class<T> entityType, long id) {
+        return repository.has(entityType, id);
+    }
+
+    @Override
+    public <T> T getClean(Class<T> entityType, long id) {
+        return get(entityType, id);
+    }
+
+    @Override
+    public Map<Long, Object> getEntitiesClean(Class<?> entityType) {
+        return getEntities(entityType);
+    }
+
+    @Override
+    public RepositoryData getData() {
+        return repository.getData();
+    }
+
+    @Override
+    public Map<Long, Object> getEntities(Class<?> entityType) {
+        return repository.getEntities(entityType);
+    }
+
+    @Override
+    public Set<Class<?>> getEntityTypes() {
+        return repository.getEntityTypes();
+    }
+
+    @Override
+    public <T> WriteableEntityStore<T> entityStore(Class<T> entityType) {
+        return (WriteableEntityStore<T>) stores.computeIfAbsent(entityType,
+                t -> new UndoLogEntityStore<>(repository.entityStore(entityType)));
+    }
+
+    @Override
+    public void begin() {
+        reset();
+        isTransaction = true;
+    }
+
+    @Override
+    public void commit() {
+        isTransaction = false;
+        reset();
+    }
+
+    @Override
+    public void rollback() {
+        isTransaction = false;
+        for (int i = size - 1; i >= 0; i--) {
+            Class<Object> type = (Class<Object>) types[i];
+            if (values[i] == null) {
+                repository.remove(type, ids[i]);
+            } else {
+                repository.store(ids[i], type, values[i]);
+            }
+        }
+        reset();
+    }
+
+    /**
+     * @param old value before the change, or {@code null} if entity didn't exist
+     */
+    protected void record(Class<?> type, long id, Object old) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        types[size] = type;
+        ids[size] = id;
+        values[size++] = old;
+    }
+
+    protected void reset() {
+        if (size > 0) {
+            // don't keep old entities reachable
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
+    }
+
+    protected class UndoLogEntityStore<T> implements WriteableEntityStore<T> {
+        protected final WriteableEntityStore<T> underlying;
+
+        public UndoLogEntityStore(WriteableEntityStore<T> underlying) {
+            this.underlying = underlying;
+        }
+
+        @Override
+        public Class<T> type() {
+            return underlying.type();
+        }
+
+        @Override
+        public T get(long id) {
+            return underlying.get(id);
+        }
+
+        @Override
+        public T getClean(long id) {
+            return underlying.get(id);
+        }
+
+        @Override
+        public boolean has(long id) {
+            return underlying.has(id);
+        }
+
+        @Override
+        public T store(long id, T entity) {
+            if (isTransaction) {
+                record(underlying.type(), id, underlying.get(id));
+            }
+            return underlying.store(id, entity);
+        }
+
+        @Override
+        public T remove(long id) {
+            T old = underlying.remove(id);
+            if (isTransaction && old != null) {
+                record(underlying.type(), id, old);
+            }
+            return old;
+        }
+    }
+
+}
@@ -6,6 +6,7 @@ import org.reveno.atp.core.api.*;
 import org.reveno.atp.core.api.InputProcessor.JournalType;
 import org.reveno.atp.core.api.storage.JournalsStorage;
 import org.reveno.atp.core.data.DefaultInputProcessor;
+import org.reveno.atp.core.engine.RestoreExecutor;
 import org.reveno.atp.core.engine.WorkflowEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +18,7 @@ public class DefaultSystemStateRestorer implements SystemStateRestorer { //系
     protected final EngineWorkflowContext workflowContext;
     protected final EngineEventsContext eventsContext;
     protected final WorkflowEngine workflowEngine;
+    protected IoListener ioListener = IoListener.NONE;
 
     public DefaultSystemStateRestorer(JournalsStorage journalStorage,
                                       EngineWorkflowContext workflowContext,
@@ -28,6 +30,11 @@ public class DefaultSystemStateRestorer implements SystemStateRestorer { //系
         this.workflowEngine = workflowEngine;
     }
 
+    public DefaultSystemStateRestorer ioListener(IoListener ioListener) {
+        this.ioListener = ioListener;
+        return this;
+    }
+
     /**
      * Reads all journals and restores all previous system mode state from them
      * into the given repository. Also, re-publish all events that were not sent
@@ -41,6 +48,12 @@ public class DefaultSystemStateRestorer implements SystemStateRestorer { //系
         workflowContext.repository(repository);
         final long snapshotTransactionId = repository.getO(SystemInfo.class, 0L).orElse(new SystemInfo(0L)).lastTransactionId;
         final long[] transactionId = {snapshotTransactionId};
+        final long[] records = {0L};
+        final long start = System.nanoTime();
+        // views of replayed entities are mapped once all of them are restored
+        workflowContext.viewsProcessor().defer();
+        // nothing else is executed until the engine is started, so transactions are applied directly
+        final RestoreExecutor restoreExecutor = workflowEngine.getRestoreExecutor();
         try (InputProcessor processor = new DefaultInputProcessor(journalStorage)) {
             processor.process(fromVersion, b -> {
                 EventsCommitInfo e = eventsContext.serializer().deserialize(eventsContext.eventsCommitBuilder(), b);
@@ -50,7 +63,8 @@ public class DefaultSystemStateRestorer implements SystemStateRestorer { //系
                 TransactionCommitInfo tx = workflowContext.serializer().deserialize(workflowContext.transactionCommitBuilder(), b);
                 if (tx.transactionId() > transactionId[0] || tx.transactionId() == snapshotTransactionId) {
                     transactionId[0] = tx.transactionId();
-                    workflowEngine.getPipe().executeRestore(eventBus, tx);
+                    records[0]++;
+                    restoreExecutor.execute(eventBus, tx);
                 } else if (LOG.isDebugEnabled()) {
                     LOG.debug("Transaction ID {} less than last Transaction ID {}", tx.transactionId(), transactionId[0]);
                 }
@@ -58,9 +72,16 @@ public class DefaultSystemStateRestorer implements SystemStateRestorer { //系
         } catch (Throwable t) {
             LOG.error("restore", t);
             throw new RuntimeException(t);
+        } finally {
+            workflowEngine.getPipe().sync();
+            int mapped = workflowContext.viewsProcessor().flushDeferred(repository,
+                    workflowContext.configuration().restoreViewsParallelism());
+            if (mapped > 0) {
+                LOG.info("Views of {} restored entities are mapped.", mapped);
+            }
         }
-        workflowEngine.getPipe().sync();
         workflowContext.eventPublisher().getPipe().sync();
+        ioListener.onRestore(records[0], System.nanoTime() - start);
         return new SystemState(transactionId[0]);
     }
 }
@@ -0,0 +1,267 @@
+package org.reveno.atp.core.restore;
+
+import org.reveno.atp.core.api.TransactionCommitInfo;
+import org.reveno.atp.core.api.channel.Buffer;
+import org.reveno.atp.core.api.serialization.TransactionInfoSerializer;
+import org.reveno.atp.core.api.storage.JournalsStorage;
+import org.reveno.atp.core.api.storage.JournalsStorage.JournalStore;
+import org.reveno.atp.core.channel.ChannelBuffer;
+import org.reveno.atp.utils.MeasureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Follows transaction journals which are being written by another engine, possibly
+ * from another process. Journal files are opened read-only, and each {@link #poll(Consumer)}
+ * reads all complete records appended since the previous one, switching to the next store
+ * once the writer has rolled to it.
+ * <p>
+ * Incomplete record at the tail of the file (or zeroes of preallocated file) fails to
+ * deserialize, so it is left for the next poll. Since mmap journals fill size marks only
+ * after the whole object is written, with {@link #holdLastRecord(boolean)} the last record
+ * is applied only once the next one is visible or the store was rolled.
+ * <p>
+ * Journal is never skipped over the record which can't be decoded, since transactions after it
+ * would be applied to the wrong state. If such record is still there once the store was rolled,
+ * or stays the same for {@link #stallTimeout(long)} while it's followed by non-blank data,
+ * {@link CorruptedJournalException} is thrown.
+ */
+public class JournalTailer implements Closeable {
+    protected static final Logger log = LoggerFactory.getLogger(JournalTailer.class);
+    protected final JournalsStorage storage;
+    protected final TransactionInfoSerializer serializer;
+    protected final TransactionCommitInfo.Builder builder;
+    protected ByteBuffer chunk = ByteBuffer.allocate(MeasureUtils.mb(1));
+    protected boolean holdLastRecord = false;
+    protected long version;
+    protected long lastTransactionId;
+    protected JournalStore store;
+    protected Buffer buffer;
+    protected FileChannel channel;
+    protected long position;
+    protected long stallTimeout = 10_000;
+    protected long stalledAt = -1L;
+    protected long stalledSince;
+
+    /**
+     * @param fromVersion the last store version, which is already reflected in the state
+     * @param lastTransactionId the last transaction id, which is already reflected in the state
+     */
+    public JournalTailer(JournalsStorage storage, TransactionInfoSerializer serializer,
+                         TransactionCommitInfo.Builder builder, long fromVersion, long lastTransactionId) {
+        this.storage = storage;
+        this.serializer = serializer;
+        this.builder = builder;
+        this.version = fromVersion;
+        this.lastTransactionId = lastTransactionId;
+    }
+
+    public JournalTailer holdLastRecord(boolean holdLastRecord) {
+        this.holdLastRecord = holdLastRecord;
+        return this;
+    }
+
+    /**
+     * How long the record, which can't be decoded, might stay in the middle of the live store
+     * before the journal is considered corrupted, in milliseconds.
+     */
+    public JournalTailer stallTimeout(long stallTimeout) {
+        this.stallTimeout = stallTimeout;
+        return this;
+    }
+
+    public long lastTransactionId() {
+        return lastTransactionId;
+    }
+
+    /**
+     * @return amount of transactions passed to consumer
+     */
+    public long poll(Consumer<TransactionCommitInfo> consumer) {
+        long count = 0;
+        while (true) {
+            JournalStore next = nextStore();
+            if (store == null) {
+                if (next == null) {
+                    return count;
+                }
+                open(next);
+                continue;
+            }
+            if (next == null) {
+                return count + drain(consumer, false);
+            }
+            // writer has rolled, so whatever is left in current store is final
+            count += drain(consumer, true);
+            open(next);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeChannel();
+    }
+
+    protected long drain(Consumer<TransactionCommitInfo> consumer, boolean isFinal) {
+        long count = 0;
+        int read;
+        while ((read = read()) > 0) {
+            long consumed = 0;
+            boolean truncated = false;
+            Throwable failure = null;
+            TransactionCommitInfo pending = null;
+            while (buffer.isAvailable()) {
+                int start = buffer.readerPosition();
+                TransactionCommitInfo tx;
+                try {
+                    tx = serializer.deserialize(builder, buffer);
+                } catch (Throwable t) {
+                    // blank space or incomplete record after the last one
+                    buffer.setReaderPosition(start);
+                    truncated = true;
+                    failure = t;
+                    break;
+                }
+                if (pending != null) {
+                    count += apply(pending, consumer);
+                }
+                pending = tx;
+                consumed = holdLastRecord ? start : buffer.readerPosition();
+                if (!holdLastRecord) {
+                    count += apply(pending, consumer);
+                    pending = null;
+                }
+            }
+            if (pending != null && isFinal) {
+                count += apply(pending, consumer);
+                consumed = buffer.readerPosition();
+            }
+            if (truncated && read < chunk.capacity()) {
+                // the rest of the store is in the chunk, so the record can't be longer than it
+                checkUndecodable(buffer.readerPosition(), isFinal, failure);
+            }
+            if (consumed == 0) {
+                if (read == chunk.capacity() && (pending != null || (truncated && !isBlank(buffer.readerPosition())))) {
+                    // the record doesn't fit in the chunk
+                    chunk = ByteBuffer.allocate(chunk.capacity() * 2);
+                    continue;
+                }
+                break;
+            }
+            position += consumed;
+        }
+        return count;
+    }
+
+    /*
+     * zeroes of preallocated store are expected at the tail of any store, and incomplete record,
+     * which is being written, at the tail of the live one, anything else is the corruption
+     */
+    protected void checkUndecodable(int start, boolean isFinal, Throwable failure) {
+        if (isBlank(start)) {
+            stalledAt = -1L;
+            return;
+        }
+        long offset = position + start;
+        if (offset != stalledAt) {
+            stalledAt = offset;
+            stalledSince = System.currentTimeMillis();
+        }
+        if (isFinal || System.currentTimeMillis() - stalledSince > stallTimeout) {
+            String message = String.format("Can't decode transaction after %d at offset %d of %s%s.", lastTransactionId,
+                    offset, store.getTransactionCommitsAddress(), isFinal ? ", which was already rolled" : "");
+            log.error(message, failure);
+            throw new CorruptedJournalException(message, failure);
+        }
+    }
+
+    protected boolean isBlank(int from) {
+        for (int i = from; i < chunk.limit(); i++) {
+            if (chunk.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected long apply(TransactionCommitInfo tx, Consumer<TransactionCommitInfo> consumer) {
+        if (tx.transactionId() > lastTransactionId) {
+            lastTransactionId = tx.transactionId();
+            consumer.accept(tx);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return amount of bytes available in buffer
+     */
+    protected int read() {
+        try {
+            chunk.clear();
+            int read = channel.read(chunk, position);
+            if (read <= 0) {
+                return 0;
+            }
+            chunk.flip();
+            buffer = new ChannelBuffer(chunk);
+            return read;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected JournalStore nextStore() {
+        try {
+            JournalStore[] stores = storage.getStoresAfterVersion(version);
+            return stores.length > 0 ? stores[0] : null;
+        } catch (RuntimeException e) {
+            // the writer is in the middle of rolling
+            log.debug("Can't list stores: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    protected void open(JournalStore next) {
+        closeChannel();
+        try {
+            File file = new File(storage.getBaseDir(), next.getTransactionCommitsAddress());
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Tailing {}", next.getTransactionCommitsAddress());
+        store = next;
+        version = next.getStoreVersion();
+        position = 0;
+        stalledAt = -1L;
+    }
+
+    protected void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+            channel = null;
+        }
+    }
+
+    public static class CorruptedJournalException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CorruptedJournalException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import org.reveno.atp.api.WireSchema;
 import org.reveno.atp.api.domain.RepositoryData;
 import org.reveno.atp.api.exceptions.BufferOutOfBoundsException;
 import org.reveno.atp.commons.ByteArrayObjectMap;
@@ -21,6 +22,7 @@ import org.reveno.atp.core.serialization.protostuff.ZeroCopyLinkBuffer;
 import org.reveno.atp.utils.BinaryUtils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -71,10 +73,27 @@ public class ProtostuffSerializer implements RepositoryDataSerializer, Transacti
 
     @Override
     public void registerTransactionType(Class<?> txDataType) {
+        if (isRegistered(txDataType) && registeredSha1.get(sha1Names.get(txDataType)).wire != null) {
+            return;
+        }
+        long crc = crc32(txDataType.getName());
+        register(txDataType, new ProtoTransactionTypeHolder(txDataType,
+                RuntimeSchema.getSchema(txDataType), registeredCrc.containsKey(crc)));
+    }
+
+    /**
+     * Objects of the type are written as size prefixed bytes of the schema.
+     */
+    @Override
+    public <T> void registerWireSchema(Class<T> type, WireSchema<T> schema) {
+        long crc = crc32(type.getName());
+        boolean collision = registeredCrc.containsKey(crc) && registeredCrc.get(crc).transactionType != type;
+        register(type, new ProtoTransactionTypeHolder(type, schema, collision));
+    }
+
+    protected void register(Class<?> txDataType, ProtoTransactionTypeHolder ptth) {
         byte[] shaKey = sha1(txDataType.getName());
         long crc = crc32(txDataType.getName());
-        ProtoTransactionTypeHolder ptth = new ProtoTransactionTypeHolder(txDataType,
-                RuntimeSchema.getSchema(txDataType), registeredCrc.containsKey(crc));
         registeredSha1.put(shaKey, ptth);
         if (!ptth.crcCollision) {
             registeredCrc.put(crc, ptth);
@@ -169,11 +188,6 @@ public class ProtostuffSerializer implements RepositoryDataSerializer, Transacti
 
     @SuppressWarnings("unchecked")
     public void serializeObject(Buffer buffer, Object tc) {
-        ZeroCopyLinkBuffer zeroCopyLinkBuffer = linkedBuff.get();
-        LowCopyProtostuffOutput lowCopyProtostuffOutput = output.get();
-        zeroCopyLinkBuffer.withBuffer(buffer);
-        lowCopyProtostuffOutput.buffer = zeroCopyLinkBuffer;
-
         long crc = crcNames.getLong(tc.getClass());
         ProtoTransactionTypeHolder ptth = registeredCrc.get(crc);
         if (ptth.crcCollision) {
@@ -186,10 +200,31 @@ public class ProtostuffSerializer implements RepositoryDataSerializer, Transacti
             buffer.writeLong(crc);
         }
 
+        if (ptth.wire != null) {
+            serializeWire(buffer, tc, (WireSchema<Object>) ptth.wire);
+        } else {
+            serializeObject(buffer, tc, (Schema<Object>) ptth.schema);
+        }
+    }
+
+    protected void serializeWire(Buffer buffer, Object object, WireSchema<Object> wire) {
+        buffer.markSize();
+        buffer.writeFromBuffer(wire.encode(object).slice());
+        buffer.writeSize();
+    }
+
+    /**
+     * Writes size prefixed object of the type known to reader, so no type information is written.
+     */
+    public void serializeObject(Buffer buffer, Object object, Schema<Object> schema) {
+        ZeroCopyLinkBuffer zeroCopyLinkBuffer = linkedBuff.get();
+        LowCopyProtostuffOutput lowCopyProtostuffOutput = output.get();
+        zeroCopyLinkBuffer.withBuffer(buffer);
+        lowCopyProtostuffOutput.buffer = zeroCopyLinkBuffer;
+
         buffer.markSize();
-        Schema<Object> schema = (Schema<Object>) ptth.schema;
         try {
-            schema.writeTo(lowCopyProtostuffOutput, tc);
+            schema.writeTo(lowCopyProtostuffOutput, object);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -208,15 +243,26 @@ public class ProtostuffSerializer implements RepositoryDataSerializer, Transacti
 
     @SuppressWarnings("unchecked")
     public Object deserializeObject(Buffer buffer) {
-        Input input = new ZeroCopyBufferInput(buffer, true);
         byte type = buffer.readByte();
-        Schema<Object> schema;
+        ProtoTransactionTypeHolder ptth;
         if (type == CRC32_TYPE) {
             long crc = buffer.readLong();
-            schema = (Schema<Object>) registeredCrc.get(crc).schema;
+            ptth = registeredCrc.get(crc);
         } else {
-            schema = (Schema<Object>) registeredSha1.get(buffer, SHA1_DIGEST_SIZE).schema;
+            ptth = registeredSha1.get(buffer, SHA1_DIGEST_SIZE);
         }
+        if (ptth.wire != null) {
+            // journal buffers are reused, so decoded object gets its own copy of bytes
+            return ((WireSchema<Object>) ptth.wire).decode(ByteBuffer.wrap(buffer.readBytes(buffer.readInt())));
+        }
+        return deserializeObject(buffer, (Schema<Object>) ptth.schema);
+    }
+
+    /**
+     * Reads object written with {@link #serializeObject(Buffer, Object, Schema)}.
+     */
+    public Object deserializeObject(Buffer buffer, Schema<Object> schema) {
+        Input input = new ZeroCopyBufferInput(buffer, true);
         int size = buffer.readInt();
         Object message = schema.newMessage();
         try {
@@ -238,11 +284,20 @@ public class ProtostuffSerializer implements RepositoryDataSerializer, Transacti
     protected static class ProtoTransactionTypeHolder {
         public final Class<?> transactionType;
         public final Schema<?> schema;
+        public final WireSchema<?> wire;
         public final boolean crcCollision;
 
         public ProtoTransactionTypeHolder(Class<?> transactionType, Schema<?> schema, boolean crcCollision) {
             this.transactionType = transactionType;
             this.schema = schema;
+            this.wire = null;
+            this.crcCollision = crcCollision;
+        }
+
+        public ProtoTransactionTypeHolder(Class<?> transactionType, WireSchema<?> wire, boolean crcCollision) {
+            this.transactionType = transactionType;
+            this.schema = null;
+            this.wire = wire;
             this.crcCollision = crcCollision;
         }
     }
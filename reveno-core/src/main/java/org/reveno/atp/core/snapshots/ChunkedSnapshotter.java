@@ -0,0 +1,501 @@
+package org.reveno.atp.core.snapshots;
+
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.core.api.channel.Buffer;
+import org.reveno.atp.core.api.storage.SnapshotStorage;
+import org.reveno.atp.core.api.storage.SnapshotStorage.SnapshotStore;
+import org.reveno.atp.core.channel.ChannelBuffer;
+import org.reveno.atp.core.serialization.DefaultJavaSerializer;
+import org.reveno.atp.core.serialization.ProtostuffSerializer;
+import org.reveno.atp.utils.MeasureUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import static org.reveno.atp.utils.UnsafeUtils.destroyDirectBuffer;
+
+/**
+ * Snapshotter which partitions the repository by entity type, and every type into chunks
+ * of limited amount of entities. Chunks are encoded in parallel, each worker writing its
+ * chunk into its own region of the file, and the index of all chunks is written last. As
+ * snapshot file becomes visible only on {@link #commit}, the index ties chunks together atomically.
+ * <p>
+ * On load, chunks are located by the index, decoded in parallel and each type is put straight
+ * into the presized primitive map, which is adopted by repository without any further copying.
+ * Snapshots of {@link DefaultSnapshotter} format, and chunked ones without index, are still loaded.
+ * <pre>
+ * file:  MAGIC VERSION serializer-type chunk* END index index-position index-crc32 MAGIC
+ * chunk: CHUNK type-name-length type-name class-name-length class-name count payload-length (id size entity)*
+ * index: chunks-count (type-name-length type-name class-name-length class-name count payload-offset payload-length crc32)*
+ * </pre>
+ */
+public class ChunkedSnapshotter extends DefaultSnapshotter {
+    public static final int MAGIC = 0x52564e43;
+    protected static final int VERSION = 3;
+    protected static final int INDEXED_VERSION = 2;
+    protected static final int CHECKSUM_VERSION = 3;
+    protected static final int HEADER_LENGTH = 12;
+    protected static final byte CHUNK = 1;
+    protected static final byte END = 0;
+
+    protected final ProtostuffSerializer serializer;
+    protected final ClassLoader classLoader;
+    protected int chunkSize = 16384;
+    protected int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public ChunkedSnapshotter(SnapshotStorage storage, ClassLoader classLoader) {
+        this(storage, classLoader, new ProtostuffSerializer(classLoader));
+    }
+
+    protected ChunkedSnapshotter(SnapshotStorage storage, ClassLoader classLoader, ProtostuffSerializer serializer) {
+        super(storage, new DefaultJavaSerializer(classLoader), serializer);
+        this.serializer = serializer;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Max amount of entities in a single chunk.
+     */
+    public ChunkedSnapshotter chunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Amount of threads used to encode chunks on snapshot and decode them on load.
+     */
+    public ChunkedSnapshotter parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    @Override
+    public void snapshot(RepositoryData repo, SnapshotIdentifier identifier) {
+        if (identifier.getType() != SnapshotStore.TYPE) {
+            LOG.error("Wrong snapshot identifier type!");
+            return;
+        }
+        SnapshotStore snap = (SnapshotStore) identifier;
+        LOG.debug("Performing chunked repository snapshot to {}", snap);
+        long start = System.nanoTime();
+        List<Chunk> chunks = split(repo);
+        Queue<ChannelBuffer> buffers = new ConcurrentLinkedQueue<>();
+        ThreadLocal<ChannelBuffer> workerBuffer = ThreadLocal.withInitial(() -> {
+            ChannelBuffer buffer = growingBuffer(MeasureUtils.mb(1));
+            buffers.add(buffer);
+            return buffer;
+        });
+        try (FileChannel channel = FileChannel.open(file(snap).toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // every worker claims the region of file for its chunk, so chunks are
+            // laid out contiguously, though in no particular order
+            AtomicLong position = new AtomicLong(HEADER_LENGTH);
+            parallel(() -> chunks.parallelStream().forEach(c -> write(channel, c, workerBuffer.get(), position)));
+
+            ChannelBuffer buffer = workerBuffer.get();
+            long end = position.get();
+            buffer.writeByte(END);
+            writeIndex(buffer, chunks, end + 1);
+            long size = end + flush(channel, buffer, end);
+            buffer.writeInt(MAGIC);
+            buffer.writeInt(VERSION);
+            buffer.writeInt(serializer.getSerializerType());
+            flush(channel, buffer, 0);
+            channel.force(false);
+            ioListener.onSnapshot(size, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            workerBuffer.remove();
+            buffers.forEach(ChannelBuffer::release);
+        }
+    }
+
+    @Override
+    public RepositoryData load() {
+        return load(type -> true);
+    }
+
+    /**
+     * Loads only entity types accepted by the given filter, chunks of other types aren't read at all.
+     * Snapshots of {@link DefaultSnapshotter} format are always loaded as a whole.
+     */
+    public RepositoryData load(Predicate<Class<?>> types) {
+        SnapshotStore snap = storage.getLastSnapshotStore();
+        if (snap == null)
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file(snap).toPath(), StandardOpenOption.READ)) {
+            // header of the first version has no serializer type
+            ByteBuffer header = channel.size() < 8 ? null
+                    : readHeader(channel, 0, (int) Math.min(HEADER_LENGTH, channel.size()));
+            if (header != null && header.getInt() == MAGIC) {
+                return loadChunks(snap, channel, header, types);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return super.load();
+    }
+
+    protected RepositoryData loadChunks(SnapshotStore snap, FileChannel channel, ByteBuffer header,
+                                        Predicate<Class<?>> types) throws IOException {
+        LOG.debug("Loading chunked repository snapshot from {}", snap);
+        long start = System.nanoTime();
+        int version = header.getInt();
+        if (version > VERSION) {
+            throw new IOException(String.format("Unsupported snapshot version %d.", version));
+        }
+        if (version >= CHECKSUM_VERSION && header.getInt() != serializer.getSerializerType()) {
+            throw new IOException(String.format("Snapshot %s is written by unknown serializer.", snap.getSnapshotPath()));
+        }
+        List<Chunk> chunks = version >= INDEXED_VERSION ? readIndex(channel, version) : scan(channel);
+        chunks.removeIf(c -> !types.test(c.type));
+        Map<Class<?>, Map<Long, Object>> data = decode(channel, chunks);
+        ioListener.onSnapshotLoad(channel.size(), System.nanoTime() - start);
+        LOG.debug("Loaded {} chunks from {}", chunks.size(), snap);
+        return new RepositoryData(data);
+    }
+
+    /**
+     * Maps the latest snapshot into memory without decoding any entity, only the position of every
+     * entity is read. Returns {@code null} if there is no snapshot, or it's not of indexed chunked format.
+     */
+    public MappedSnapshot map() {
+        SnapshotStore snap = storage.getLastSnapshotStore();
+        if (snap == null)
+            return null;
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file(snap).toPath(), StandardOpenOption.READ);
+            ByteBuffer header = channel.size() < HEADER_LENGTH ? null : readHeader(channel, 0, HEADER_LENGTH);
+            if (header == null || header.getInt() != MAGIC || header.getInt() < CHECKSUM_VERSION) {
+                channel.close();
+                return null;
+            }
+            if (header.getInt() != serializer.getSerializerType()) {
+                throw new IOException(String.format("Snapshot %s is written by unknown serializer.", snap.getSnapshotPath()));
+            }
+            LOG.debug("Mapping chunked repository snapshot from {}", snap);
+            long start = System.nanoTime();
+            List<Chunk> chunks = readIndex(channel, VERSION);
+            FileChannel mappedChannel = channel;
+            parallel(() -> chunks.parallelStream().forEach(c -> locate(mappedChannel, c)));
+            MappedSnapshot snapshot = new MappedSnapshot(serializer, classLoader, chunks);
+            channel.close();
+            LOG.debug("Mapped {} chunks from {} in {} ms", chunks.size(), snap,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return snapshot;
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Splits every type into chunks of entities of the same class, ready to be written in parallel.
+     * Entities of different classes might be interleaved, so every class fills its own chunk, which
+     * is sized by the amount of its entities left.
+     */
+    protected List<Chunk> split(RepositoryData repo) {
+        List<Chunk> chunks = new ArrayList<>();
+        Map<Class<?>, int[]> remaining = new HashMap<>();
+        Map<Class<?>, Chunk> filled = new HashMap<>();
+        for (Map.Entry<Class<?>, Map<Long, Object>> e : repo.getData().entrySet()) {
+            remaining.clear();
+            filled.clear();
+            for (Object entity : e.getValue().values()) {
+                remaining.computeIfAbsent(entity.getClass(), c -> new int[1])[0]++;
+            }
+            for (Map.Entry<Long, Object> entity : e.getValue().entrySet()) {
+                Class<?> entityClass = entity.getValue().getClass();
+                Chunk chunk = filled.get(entityClass);
+                if (chunk == null || chunk.count == chunk.ids.length) {
+                    int[] left = remaining.get(entityClass);
+                    chunk = new Chunk();
+                    chunk.type = e.getKey();
+                    chunk.entityClass = entityClass;
+                    chunk.ids = new long[Math.min(chunkSize, left[0])];
+                    chunk.entities = new Object[chunk.ids.length];
+                    left[0] -= chunk.ids.length;
+                    filled.put(entityClass, chunk);
+                    chunks.add(chunk);
+                }
+                chunk.ids[chunk.count] = entity.getKey();
+                chunk.entities[chunk.count] = entity.getValue();
+                chunk.count++;
+            }
+        }
+        return chunks;
+    }
+
+    protected void write(FileChannel channel, Chunk chunk, ChannelBuffer buffer, AtomicLong position) {
+        Schema<Object> schema = schema(chunk.entityClass);
+        buffer.writeByte(CHUNK);
+        writeName(buffer, chunk.type);
+        writeName(buffer, chunk.entityClass);
+        buffer.writeInt(chunk.count);
+        int lengthPosition = buffer.writerPosition();
+        buffer.writeInt(0);
+        for (int i = 0; i < chunk.count; i++) {
+            buffer.writeLong(chunk.ids[i]);
+            serializer.serializeObject(buffer, chunk.entities[i], schema);
+        }
+        chunk.length = buffer.writerPosition() - lengthPosition - 4;
+        buffer.getBuffer().putInt(lengthPosition, chunk.length);
+        chunk.checksum = checksum(buffer.getBuffer(), lengthPosition + 4, buffer.writerPosition());
+        long chunkPosition = position.getAndAdd(buffer.writerPosition());
+        chunk.offset = chunkPosition + lengthPosition + 4;
+        chunk.ids = null;
+        chunk.entities = null;
+        try {
+            flush(channel, buffer, chunkPosition);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Index is the manifest of all chunks, so that they can be located and verified without scanning the file.
+     */
+    protected void writeIndex(ChannelBuffer buffer, List<Chunk> chunks, long indexPosition) {
+        int from = buffer.writerPosition();
+        buffer.writeInt(chunks.size());
+        for (Chunk chunk : chunks) {
+            writeName(buffer, chunk.type);
+            writeName(buffer, chunk.entityClass);
+            buffer.writeInt(chunk.count);
+            buffer.writeLong(chunk.offset);
+            buffer.writeInt(chunk.length);
+            buffer.writeInt(chunk.checksum);
+        }
+        int checksum = checksum(buffer.getBuffer(), from, buffer.writerPosition());
+        buffer.writeLong(indexPosition);
+        buffer.writeInt(checksum);
+        buffer.writeInt(MAGIC);
+    }
+
+    protected List<Chunk> readIndex(FileChannel channel, int version) throws IOException {
+        boolean checksums = version >= CHECKSUM_VERSION;
+        int footerLength = checksums ? 16 : 12;
+        ByteBuffer footer = readHeader(channel, channel.size() - footerLength, footerLength);
+        long indexPosition = footer.getLong();
+        int indexChecksum = checksums ? footer.getInt() : 0;
+        if (footer.getInt() != MAGIC || indexPosition < 0 || indexPosition > channel.size() - footerLength) {
+            throw new IOException("Snapshot index is missing.");
+        }
+        ByteBuffer index = readHeader(channel, indexPosition, (int) (channel.size() - footerLength - indexPosition));
+        if (checksums && checksum(index, 0, index.limit()) != indexChecksum) {
+            throw new IOException("Snapshot index is corrupted.");
+        }
+        Map<String, Class<?>> types = new HashMap<>();
+        List<Chunk> chunks = new ArrayList<>(index.getInt());
+        while (index.remaining() > 0) {
+            Chunk chunk = new Chunk();
+            chunk.type = types.computeIfAbsent(readName(index), this::loadClass);
+            chunk.entityClass = types.computeIfAbsent(readName(index), this::loadClass);
+            chunk.count = index.getInt();
+            chunk.offset = index.getLong();
+            chunk.length = index.getInt();
+            chunk.hasChecksum = checksums;
+            chunk.checksum = checksums ? index.getInt() : 0;
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Locates chunks of snapshots written before the index was introduced.
+     */
+    protected List<Chunk> scan(FileChannel channel) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        Map<String, Class<?>> types = new HashMap<>();
+        long position = 8;
+        while (readHeader(channel, position, 1).get() == CHUNK) {
+            Chunk chunk = new Chunk();
+            position += 1;
+            byte[] typeName = readName(channel, position);
+            position += 4 + typeName.length;
+            byte[] className = readName(channel, position);
+            position += 4 + className.length;
+            chunk.type = types.computeIfAbsent(new String(typeName, StandardCharsets.UTF_8), this::loadClass);
+            chunk.entityClass = types.computeIfAbsent(new String(className, StandardCharsets.UTF_8), this::loadClass);
+            ByteBuffer counts = readHeader(channel, position, 8);
+            chunk.count = counts.getInt();
+            chunk.length = counts.getInt();
+            chunk.offset = position + 8;
+            chunks.add(chunk);
+            position = chunk.offset + chunk.length;
+        }
+        return chunks;
+    }
+
+    protected Map<Class<?>, Map<Long, Object>> decode(FileChannel channel, List<Chunk> chunks) {
+        Map<Class<?>, List<Chunk>> byType = new HashMap<>();
+        chunks.forEach(c -> byType.computeIfAbsent(c.type, t -> new ArrayList<>()).add(c));
+        Map<Class<?>, Map<Long, Object>> data = new HashMap<>();
+        byType.forEach((type, typeChunks) -> data.put(type,
+                new Long2ObjectOpenHashMap<>(typeChunks.stream().mapToInt(c -> c.count).sum())));
+
+        parallel(() -> chunks.parallelStream().forEach(c -> decode(channel, c)),
+                () -> byType.entrySet().parallelStream().forEach(e -> {
+                    Long2ObjectOpenHashMap<Object> map = (Long2ObjectOpenHashMap<Object>) data.get(e.getKey());
+                    for (Chunk c : e.getValue()) {
+                        for (int i = 0; i < c.count; i++) {
+                            map.put(c.ids[i], c.entities[i]);
+                        }
+                        c.ids = null;
+                        c.entities = null;
+                    }
+                }));
+        return data;
+    }
+
+    /**
+     * Runs given stages one after another, each on the dedicated pool of {@link #parallelism} threads.
+     */
+    protected void parallel(Runnable... stages) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+        try {
+            for (Runnable stage : stages) {
+                pool.submit(stage).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    protected void decode(FileChannel channel, Chunk chunk) {
+        Thread.currentThread().setContextClassLoader(classLoader);
+        Schema<Object> schema = schema(chunk.entityClass);
+        MappedByteBuffer mapped = null;
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset, chunk.length);
+            if (chunk.hasChecksum && checksum(mapped, 0, chunk.length) != chunk.checksum) {
+                throw new IOException(String.format("Snapshot chunk of %s at %d is corrupted.",
+                        chunk.type.getName(), chunk.offset));
+            }
+            Buffer buffer = new ChannelBuffer(mapped);
+            chunk.ids = new long[chunk.count];
+            chunk.entities = new Object[chunk.count];
+            for (int i = 0; i < chunk.count; i++) {
+                chunk.ids[i] = buffer.readLong();
+                chunk.entities[i] = serializer.deserializeObject(buffer, schema);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (mapped != null) {
+                destroyDirectBuffer(mapped);
+            }
+        }
+    }
+
+    protected static byte[] readName(FileChannel channel, long position) throws IOException {
+        int length = readHeader(channel, position, 4).getInt();
+        byte[] name = new byte[length];
+        readHeader(channel, position + 4, length).get(name);
+        return name;
+    }
+
+    /**
+     * Maps the chunk and walks over its entities, reading only their ids and sizes.
+     */
+    protected void locate(FileChannel channel, Chunk chunk) {
+        try {
+            chunk.mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset, chunk.length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (checksum(chunk.mapped, 0, chunk.length) != chunk.checksum) {
+            throw new RuntimeException(String.format("Snapshot chunk of %s at %d is corrupted.",
+                    chunk.type.getName(), chunk.offset));
+        }
+        chunk.ids = new long[chunk.count];
+        chunk.positions = new int[chunk.count];
+        int position = 0;
+        for (int i = 0; i < chunk.count; i++) {
+            chunk.ids[i] = chunk.mapped.getLong(position);
+            chunk.positions[i] = position + 8;
+            position += 12 + chunk.mapped.getInt(position + 8);
+        }
+    }
+
+    protected static int checksum(ByteBuffer buffer, int from, int to) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(to).position(from);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    protected static String readName(ByteBuffer buffer) {
+        byte[] name = new byte[buffer.getInt()];
+        buffer.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    protected static void writeName(Buffer buffer, Class<?> type) {
+        byte[] name = type.getName().getBytes(StandardCharsets.UTF_8);
+        buffer.writeInt(name.length);
+        buffer.writeBytes(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Schema<Object> schema(Class<?> type) {
+        return (Schema<Object>) RuntimeSchema.getSchema(type);
+    }
+
+    protected Class<?> loadClass(String name) {
+        try {
+            return classLoader.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static class Chunk {
+        protected Class<?> type;
+        protected Class<?> entityClass;
+        protected long offset;
+        protected int length;
+        protected int count;
+        protected boolean hasChecksum;
+        protected int checksum;
+        protected long[] ids;
+        protected Object[] entities;
+        protected int[] positions;
+        protected MappedByteBuffer mapped;
+    }
+
+}
@@ -2,17 +2,40 @@ package org.reveno.atp.core.snapshots;
 
 import org.reveno.atp.api.RepositorySnapshotter;
 import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.core.api.IoListener;
 import org.reveno.atp.core.api.channel.Channel;
 import org.reveno.atp.core.api.serialization.RepositoryDataSerializer;
 import org.reveno.atp.core.api.storage.SnapshotStorage;
 import org.reveno.atp.core.api.storage.SnapshotStorage.SnapshotStore;
+import org.reveno.atp.core.channel.ChannelBuffer;
+import org.reveno.atp.utils.MeasureUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static org.reveno.atp.utils.UnsafeUtils.destroyDirectBuffer;
+
+/**
+ * Snapshotter which writes the whole repository with the first serializer capable of it.
+ * <pre>
+ * file: MAGIC VERSION serializer-type length crc32 repository
+ * </pre>
+ */
 public class DefaultSnapshotter implements RepositorySnapshotter {
     protected static final Logger LOG = LoggerFactory.getLogger(DefaultSnapshotter.class);
+    public static final int CONTAINER_MAGIC = 0x52564e53;
+    protected static final int CONTAINER_VERSION = 1;
+    protected static final int CONTAINER_HEADER_LENGTH = 24;
     protected final SnapshotStorage storage;
     protected final RepositoryDataSerializer[] serializers;
+    protected IoListener ioListener = IoListener.NONE;
 
     public DefaultSnapshotter(
             SnapshotStorage storage,
@@ -21,6 +44,11 @@ public class DefaultSnapshotter implements RepositorySnapshotter {
         this.serializers = serializers;
     }
 
+    public DefaultSnapshotter ioListener(IoListener ioListener) {
+        this.ioListener = ioListener;
+        return this;
+    }
+
     @Override
     public SnapshotIdentifier lastSnapshot() {
         return storage.getLastSnapshotStore();
@@ -57,45 +85,162 @@ public class DefaultSnapshotter implements RepositorySnapshotter {
             return;
         }
         SnapshotStore snap = (SnapshotStore) identifier;
-        for (int i = 0; i < serializers.length; i++) {
+        LOG.debug("Performing default repository snapshot to {}", snap);
+        long start = System.nanoTime();
+        ChannelBuffer body = growingBuffer(MeasureUtils.mb(1));
+        try (FileChannel channel = FileChannel.open(file(snap).toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            RepositoryDataSerializer serializer = serialize(repo, body);
+            ByteBuffer bytes = body.getBuffer();
+            bytes.flip();
+            CRC32 crc = new CRC32();
+            crc.update(bytes.duplicate());
+            ByteBuffer header = ByteBuffer.allocate(CONTAINER_HEADER_LENGTH);
+            header.putInt(CONTAINER_MAGIC).putInt(CONTAINER_VERSION).putInt(serializer.getSerializerType())
+                    .putInt(bytes.remaining()).putLong(crc.getValue()).flip();
+            long size = write(channel, header, 0);
+            size += write(channel, bytes, size);
+            channel.force(false);
+            ioListener.onSnapshot(size, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            body.release();
+        }
+    }
+
+    /**
+     * Loads snapshot by the serializer recorded in its header, failing on any corruption.
+     * Snapshots written before the header was introduced are tried with every serializer in turn.
+     */
+    @Override
+    public RepositoryData load() {
+        SnapshotStore snap = storage.getLastSnapshotStore();
+        if (snap == null)
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file(snap).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.size() < CONTAINER_HEADER_LENGTH ? null
+                    : readHeader(channel, 0, CONTAINER_HEADER_LENGTH);
+            if (header != null && header.getInt() == CONTAINER_MAGIC) {
+                return loadContainer(snap, channel, header);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return loadLegacy(snap);
+    }
+
+    protected RepositoryData loadContainer(SnapshotStore snap, FileChannel channel, ByteBuffer header) throws IOException {
+        LOG.debug("Loading repository snapshot from {}", snap);
+        long start = System.nanoTime();
+        int version = header.getInt();
+        if (version > CONTAINER_VERSION) {
+            throw new IOException(String.format("Unsupported snapshot version %d.", version));
+        }
+        RepositoryDataSerializer serializer = serializer(header.getInt());
+        int length = header.getInt();
+        long checksum = header.getLong();
+        if (CONTAINER_HEADER_LENGTH + (long) length != channel.size()) {
+            throw new IOException(String.format("Snapshot %s is truncated.", snap.getSnapshotPath()));
+        }
+        MappedByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, CONTAINER_HEADER_LENGTH, length);
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException(String.format("Snapshot %s is corrupted.", snap.getSnapshotPath()));
+            }
+            RepositoryData data = serializer.deserialize(new ChannelBuffer(body));
+            ioListener.onSnapshotLoad(channel.size(), System.nanoTime() - start);
+            LOG.debug("Loaded repository snapshot from {}", snap);
+            return data;
+        } finally {
+            destroyDirectBuffer(body);
+        }
+    }
+
+    protected RepositoryData loadLegacy(SnapshotStore snap) {
+        Throwable error = null;
+        for (RepositoryDataSerializer serializer : serializers) {
             try (Channel c = storage.snapshotChannel(snap.getSnapshotPath())) {
-                LOG.debug("Performing default repository snapshot to {}", snap);
+                LOG.debug("Loading repository snapshot of previous format from {}", snap);
+
+                long start = System.nanoTime();
+                RepositoryData data = serializer.deserialize(c.read());
+                ioListener.onSnapshotLoad(c.size(), System.nanoTime() - start);
+                LOG.debug("Loaded repository snapshot from {}", snap);
+                return data;
+            } catch (Throwable t) {
+                LOG.debug("Can't load snapshot with {}", serializer.getClass().getSimpleName(), t);
+                error = t;
+            }
+        }
+        throw new RuntimeException(String.format("Can't load snapshot %s with any serializer.",
+                snap.getSnapshotPath()), error);
+    }
 
-                final int index = i;
-                c.write(b -> serializers[index].serialize(repo, b), true);
+    protected RepositoryDataSerializer serialize(RepositoryData repo, ChannelBuffer buffer) {
+        for (int i = 0; ; i++) {
+            try {
+                buffer.clear();
+                serializers[i].serialize(repo, buffer);
+                return serializers[i];
             } catch (Throwable t) {
                 if (i + 1 == serializers.length) {
                     throw new RuntimeException(t);
-                } else {
-                    LOG.info("Can't snapshot with {}, falling back to {}", serializers[i].getClass().getSimpleName(),
-                            serializers[i + 1].getClass().getSimpleName());
-                    storage.removeSnapshotStore(snap);
-                    SnapshotStore nextStore = storage.nextTempSnapshotStore();
-                    snap.setSnapshotPath(nextStore.getSnapshotPath());
                 }
-                continue;
+                LOG.info("Can't snapshot with {}, falling back to {}", serializers[i].getClass().getSimpleName(),
+                        serializers[i + 1].getClass().getSimpleName());
             }
-            break;
         }
     }
 
-    @Override
-    public RepositoryData load() {
-        if (storage.getLastSnapshotStore() == null)
-            return null;
-
-        SnapshotStore snap = storage.getLastSnapshotStore();
+    protected RepositoryDataSerializer serializer(int serializerType) throws IOException {
         for (RepositoryDataSerializer serializer : serializers) {
-            try (Channel c = storage.snapshotChannel(snap.getSnapshotPath())) {
-                LOG.debug("Loading repository snapshot from {}", snap);
+            if (serializer.getSerializerType() == serializerType) {
+                return serializer;
+            }
+        }
+        throw new IOException(String.format("Can't find serializer for %d.", serializerType));
+    }
 
-                return serializer.deserialize(c.read());
-            } catch (Throwable ignored) {
-            } finally {
-                LOG.debug("Loaded repository snapshot from {}", snap);
+    protected File file(SnapshotStore snap) {
+        return new File(storage.getBaseDir(), snap.getSnapshotPath());
+    }
+
+    protected static ByteBuffer readHeader(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(length);
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot.");
             }
         }
-        return null;
+        header.flip();
+        return header;
+    }
+
+    protected static int write(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        int size = bytes.remaining();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, position + size - bytes.remaining());
+        }
+        return size;
+    }
+
+    protected static int flush(FileChannel channel, ChannelBuffer buffer, long position) throws IOException {
+        ByteBuffer bytes = buffer.getBuffer();
+        bytes.flip();
+        int size = write(channel, bytes, position);
+        bytes.clear();
+        return size;
+    }
+
+    protected static ChannelBuffer growingBuffer(int capacity) {
+        ChannelBuffer[] buffer = new ChannelBuffer[1];
+        buffer[0] = new ChannelBuffer(ByteBuffer.allocateDirect(capacity), () -> buffer[0].getBuffer(),
+                () -> buffer[0].cloneExtended(buffer[0].length() * 2));
+        return buffer[0];
     }
 
 }
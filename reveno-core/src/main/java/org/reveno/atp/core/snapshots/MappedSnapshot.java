@@ -0,0 +1,151 @@
+package org.reveno.atp.core.snapshots;
+
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import org.reveno.atp.core.channel.ChannelBuffer;
+import org.reveno.atp.core.serialization.ProtostuffSerializer;
+import org.reveno.atp.core.snapshots.ChunkedSnapshotter.Chunk;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static org.reveno.atp.utils.UnsafeUtils.destroyDirectBuffer;
+
+/**
+ * Chunked snapshot mapped into memory, which keeps only the position of every entity and
+ * decodes entities one by one on demand. Every entity can be taken only once, so that the
+ * caller keeps it afterwards, and the snapshot forgets about it.
+ * <p>
+ * Not thread safe, is meant to be used by the transaction pipeline only.
+ */
+@SuppressWarnings("unchecked")
+public class MappedSnapshot implements AutoCloseable {
+    protected final ProtostuffSerializer serializer;
+    protected final ClassLoader classLoader;
+    protected final Chunk[] chunks;
+    protected final Map<Class<?>, Long2LongOpenHashMap> positions = new HashMap<>();
+    protected int size;
+
+    public MappedSnapshot(ProtostuffSerializer serializer, ClassLoader classLoader, List<Chunk> chunks) {
+        this.serializer = serializer;
+        this.classLoader = classLoader;
+        this.chunks = chunks.toArray(new Chunk[chunks.size()]);
+        Map<Class<?>, Integer> counts = new HashMap<>();
+        chunks.forEach(c -> counts.merge(c.type, c.count, Integer::sum));
+        counts.forEach((type, count) -> {
+            Long2LongOpenHashMap map = new Long2LongOpenHashMap(count);
+            map.defaultReturnValue(-1);
+            positions.put(type, map);
+        });
+        for (int i = 0; i < this.chunks.length; i++) {
+            Chunk chunk = this.chunks[i];
+            Long2LongOpenHashMap map = positions.get(chunk.type);
+            for (int j = 0; j < chunk.count; j++) {
+                map.put(chunk.ids[j], ((long) i << 32) | chunk.positions[j]);
+            }
+            size += chunk.count;
+            chunk.ids = null;
+            chunk.positions = null;
+        }
+    }
+
+    public Set<Class<?>> types() {
+        return positions.keySet();
+    }
+
+    /**
+     * Amount of entities not taken yet.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean has(Class<?> type, long id) {
+        Long2LongOpenHashMap map = positions.get(type);
+        return map != null && map.containsKey(id);
+    }
+
+    /**
+     * Decodes the entity, so that it can't be taken again.
+     *
+     * @return entity or {@code null} if it's not in snapshot, or was already taken or forgotten
+     */
+    public <T> T take(Class<T> type, long id) {
+        Long2LongOpenHashMap map = positions.get(type);
+        if (map == null) {
+            return null;
+        }
+        long position = map.remove(id);
+        if (position == -1) {
+            return null;
+        }
+        size--;
+        return (T) decode(position);
+    }
+
+    /**
+     * Decodes all entities of the type which weren't taken yet.
+     */
+    public void takeAll(Class<?> type, BiConsumer<Long, Object> consumer) {
+        Long2LongOpenHashMap map = positions.get(type);
+        if (map == null) {
+            return;
+        }
+        for (Long2LongMap.Entry e : map.long2LongEntrySet()) {
+            consumer.accept(e.getLongKey(), decode(e.getLongValue()));
+        }
+        size -= map.size();
+        map.clear();
+    }
+
+    /**
+     * Called when entity was replaced or removed, so its snapshot state is stale.
+     */
+    public void forget(Class<?> type, long id) {
+        Long2LongOpenHashMap map = positions.get(type);
+        if (map != null && map.remove(id) != -1) {
+            size--;
+        }
+    }
+
+    public void forgetAll(Class<?> type) {
+        Long2LongOpenHashMap map = positions.get(type);
+        if (map != null) {
+            size -= map.size();
+            map.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Chunk chunk : chunks) {
+            if (chunk.mapped != null) {
+                destroyDirectBuffer(chunk.mapped);
+                chunk.mapped = null;
+            }
+        }
+        positions.clear();
+        size = 0;
+    }
+
+    protected Object decode(long position) {
+        Chunk chunk = chunks[(int) (position >>> 32)];
+        ByteBuffer entity = chunk.mapped.duplicate();
+        entity.position((int) position);
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            return serializer.deserializeObject(new ChannelBuffer(entity), (Schema<Object>) RuntimeSchema.getSchema(chunk.entityClass));
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+}
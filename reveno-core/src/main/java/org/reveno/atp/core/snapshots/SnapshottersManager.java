@@ -1,6 +1,7 @@
 package org.reveno.atp.core.snapshots;
 
 import org.reveno.atp.api.RepositorySnapshotter;
+import org.reveno.atp.core.api.IoListener;
 import org.reveno.atp.core.api.storage.SnapshotStorage;
 import org.reveno.atp.core.serialization.DefaultJavaSerializer;
 import org.reveno.atp.core.serialization.ProtostuffSerializer;
@@ -10,11 +11,30 @@ import java.util.List;
 
 public class SnapshottersManager {
     protected volatile List<RepositorySnapshotter> snapshotters = new ArrayList<>();
+    protected RepositorySnapshotter defaultSnapshotter;
 
     public SnapshottersManager(SnapshotStorage storage, ClassLoader classLoader) {
+        this(storage, classLoader, IoListener.NONE);
+    }
+
+    public SnapshottersManager(SnapshotStorage storage, ClassLoader classLoader, IoListener ioListener) {
         ProtostuffSerializer protostuffSerializer = new ProtostuffSerializer(classLoader);
         DefaultJavaSerializer javaSerializer = new DefaultJavaSerializer(classLoader);
-        snapshotters.add(new DefaultSnapshotter(storage, javaSerializer, protostuffSerializer));
+        defaultSnapshotter = new DefaultSnapshotter(storage, javaSerializer, protostuffSerializer).ioListener(ioListener);
+        snapshotters.add(defaultSnapshotter);
+    }
+
+    /**
+     * Replaces the default snapshotter, if it wasn't reset.
+     */
+    public void replaceDefault(RepositorySnapshotter snapshotter) {
+        List<RepositorySnapshotter> result = new ArrayList<>(snapshotters);
+        int index = result.indexOf(defaultSnapshotter);
+        if (index >= 0) {
+            result.set(index, snapshotter);
+            snapshotters = result;
+        }
+        defaultSnapshotter = snapshotter;
     }
 
     public void registerSnapshotter(RepositorySnapshotter snapshotter) {
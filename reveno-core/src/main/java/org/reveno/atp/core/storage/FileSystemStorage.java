@@ -1,6 +1,7 @@
 package org.reveno.atp.core.storage;
 
 import org.reveno.atp.core.RevenoConfiguration.RevenoJournalingConfiguration;
+import org.reveno.atp.core.api.IoListener;
 import org.reveno.atp.core.api.channel.Channel;
 import org.reveno.atp.core.api.storage.FoldersStorage;
 import org.reveno.atp.core.api.storage.JournalsStorage;
@@ -38,6 +39,7 @@ public class FileSystemStorage implements FoldersStorage, JournalsStorage, Snaps
     protected static final byte[] BLANK_PAGE = new byte[PAGE_SIZE];
     protected final File baseDir;
     protected final RevenoJournalingConfiguration config;
+    protected IoListener ioListener = IoListener.NONE;
 
     public FileSystemStorage(File baseDir, RevenoJournalingConfiguration config) {
         if (!baseDir.exists()) {
@@ -47,12 +49,18 @@ public class FileSystemStorage implements FoldersStorage, JournalsStorage, Snaps
         this.config = config;
     }
 
+    public FileSystemStorage ioListener(IoListener ioListener) {
+        this.ioListener = ioListener;
+        return this;
+    }
+
     @Override
     public Channel channel(String address) {
         FileChannel fc = new FileChannel(new File(baseDir, address));
         fc.extendDelta(config.maxObjectSize());
         fc.channelOptions(config.channelOptions());
         fc.isPreallocated(config.isPreallocated());
+        fc.ioListener(ioListener);
         return fc.init();
     }
 
@@ -63,7 +71,7 @@ public class FileSystemStorage implements FoldersStorage, JournalsStorage, Snaps
 
     @Override
     public Channel snapshotChannel(String address) {
-        return new FileChannel(new File(baseDir, address)).init();
+        return new FileChannel(new File(baseDir, address)).ioListener(ioListener).init();
     }
 
     @Override
@@ -342,11 +350,13 @@ public class FileSystemStorage implements FoldersStorage, JournalsStorage, Snaps
         try {
             RandomAccessFile raf = new RandomAccessFile(file, "rw");
             LOG.info("Preallocating started.");
+            long start = System.nanoTime();
             for (long i = 0; i < size; i += PAGE_SIZE) {
                 raf.write(BLANK_PAGE, 0, PAGE_SIZE);
             }
-            LOG.info("Preallocating finished.");
             raf.close();
+            ioListener.onPreallocate(size, System.nanoTime() - start);
+            LOG.info("Preallocating finished.");
         } catch (Exception e) {
             throw Exceptions.runtime(e);
         }
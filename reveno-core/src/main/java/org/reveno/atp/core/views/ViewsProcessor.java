@@ -2,13 +2,20 @@ package org.reveno.atp.core.views;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.reveno.atp.api.domain.Repository;
 import org.reveno.atp.core.api.ViewsStorage;
 import org.reveno.atp.core.views.ViewsManager.ViewHandlerHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
 @SuppressWarnings("all")
@@ -24,8 +31,10 @@ public class ViewsProcessor {
             e.getValue().long2ObjectEntrySet().forEach(m);
         }
     };
+    protected static final int PARALLEL_CHUNK = 4096;
     protected ViewsStorage storage;
     protected OnDemandViewsContext repository;
+    protected Map<Class<?>, LongOpenHashSet> deferred;
 
     public ViewsProcessor(ViewsManager manager, ViewsStorage storage) {
         this.manager = manager;
@@ -35,21 +44,115 @@ public class ViewsProcessor {
 
     public void process(Repository repo) {
         repository.repositorySource(repo);
-        repo.getEntityTypes().forEach(c -> repo.getEntities(c).forEach((k, v) -> {
-            try {
-                map(c, k, v);
-            } catch (Throwable t) {
-                LOG.error(t.getMessage(), t);
-            }
-        }));
+        // types without views aren't touched, so lazily loaded entities stay in snapshot
+        repo.getEntityTypes().stream().filter(c -> manager.resolveEntity(c) != null)
+                .forEach(c -> repo.getEntities(c).forEach((k, v) -> {
+                    try {
+                        map(c, k, v);
+                    } catch (Throwable t) {
+                        LOG.error(t.getMessage(), t);
+                    }
+                }));
         repository.repositorySource(null);
     }
 
     public void process(Map<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> marked) {
+        if (deferred != null) {
+            collect(marked);
+            return;
+        }
         repository.marked(marked);
         marked.entrySet().forEach(c);
     }
 
+    /**
+     * Starts collecting ids of marked entities instead of mapping them, so that every entity
+     * is mapped once by {@link #flushDeferred(Repository, int)}, however many times it was changed.
+     */
+    public void defer() {
+        deferred = new HashMap<>();
+    }
+
+    public boolean isDeferring() {
+        return deferred != null;
+    }
+
+    /**
+     * Maps all entities collected since {@link #defer()} by their latest state in the
+     * repository, removing views of those which are no longer there.
+     *
+     * @param parallelism amount of threads, mappers must be thread safe if it's more than one
+     * @return amount of mapped entities
+     */
+    public int flushDeferred(Repository repo, int parallelism) {
+        Map<Class<?>, LongOpenHashSet> dirty = deferred;
+        deferred = null;
+        if (dirty == null) {
+            return 0;
+        }
+        int total = 0;
+        List<Runnable> chunks = new ArrayList<>();
+        for (Map.Entry<Class<?>, LongOpenHashSet> e : dirty.entrySet()) {
+            Class<?> type = e.getKey();
+            long[] ids = e.getValue().toLongArray();
+            total += ids.length;
+            for (int from = 0; from < ids.length; from += PARALLEL_CHUNK) {
+                int f = from, t = Math.min(from + PARALLEL_CHUNK, ids.length);
+                chunks.add(() -> new ViewsProcessor(manager, storage).mapLatest(repo, type, ids, f, t));
+            }
+        }
+        if (parallelism > 1 && chunks.size() > 1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.submit(() -> chunks.parallelStream().forEach(Runnable::run)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            chunks.forEach(Runnable::run);
+        }
+        return total;
+    }
+
+    protected void collect(Map<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> marked) {
+        for (Map.Entry<Class<?>, Long2ObjectLinkedOpenHashMap<Object>> e : marked.entrySet()) {
+            if (e.getValue().isEmpty() || manager.resolveEntity(e.getKey()) == null) {
+                continue;
+            }
+            LongOpenHashSet ids = deferred.computeIfAbsent(e.getKey(), k -> new LongOpenHashSet());
+            LongIterator i = e.getValue().keySet().iterator();
+            while (i.hasNext()) {
+                ids.add(Math.abs(i.nextLong()));
+            }
+        }
+    }
+
+    protected void mapLatest(Repository repo, Class<?> type, long[] ids, int from, int to) {
+        ViewHandlerHolder<Object, Object> holder = (ViewHandlerHolder<Object, Object>) manager.resolveEntity(type);
+        repository.repositorySource(repo);
+        try {
+            for (int i = from; i < to; i++) {
+                Object entity = repo.getClean(type, ids[i]);
+                try {
+                    if (entity != null) {
+                        map(holder, ids[i], entity);
+                    } else {
+                        storage.remove(holder.viewType, ids[i]);
+                    }
+                } catch (Throwable t) {
+                    LOG.error(t.getMessage(), t);
+                }
+            }
+        } finally {
+            repository.repositorySource(null);
+        }
+    }
+
     public void erase() {
         storage.clearAll();
     }
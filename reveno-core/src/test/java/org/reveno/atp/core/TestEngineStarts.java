@@ -3,12 +3,22 @@ package org.reveno.atp.core;
 import com.google.common.io.Files;
 import org.junit.Assert;
 import org.junit.Test;
+import org.reveno.atp.api.Configuration.ModelType;
 import org.reveno.atp.api.Reveno;
 import org.reveno.atp.api.commands.Result;
+import org.reveno.atp.api.exceptions.FailoverRulesException;
+import org.reveno.atp.core.api.IoListener;
+import org.reveno.atp.core.engine.processor.PipeProcessor;
+import org.reveno.atp.core.engine.processor.PipeProcessorListener;
+import org.reveno.atp.core.engine.processor.PipeProcessorStats;
+import org.reveno.atp.core.restore.JournalTailer.CorruptedJournalException;
 
 import java.io.File;
+import java.io.RandomAccessFile;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class TestEngineStarts {
 	
@@ -45,8 +55,160 @@ public class TestEngineStarts {
 		baseDir.delete();
 	}
 
+	@Test
+	public void testPipeListener() throws InterruptedException, ExecutionException {
+		File baseDir = Files.createTempDir();
+		Engine engine = (Engine) createEngine(baseDir);
+		AtomicReference<PipeProcessorStats> stats = new AtomicReference<>();
+		AtomicLong claims = new AtomicLong();
+		AtomicLong handled = new AtomicLong();
+		engine.interceptors().addPipeListener(PipeProcessor.TRANSACTIONS_PIPE, new PipeProcessorListener() {
+			@Override
+			public void onStart(PipeProcessorStats s) {
+				stats.set(s);
+			}
+
+			@Override
+			public void onClaim(long waitNanos) {
+				claims.incrementAndGet();
+			}
+
+			@Override
+			public void onBatch(int stage, long size) {
+				if (stage == 0) handled.addAndGet(size);
+			}
+		});
+
+		engine.startup();
+		Assert.assertNotNull(stats.get());
+		Assert.assertEquals(3, stats.get().stages());
+
+		for (int i = 0; i < 10; i++) {
+			engine.executeCommand(new SqrtCommand(i)).get();
+		}
+		Assert.assertTrue(claims.get() >= 10);
+		Assert.assertTrue(stats.get().consumerLag(0) >= 0);
+		Assert.assertTrue(stats.get().remainingCapacity() <= stats.get().bufferSize());
+
+		engine.shutdown();
+		Assert.assertEquals(claims.get(), handled.get());
+
+		baseDir.delete();
+	}
+
+	@Test
+	public void testReplica() throws Exception {
+		File baseDir = Files.createTempDir();
+		Reveno engine = createEngine(baseDir);
+		engine.startup();
+		engine.executeCommand(new SqrtCommand(16)).get();
+
+		ReplicaEngine replica = createEngine(new ReplicaEngine(baseDir).pollInterval(1));
+		replica.startup();
+		Assert.assertEquals(4, replica.query().find(LastCalculatedView.class, 1).sqrt, 0.001);
+
+		engine.executeCommand(new SqrtCommand(64)).get();
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!replica.query().findO(LastCalculatedView.class, 3).isPresent() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		Assert.assertEquals(8, replica.query().find(LastCalculatedView.class, 3).sqrt, 0.001);
+
+		try {
+			replica.executeCommand(new SqrtCommand(9));
+			Assert.fail();
+		} catch (FailoverRulesException ignored) {
+		}
+
+		replica.shutdown();
+		engine.shutdown();
+		baseDir.delete();
+	}
+
+	@Test
+	public void testReplicaStopsOnCorruptedJournal() throws Exception {
+		File baseDir = Files.createTempDir();
+		Reveno engine = createEngine(baseDir);
+		engine.startup();
+		for (int i = 1; i <= 10; i++) {
+			engine.executeCommand(new SqrtCommand(i * i)).get();
+		}
+		engine.shutdown();
+		// the next store is started, so the first one is final
+		engine = createEngine(baseDir);
+		engine.startup();
+		engine.shutdown();
+
+		File journal = baseDir.listFiles((d, n) -> n.startsWith("tx-") && new File(d, n).length() > 0)[0];
+		try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+			file.seek(file.length() / 2);
+			file.write(new byte[] {-1, -1, -1, -1, -1, -1, -1, -1});
+		}
+
+		try {
+			createEngine(new ReplicaEngine(baseDir)).startup();
+			Assert.fail();
+		} catch (CorruptedJournalException ignored) {
+		}
+		baseDir.delete();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testColumnarEntitiesWithMutableModel() {
+		Reveno engine = createEngine(Files.createTempDir());
+		engine.config().modelType(ModelType.MUTABLE);
+		engine.config().columnarEntities(ColumnarEntity.class);
+		engine.startup();
+	}
+
+	@Test
+	public void testIoListener() throws InterruptedException, ExecutionException {
+		File baseDir = Files.createTempDir();
+		AtomicLong written = new AtomicLong();
+		AtomicLong rolls = new AtomicLong();
+		AtomicLong restored = new AtomicLong(-1);
+		IoListener listener = new IoListener() {
+			@Override
+			public void onWrite(long bytes) {
+				written.addAndGet(bytes);
+			}
+
+			@Override
+			public void onRoll(long nanos) {
+				rolls.incrementAndGet();
+			}
+
+			@Override
+			public void onRestore(long records, long nanos) {
+				restored.set(records);
+			}
+		};
+		Engine engine = (Engine) createEngine(baseDir);
+		engine.interceptors().addIoListener(listener);
+		engine.startup();
+		Assert.assertEquals(0, restored.get());
+		Assert.assertTrue(rolls.get() > 0);
+
+		for (int i = 0; i < 5; i++) {
+			engine.executeCommand(new SqrtCommand(i)).get();
+		}
+		engine.shutdown();
+		Assert.assertTrue(written.get() > 0);
+
+		engine = (Engine) createEngine(baseDir);
+		engine.interceptors().addIoListener(listener);
+		engine.startup();
+		Assert.assertEquals(5, restored.get());
+		engine.shutdown();
+
+		baseDir.delete();
+	}
+
 	protected Reveno createEngine(File baseDir) {
-		Reveno engine = new Engine(baseDir);
+		return createEngine(new Engine(baseDir));
+	}
+
+	protected <T extends Engine> T createEngine(T engine) {
 		engine.domain().command(SqrtCommand.class, Double.class, (c, u) -> {
 			double result = Math.sqrt(c.number);
 			u.executeTxAction(new WriteLastCalculationTransaction(u.id(SqrtCommand.class), result));
@@ -94,5 +256,9 @@ public class TestEngineStarts {
 			this.sqrt = sqrt;
 		}
 	}
+
+	public static class ColumnarEntity {
+		public long value;
+	}
 	
 }
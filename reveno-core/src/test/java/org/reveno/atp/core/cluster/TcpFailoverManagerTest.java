@@ -0,0 +1,144 @@
+package org.reveno.atp.core.cluster;
+
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reveno.atp.api.exceptions.FailoverRulesException;
+import org.reveno.atp.core.Engine;
+import org.reveno.atp.core.TestEngineStarts.LastCalculatedView;
+import org.reveno.atp.core.TestEngineStarts.SqrtCommand;
+import org.reveno.atp.core.TestEngineStarts.WriteLastCalculationTransaction;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class TcpFailoverManagerTest {
+
+	@Test
+	public void testReplicationAndFailover() throws Exception {
+		List<InetSocketAddress> members = Arrays.asList(freeAddress(), freeAddress());
+		Engine master = createEngine(Files.createTempDir(), new TcpFailoverManager(0, members).heartbeatInterval(50).electionTimeout(300));
+		Engine slave = createEngine(Files.createTempDir(), new TcpFailoverManager(1, members).heartbeatInterval(50).electionTimeout(300));
+		master.startup();
+		slave.startup();
+
+		Assert.assertTrue(master.cluster().isMaster());
+		Assert.assertFalse(slave.cluster().isMaster());
+
+		master.executeCommand(new SqrtCommand(16)).get();
+		Assert.assertTrue(await(() -> slave.query().findO(LastCalculatedView.class, 1).isPresent()));
+		Assert.assertEquals(4, slave.query().find(LastCalculatedView.class, 1).sqrt, 0.001);
+		Assert.assertTrue(await(() -> master.cluster().unprocessedCount() == 0));
+
+		try {
+			slave.executeCommand(new SqrtCommand(25));
+			Assert.fail();
+		} catch (FailoverRulesException ignored) {
+		}
+
+		master.shutdown();
+		Assert.assertTrue(await(() -> slave.cluster().isMaster()));
+
+		slave.executeCommand(new SqrtCommand(64)).get();
+		Assert.assertEquals(8, slave.query().find(LastCalculatedView.class, 3).sqrt, 0.001);
+		slave.shutdown();
+	}
+
+	@Test
+	public void testSyncReplication() throws Exception {
+		List<InetSocketAddress> members = Arrays.asList(freeAddress(), freeAddress());
+		// no failover is expected, so that the slave doesn't reconnect, and lag behind, under load
+		TcpFailoverManager masterManager = new TcpFailoverManager(0, members).syncReplication(true)
+				.ackTimeout(100).heartbeatInterval(500).electionTimeout(5_000);
+		Engine master = createEngine(Files.createTempDir(), masterManager);
+		Engine slave = createEngine(Files.createTempDir(), new TcpFailoverManager(1, members).heartbeatInterval(500).electionTimeout(5_000));
+		master.startup();
+		slave.startup();
+		Assert.assertTrue(await(() -> masterManager.sessions.size() == 1));
+
+		for (int i = 1; i <= 10; i++) {
+			master.executeCommand(new SqrtCommand(i * i)).get();
+			// result is completed only once the slave has received the command
+			Assert.assertEquals(0, master.cluster().unprocessedCount());
+		}
+		Assert.assertTrue(await(() -> slave.query().findO(LastCalculatedView.class, 19).isPresent()));
+
+		slave.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testSyncReplicationDisconnectsSilentSlave() throws Exception {
+		List<InetSocketAddress> members = Arrays.asList(freeAddress(), freeAddress());
+		TcpFailoverManager masterManager = new TcpFailoverManager(0, members).syncReplication(true)
+				.ackTimeout(100).maxAckHolds(3);
+		Engine master = createEngine(Files.createTempDir(), masterManager);
+		master.startup();
+
+		// stays connected, but never acknowledges anything
+		try (Socket slave = new Socket(members.get(0).getAddress(), members.get(0).getPort())) {
+			DataOutputStream out = new DataOutputStream(slave.getOutputStream());
+			out.writeInt(TcpFailoverManager.HELLO);
+			out.writeInt(1);
+			out.writeLong(TcpFailoverManager.UNKNOWN_SEQUENCE);
+			out.flush();
+			Assert.assertTrue(await(() -> masterManager.sessions.size() == 1));
+
+			long start = System.currentTimeMillis();
+			Assert.assertTrue(master.executeCommand(new SqrtCommand(16)).get(5, TimeUnit.SECONDS).isSuccess());
+			Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+			Assert.assertEquals(0, masterManager.sessions.size());
+		}
+		master.shutdown();
+	}
+
+	protected Engine createEngine(File baseDir, TcpFailoverManager failoverManager) {
+		Engine engine = new Engine(baseDir);
+		engine.failoverManager(failoverManager);
+		engine.domain().command(SqrtCommand.class, Double.class, (c, u) -> {
+			double result = Math.sqrt(c.number);
+			u.executeTxAction(new WriteLastCalculationTransaction(u.id(SqrtCommand.class), result));
+			u.id(SqrtCommand.class);
+			return result;
+		});
+		engine.domain().transactionAction(WriteLastCalculationTransaction.class, (t, u) -> {
+			u.repo().store(t.id, t.sqrt);
+		});
+		engine.domain().viewMapper(Double.class, LastCalculatedView.class, (id, e, r) -> {
+			Optional<LastCalculatedView> old = r.getO(LastCalculatedView.class, id);
+			if (old.isPresent()) {
+				old.get().sqrt = e;
+				return old.get();
+			} else return new LastCalculatedView(e);
+		});
+		return engine;
+	}
+
+	protected static InetSocketAddress freeAddress() throws IOException {
+		try (ServerSocket s = new ServerSocket(0)) {
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), s.getLocalPort());
+		}
+	}
+
+	protected static boolean await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+}
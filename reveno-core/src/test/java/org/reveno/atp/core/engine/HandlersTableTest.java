@@ -0,0 +1,40 @@
+package org.reveno.atp.core.engine;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.reveno.atp.core.engine.components.HandlersTable;
+
+import java.lang.reflect.Array;
+
+public class HandlersTableTest {
+
+	@Test
+	public void test() {
+		HandlersTable<String> table = new HandlersTable<>();
+		Assert.assertEquals(HandlersTable.NO_ID, table.id(Long.class));
+		Assert.assertNull(table.get(Long.class));
+
+		for (int i = 0; i < 20; i++) {
+			Assert.assertEquals(i, table.register(type(i), "h" + i));
+		}
+		Assert.assertEquals(20, table.size());
+		Assert.assertEquals("h3", table.get(type(3)));
+
+		// was looked up as unknown before
+		Assert.assertEquals(20, table.register(Long.class, "long"));
+		Assert.assertEquals("long", table.get(Long.class));
+
+		// re-registration keeps the id
+		Assert.assertEquals(20, table.register(Long.class, "long2"));
+		Assert.assertEquals("long2", table.get(20));
+		Assert.assertEquals(21, table.size());
+	}
+
+	/*
+	 * int[], int[][] and so on
+	 */
+	protected static Class<?> type(int i) {
+		return Array.newInstance(int.class, new int[i + 1]).getClass();
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.reveno.atp.core.engine;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reveno.atp.core.engine.components.TimerWheel;
+
+import java.util.Random;
+
+public class TimerWheelTest {
+
+	@Test
+	public void test() {
+		TimerWheel wheel = new TimerWheel(1, 16);
+		wheel.reset(1000);
+		Random random = new Random(42);
+		Long2LongOpenHashMap deadlines = new Long2LongOpenHashMap();
+		for (long id = 0; id < 10_000; id++) {
+			long fireAt = 1000 + (id % 3 == 0 ? random.nextInt(300) : random.nextInt(1 << 18));
+			deadlines.put(id, fireAt);
+			wheel.add(id, fireAt);
+		}
+		// due already, top level and beyond the span of the wheel
+		deadlines.put(-1L, 10);
+		wheel.add(-1L, 10);
+		deadlines.put(-2L, (1L << 24) + 7);
+		wheel.add(-2L, (1L << 24) + 7);
+		deadlines.put(-3L, (1L << 33) + 3);
+		wheel.add(-3L, (1L << 33) + 3);
+		Assert.assertEquals(deadlines.size(), wheel.size());
+
+		long[] now = {1000};
+		while (now[0] < (1L << 25)) {
+			wheel.advance(now[0], id -> {
+				Assert.assertTrue(deadlines.containsKey(id));
+				long fireAt = deadlines.remove(id);
+				Assert.assertTrue(fireAt <= now[0]);
+				// not late for more than a step
+				Assert.assertTrue(fireAt > now[0] - (now[0] < (1 << 19) ? 64 : 4096) || id == -1L);
+			});
+			now[0] += now[0] < (1 << 19) ? 1 + random.nextInt(64) : 4096;
+		}
+		Assert.assertEquals(1, deadlines.size());
+		Assert.assertEquals(1, wheel.size());
+		Assert.assertTrue(deadlines.containsKey(-3L));
+	}
+
+	@Test
+	public void testReuse() {
+		TimerWheel wheel = new TimerWheel(10, 1);
+		long[] fired = {0};
+		for (int round = 0; round < 3; round++) {
+			for (long id = 0; id < 100; id++) {
+				wheel.add(id, round * 1000 + id * 5);
+			}
+			Assert.assertEquals(100, wheel.advance(round * 1000 + 500, id -> fired[0]++));
+			Assert.assertEquals(0, wheel.size());
+		}
+		Assert.assertEquals(300, fired[0]);
+
+		// fireAt is rounded up to the tick
+		wheel.add(1L, 4005);
+		Assert.assertEquals(0, wheel.advance(4005, id -> {}));
+		Assert.assertEquals(1, wheel.advance(4010, id -> {}));
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.reveno.atp.core.repository;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.reveno.atp.api.domain.WriteableEntityStore;
+import org.reveno.atp.api.domain.WriteableRepository;
+import org.reveno.atp.core.serialization.ProtostuffSerializer;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class FieldUndoRepositoryTest {
+
+	private WriteableRepository underlyingRepository;
+	private FieldUndoModelRepository repository;
+	
+	@Before
+	public void setUp() {
+		underlyingRepository = new HashMapRepository(16, 0.75f);
+		repository = new FieldUndoModelRepository(underlyingRepository, new ProtostuffSerializer());
+	}
+	
+	@After
+	public void tearDown() {
+		repository.destroy();
+	}
+	
+	@Test
+	public void testRollbackInPlace() {
+		Account account = new Account("USD", 1000);
+		underlyingRepository.store(1L, account);
+		
+		repository.begin();
+		Account changed = repository.get(Account.class, 1L);
+		changed.balance = 500;
+		changed.currency = "EUR";
+		changed.active = false;
+		repository.get(Account.class, 1L).balance = 100;
+		repository.rollback();
+		
+		Assert.assertSame(account, underlyingRepository.get(Account.class, 1L));
+		Assert.assertEquals(1000, account.balance);
+		Assert.assertEquals("USD", account.currency);
+		Assert.assertTrue(account.active);
+		Assert.assertEquals(0, repository.buffer.writerPosition());
+		
+		repository.begin();
+		repository.get(Account.class, 1L).balance = 700;
+		repository.commit();
+		Assert.assertEquals(700, underlyingRepository.get(Account.class, 1L).balance);
+	}
+	
+	@Test
+	public void testStoreAndRemove() {
+		Account account1 = new Account("USD", 1000);
+		Account account2 = new Account("EUR", 2000);
+		underlyingRepository.store(1L, account1);
+		underlyingRepository.store(2L, account2);
+		
+		repository.begin();
+		repository.store(1L, new Account("GBP", 10));
+		repository.remove(Account.class, 2L);
+		repository.store(3L, new Account("JPY", 30));
+		WriteableEntityStore<Account> accounts = repository.entityStore(Account.class);
+		accounts.store(4L, new Account("CHF", 40));
+		accounts.get(4L).balance = 41;
+		Assert.assertEquals(3, underlyingRepository.getEntities(Account.class).size());
+		repository.rollback();
+		
+		Assert.assertSame(account1, underlyingRepository.get(Account.class, 1L));
+		Assert.assertSame(account2, underlyingRepository.get(Account.class, 2L));
+		Assert.assertFalse(underlyingRepository.has(Account.class, 3L));
+		Assert.assertFalse(underlyingRepository.has(Account.class, 4L));
+		Assert.assertEquals(0, repository.buffer.writerPosition());
+	}
+	
+	@Test
+	public void testNestedFallback() {
+		Account account = new Account("USD", 1000);
+		underlyingRepository.store(1L, account);
+		underlyingRepository.store(1L, new Book());
+		
+		repository.begin();
+		repository.get(Book.class, 1L).orders.add(5L);
+		repository.get(Account.class, 1L).balance = 0;
+		Assert.assertTrue(repository.buffer.writerPosition() > 0);
+		repository.rollback();
+		
+		Assert.assertEquals(0, underlyingRepository.get(Book.class, 1L).orders.size());
+		Assert.assertEquals(1000, account.balance);
+	}
+	
+	public static class Book {
+		public final Set<Long> orders = new HashSet<>();
+	}
+	
+	public static class Account {
+		public String currency;
+		public long balance;
+		public boolean active = true;
+		
+		public Account(String currency, long balance) {
+			this.currency = currency;
+			this.balance = balance;
+		}
+	}
+	
+}
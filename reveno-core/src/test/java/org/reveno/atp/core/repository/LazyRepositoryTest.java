@@ -0,0 +1,91 @@
+package org.reveno.atp.core.repository;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reveno.atp.api.RepositorySnapshotter.SnapshotIdentifier;
+import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.api.domain.WriteableEntityStore;
+import org.reveno.atp.core.RevenoConfiguration;
+import org.reveno.atp.core.serialization.User;
+import org.reveno.atp.core.snapshots.ChunkedSnapshotter;
+import org.reveno.atp.core.snapshots.MappedSnapshot;
+import org.reveno.atp.core.storage.FileSystemStorage;
+import org.reveno.atp.test.utils.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LazyRepositoryTest {
+
+	private File tempDir;
+	private ChunkedSnapshotter snapshotter;
+
+	@Before
+	public void setUp() {
+		tempDir = Files.createTempDir();
+		snapshotter = new ChunkedSnapshotter(new FileSystemStorage(tempDir,
+				new RevenoConfiguration.RevenoJournalingConfiguration()), getClass().getClassLoader()).chunkSize(10);
+		Map<Long, Object> users = new HashMap<>();
+		for (long i = 0; i < 100; i++) {
+			users.put(i, new User("user" + i, (int) i));
+		}
+		Map<Class<?>, Map<Long, Object>> data = new HashMap<>();
+		data.put(User.class, users);
+		SnapshotIdentifier id = snapshotter.prepare();
+		snapshotter.snapshot(new RepositoryData(data), id);
+		snapshotter.commit(1, id);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.delete(tempDir);
+	}
+
+	@Test
+	public void testOnDemand() {
+		MappedSnapshot snapshot = snapshotter.map();
+		HashMapRepository hot = new HashMapRepository(16, 0.75f);
+		LazyRepository repository = new LazyRepository(hot, snapshot);
+		assertEquals(100, snapshot.size());
+		assertNull(hot.get(User.class, 5));
+
+		assertEquals(new User("user5", 5), repository.get(User.class, 5));
+		assertEquals(new User("user5", 5), hot.get(User.class, 5));
+		assertSame(repository.get(User.class, 5), repository.get(User.class, 5));
+		assertEquals(99, snapshot.size());
+		assertTrue(repository.has(User.class, 6));
+		assertEquals(99, snapshot.size());
+		assertNull(repository.get(User.class, 100));
+
+		// journal replayed on top wins over snapshot
+		repository.store(7, new User("changed", 7));
+		assertEquals("changed", repository.get(User.class, 7).getName());
+		assertEquals(new User("user8", 8), repository.remove(User.class, 8));
+		assertNull(repository.get(User.class, 8));
+		assertFalse(repository.has(User.class, 8));
+
+		WriteableEntityStore<User> users = repository.entityStore(User.class);
+		assertEquals(new User("user9", 9), users.get(9));
+		users.remove(10);
+		assertFalse(users.has(10));
+
+		assertEquals(95, snapshot.size());
+		assertEquals(98, repository.getEntities(User.class).size());
+		assertEquals(0, snapshot.size());
+		assertEquals(98, repository.getData().getData().get(User.class).size());
+		assertTrue(snapshot.types().isEmpty());
+	}
+
+	@Test
+	public void testMapLegacySnapshot() {
+		assertNull(new ChunkedSnapshotter(new FileSystemStorage(Files.createTempDir(),
+				new RevenoConfiguration.RevenoJournalingConfiguration()), getClass().getClassLoader()).map());
+	}
+
+}
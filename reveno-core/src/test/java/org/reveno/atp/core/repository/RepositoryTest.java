@@ -3,6 +3,7 @@ package org.reveno.atp.core.repository;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.reveno.atp.api.domain.WriteableEntityStore;
 import org.reveno.atp.api.domain.WriteableRepository;
 
 import java.util.HashSet;
@@ -44,6 +45,113 @@ public class RepositoryTest {
 		Assert.assertEquals(1, repository.getEntities(Record.class).size());
 	}
 	
+	@Test
+	public void testEntityStore() {
+		WriteableEntityStore<Bin> bins = repository.entityStore(Bin.class);
+		Bin item1 = new Bin("item1", "value1");
+		
+		bins.store(1L, item1);
+		Assert.assertTrue(repository.has(Bin.class, 1L));
+		Assert.assertSame(item1, bins.get(1L));
+		
+		repository.store(2L, new Bin("item2", "value2"));
+		Assert.assertTrue(bins.has(2L));
+		
+		repository.load(repository.getData().getData());
+		Assert.assertTrue(bins.has(1L));
+		Assert.assertTrue(bins.has(2L));
+		
+		Assert.assertNotNull(bins.remove(1L));
+		Assert.assertFalse(repository.has(Bin.class, 1L));
+	}
+	
+	@Test
+	public void testColumnar() {
+		HashMapRepository repository = new HashMapRepository(16, 0.75f);
+		ColumnarEntityStore<Account> accounts = repository.columnar(Account.class);
+		
+		for (int i = 1; i <= 2000; i++) {
+			repository.store(i, new Account(i * 10, i * 0.5, i % 2 == 0));
+		}
+		Assert.assertEquals(2000, accounts.size());
+		Assert.assertEquals(20, repository.get(Account.class, 2L).balance);
+		Assert.assertEquals(1.0, repository.get(Account.class, 2L).rate, 0.0);
+		Assert.assertTrue(repository.get(Account.class, 2L).active);
+		
+		repository.remove(Account.class, 1L);
+		accounts.remove(2000L);
+		Assert.assertFalse(repository.has(Account.class, 1L));
+		Assert.assertEquals(1998, repository.getEntities(Account.class).size());
+		Assert.assertEquals(19990, repository.get(Account.class, 1999L).balance);
+		
+		int balance = accounts.column("balance"), rate = accounts.column("rate");
+		long balances = 0;
+		double rates = 0;
+		for (int slot = 0; slot < accounts.size(); slot++) {
+			balances += accounts.getLong(balance, slot);
+			rates += accounts.getDouble(rate, slot);
+		}
+		Assert.assertEquals((2000L * 1999 / 2 - 1) * 10, balances);
+		Assert.assertEquals((2000.0 * 1999 / 2 - 1) * 0.5, rates, 0.0001);
+		
+		Assert.assertEquals(1998, repository.getData().getData().get(Account.class).size());
+		HashMapRepository restored = new HashMapRepository(16, 0.75f);
+		restored.columnar(Account.class);
+		restored.load(repository.getData().getData());
+		Assert.assertEquals(1998, restored.columnar(Account.class).size());
+		Assert.assertEquals(30, restored.get(Account.class, 3L).balance);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testColumnarRejectsReferences() {
+		new HashMapRepository(16, 0.75f).columnar(Bin.class);
+	}
+	
+	@Test
+	public void testPaged() {
+		HashMapRepository repository = new HashMapRepository(16, 0.75f);
+		PagedEntityStore<Bin> bins = repository.paged(Bin.class);
+		
+		for (long i = 1; i <= 10_000; i++) {
+			repository.store(i, new Bin("item" + i, i));
+		}
+		repository.store(-1L, new Bin("negative", -1));
+		repository.store(Long.MAX_VALUE, new Bin("max", 0));
+		Assert.assertEquals(10_002, bins.size());
+		Assert.assertEquals("item4097", repository.get(Bin.class, 4097L).getName());
+		Assert.assertEquals("negative", bins.get(-1L).getName());
+		Assert.assertEquals("max", bins.get(Long.MAX_VALUE).getName());
+		Assert.assertFalse(repository.has(Bin.class, 10_001L));
+		Assert.assertFalse(repository.has(Bin.class, 1L << 40));
+		
+		for (long i = 1; i <= 5000; i++) {
+			Assert.assertNotNull(repository.remove(Bin.class, i));
+		}
+		Assert.assertNull(repository.remove(Bin.class, 1L));
+		Assert.assertNull(bins.pages[0]);
+		Assert.assertEquals(5002, bins.size());
+		Assert.assertEquals(5002, repository.getEntities(Bin.class).size());
+		
+		bins.store(5001L, null);
+		bins.store(20_000L, null);
+		Assert.assertNull(bins.get(5001L));
+		Assert.assertEquals(5001, bins.size());
+		bins.store(5001L, new Bin("item5001", 5001));
+		
+		HashMapRepository restored = new HashMapRepository(16, 0.75f);
+		restored.paged(Bin.class);
+		restored.load(repository.getData().getData());
+		Assert.assertEquals(5002, restored.paged(Bin.class).size());
+		Assert.assertEquals("item9999", restored.get(Bin.class, 9999L).getName());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testStandaloneTypeConflict() {
+		HashMapRepository repository = new HashMapRepository(16, 0.75f);
+		repository.paged(Account.class);
+		repository.columnar(Account.class);
+	}
+	
 	public static class Record {
 		private final Set<Long> bins;
 		
@@ -77,4 +185,16 @@ public class RepositoryTest {
 		}
 	}
 	
+	public static class Account {
+		public final long balance;
+		public final double rate;
+		public final boolean active;
+		
+		public Account(long balance, double rate, boolean active) {
+			this.balance = balance;
+			this.rate = rate;
+			this.active = active;
+		}
+	}
+	
 }
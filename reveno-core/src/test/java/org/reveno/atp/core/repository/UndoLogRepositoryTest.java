@@ -0,0 +1,82 @@
+package org.reveno.atp.core.repository;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.reveno.atp.api.domain.WriteableEntityStore;
+import org.reveno.atp.api.domain.WriteableRepository;
+import org.reveno.atp.core.repository.RepositoryTest.Bin;
+
+public class UndoLogRepositoryTest {
+
+	private WriteableRepository underlyingRepository;
+	private UndoLogModelRepository repository;
+	
+	@Before
+	public void setUp() {
+		underlyingRepository = new HashMapRepository(16, 0.75f);
+		repository = new UndoLogModelRepository(underlyingRepository);
+	}
+	
+	@Test
+	public void testRollback() {
+		Bin item1 = new Bin("item1", "value1");
+		Bin item2 = new Bin("item2", "value2");
+		underlyingRepository.store(1L, item1);
+		underlyingRepository.store(2L, item2);
+		
+		repository.begin();
+		repository.store(1L, new Bin("item1", "changed"));
+		repository.store(1L, new Bin("item1", "changed again"));
+		repository.remove(Bin.class, 2L);
+		repository.store(3L, new Bin("item3", "value3"));
+		repository.remove(Bin.class, 3L);
+		repository.store(3L, new Bin("item3", "value3"));
+		repository.remove(Bin.class, 4L);
+		
+		Assert.assertEquals("changed again", underlyingRepository.get(Bin.class, 1L).getValue());
+		Assert.assertFalse(underlyingRepository.has(Bin.class, 2L));
+		Assert.assertTrue(underlyingRepository.has(Bin.class, 3L));
+		
+		repository.rollback();
+		
+		Assert.assertSame(item1, underlyingRepository.get(Bin.class, 1L));
+		Assert.assertSame(item2, underlyingRepository.get(Bin.class, 2L));
+		Assert.assertFalse(underlyingRepository.has(Bin.class, 3L));
+		Assert.assertEquals(2, underlyingRepository.getEntities(Bin.class).size());
+	}
+	
+	@Test
+	public void testCommit() {
+		repository.begin();
+		repository.store(1L, new Bin("item1", "value1"));
+		repository.commit();
+		
+		repository.begin();
+		repository.store(2L, new Bin("item2", "value2"));
+		repository.rollback();
+		
+		Assert.assertTrue(underlyingRepository.has(Bin.class, 1L));
+		Assert.assertFalse(underlyingRepository.has(Bin.class, 2L));
+		Assert.assertEquals(0, repository.size);
+	}
+	
+	@Test
+	public void testEntityStore() {
+		WriteableEntityStore<Bin> bins = repository.entityStore(Bin.class);
+		Bin item1 = new Bin("item1", "value1");
+		underlyingRepository.store(1L, item1);
+		
+		repository.begin();
+		for (long i = 2; i <= 1000; i++) {
+			bins.store(i, new Bin("item" + i, i));
+		}
+		bins.remove(1L);
+		Assert.assertEquals(999, underlyingRepository.getEntities(Bin.class).size());
+		repository.rollback();
+		
+		Assert.assertEquals(1, underlyingRepository.getEntities(Bin.class).size());
+		Assert.assertSame(item1, bins.get(1L));
+	}
+	
+}
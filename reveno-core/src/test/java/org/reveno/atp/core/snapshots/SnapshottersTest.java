@@ -0,0 +1,156 @@
+package org.reveno.atp.core.snapshots;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reveno.atp.api.RepositorySnapshotter;
+import org.reveno.atp.api.RepositorySnapshotter.SnapshotIdentifier;
+import org.reveno.atp.api.domain.RepositoryData;
+import org.reveno.atp.core.RevenoConfiguration;
+import org.reveno.atp.core.serialization.DefaultJavaSerializer;
+import org.reveno.atp.core.serialization.ProtostuffSerializer;
+import org.reveno.atp.core.serialization.User;
+import org.reveno.atp.core.storage.FileSystemStorage;
+import org.reveno.atp.test.utils.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SnapshottersTest {
+
+	private File tempDir;
+	private FileSystemStorage storage;
+
+	@Before
+	public void setUp() {
+		tempDir = Files.createTempDir();
+		storage = new FileSystemStorage(tempDir, new RevenoConfiguration.RevenoJournalingConfiguration());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.delete(tempDir);
+	}
+
+	@Test
+	public void testDefaultCorrupted() throws IOException {
+		DefaultSnapshotter snapshotter = new DefaultSnapshotter(storage, new DefaultJavaSerializer(), new ProtostuffSerializer());
+		snapshot(snapshotter, data(100));
+		assertEquals(100, snapshotter.load().getData().get(User.class).size());
+
+		corrupt(-1);
+		try {
+			snapshotter.load();
+			fail();
+		} catch (RuntimeException ignored) {
+		}
+	}
+
+	@Test
+	public void testChunkedCorrupted() throws IOException {
+		ChunkedSnapshotter snapshotter = new ChunkedSnapshotter(storage, getClass().getClassLoader()).chunkSize(10);
+		snapshot(snapshotter, data(100));
+		assertEquals(new User("user5", 5), snapshotter.load().getData().get(User.class).get(5L));
+
+		// within entities of the first chunk
+		corrupt(150);
+		try {
+			snapshotter.load();
+			fail();
+		} catch (RuntimeException ignored) {
+		}
+	}
+
+	@Test
+	public void testChunkedSelective() {
+		ChunkedSnapshotter snapshotter = new ChunkedSnapshotter(storage, getClass().getClassLoader()).chunkSize(10);
+		Map<Class<?>, Map<Long, Object>> data = data(100);
+		Map<Long, Object> names = new HashMap<>();
+		names.put(1L, "name");
+		data.put(String.class, names);
+		snapshot(snapshotter, data);
+
+		RepositoryData loaded = snapshotter.load(t -> t == String.class);
+		assertEquals(1, loaded.getData().size());
+		assertEquals("name", loaded.getData().get(String.class).get(1L));
+		assertEquals(2, snapshotter.load().getData().size());
+	}
+
+	@Test
+	public void testChunkedInterleavedSubclasses() {
+		ChunkedSnapshotter snapshotter = new ChunkedSnapshotter(storage, getClass().getClassLoader()).chunkSize(10);
+		Map<Long, Object> shapes = new HashMap<>();
+		for (long i = 0; i < 1000; i++) {
+			shapes.put(i, i % 2 == 0 ? new Circle(i) : new Square(i));
+		}
+		Map<Class<?>, Map<Long, Object>> data = new HashMap<>();
+		data.put(Shape.class, shapes);
+
+		// every chunk is full, however classes are interleaved
+		List<ChunkedSnapshotter.Chunk> chunks = snapshotter.split(new RepositoryData(data));
+		assertEquals(100, chunks.size());
+		chunks.forEach(c -> assertEquals(10, c.ids.length));
+		chunks.forEach(c -> assertEquals(10, c.count));
+
+		snapshot(snapshotter, data);
+		Map<Long, Object> loaded = snapshotter.load().getData().get(Shape.class);
+		assertEquals(1000, loaded.size());
+		assertEquals(Circle.class, loaded.get(10L).getClass());
+		assertEquals(Square.class, loaded.get(11L).getClass());
+		assertEquals(11L, ((Shape) loaded.get(11L)).size);
+	}
+
+	protected void snapshot(RepositorySnapshotter snapshotter, Map<Class<?>, Map<Long, Object>> data) {
+		SnapshotIdentifier id = snapshotter.prepare();
+		snapshotter.snapshot(new RepositoryData(data), id);
+		snapshotter.commit(1, id);
+	}
+
+	protected void corrupt(long position) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(new File(tempDir, storage.getLastSnapshotStore().getSnapshotPath()), "rw")) {
+			long at = position < 0 ? file.length() + position : position;
+			file.seek(at);
+			int b = file.read();
+			file.seek(at);
+			file.write(b ^ 0xFF);
+		}
+	}
+
+	protected Map<Class<?>, Map<Long, Object>> data(int count) {
+		Map<Long, Object> users = new HashMap<>();
+		for (long i = 0; i < count; i++) {
+			users.put(i, new User("user" + i, (int) i));
+		}
+		Map<Class<?>, Map<Long, Object>> data = new HashMap<>();
+		data.put(User.class, users);
+		return data;
+	}
+
+	public static class Shape {
+		public long size;
+
+		public Shape(long size) {
+			this.size = size;
+		}
+	}
+
+	public static class Circle extends Shape {
+		public Circle(long size) {
+			super(size);
+		}
+	}
+
+	public static class Square extends Shape {
+		public Square(long size) {
+			super(size);
+		}
+	}
+
+}
@@ -16,4 +16,13 @@ public interface Configuration {
 
     Configuration metricBufferSize(int size);
 
+    /**
+     * Expected interval between commands in nanoseconds, which is used to correct latency
+     * histograms for coordinated omission. Zero value (default) disables correction.
+     *
+     * @param nanos expected interval
+     * @return configuration
+     */
+    Configuration expectedInterval(long nanos);
+
 }
\ No newline at end of file
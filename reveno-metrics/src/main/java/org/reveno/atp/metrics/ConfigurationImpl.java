@@ -17,6 +17,7 @@ public class ConfigurationImpl implements Configuration {
     protected String instanceName = "default";
     protected String hostName;
     protected int metricBufferSize = MeasureUtils.kb(128);
+    protected long expectedInterval = 0L;
 
     public ConfigurationImpl() {
         try {
@@ -96,4 +97,14 @@ public class ConfigurationImpl implements Configuration {
         return this;
     }
 
+    public long expectedInterval() {
+        return expectedInterval;
+    }
+
+    @Override
+    public Configuration expectedInterval(long nanos) {
+        this.expectedInterval = nanos;
+        return this;
+    }
+
 }
@@ -0,0 +1,127 @@
+package org.reveno.atp.metrics;
+
+import org.reveno.atp.core.api.IoListener;
+import org.reveno.atp.metrics.meter.Histogram;
+import org.reveno.atp.metrics.meter.Sinkable;
+import org.reveno.atp.metrics.meter.impl.LogLinearHistogram;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects journaling, snapshotting and restore I/O measurements. Durations are reported
+ * as histograms in nanoseconds, the rest are gauges which are sent only after the
+ * corresponding operation took place at least once.
+ */
+public class IoMetrics implements IoListener, Sinkable {
+
+    protected final int bytesRateName;
+    protected final int snapshotBytesName;
+    protected final int snapshotLoadBytesName;
+    protected final int restoreRecordsName;
+    protected final int restoreRateName;
+    protected final LongAdder written = new LongAdder();
+    protected final Histogram flush;
+    protected final Histogram force;
+    protected final Histogram roll;
+    protected final Histogram preallocate;
+    protected final Histogram snapshot;
+    protected final Histogram snapshotLoad;
+    protected final Histogram restore;
+    protected volatile long snapshotBytes = -1;
+    protected volatile long snapshotLoadBytes = -1;
+    protected volatile long restoreRecords = -1;
+    protected volatile long restoreRate;
+    protected long lastTime = System.nanoTime();
+
+    public IoMetrics(String name) {
+        this.bytesRateName = MetricNames.register(name + ".write.bytesPerSec");
+        this.snapshotBytesName = MetricNames.register(name + ".snapshot.bytes");
+        this.snapshotLoadBytesName = MetricNames.register(name + ".snapshot.load.bytes");
+        this.restoreRecordsName = MetricNames.register(name + ".restore.records");
+        this.restoreRateName = MetricNames.register(name + ".restore.recordsPerSec");
+        this.flush = new LogLinearHistogram(name + ".flush");
+        this.force = new LogLinearHistogram(name + ".force");
+        this.roll = new LogLinearHistogram(name + ".roll");
+        this.preallocate = new LogLinearHistogram(name + ".preallocate");
+        this.snapshot = new LogLinearHistogram(name + ".snapshot.time");
+        this.snapshotLoad = new LogLinearHistogram(name + ".snapshot.load.time");
+        this.restore = new LogLinearHistogram(name + ".restore.time");
+    }
+
+    @Override
+    public void onWrite(long bytes) {
+        written.add(bytes);
+    }
+
+    @Override
+    public void onFlush(long nanos) {
+        flush.update(nanos);
+    }
+
+    @Override
+    public void onForce(long nanos) {
+        force.update(nanos);
+    }
+
+    @Override
+    public void onRoll(long nanos) {
+        roll.update(nanos);
+    }
+
+    @Override
+    public void onPreallocate(long bytes, long nanos) {
+        preallocate.update(nanos);
+    }
+
+    @Override
+    public void onSnapshot(long bytes, long nanos) {
+        snapshotBytes = bytes;
+        snapshot.update(nanos);
+    }
+
+    @Override
+    public void onSnapshotLoad(long bytes, long nanos) {
+        snapshotLoadBytes = bytes;
+        snapshotLoad.update(nanos);
+    }
+
+    @Override
+    public void onRestore(long records, long nanos) {
+        restoreRate = nanos == 0 ? records : records * TimeUnit.SECONDS.toNanos(1) / nanos;
+        restoreRecords = records;
+        restore.update(nanos);
+    }
+
+    @Override
+    public void sendTo(List<Sink> sinks, boolean sync) {
+        long current = System.nanoTime();
+        long interval = Math.max(current - lastTime, 1);
+        long bytesRate = (long) (written.sumThenReset() * ((double) TimeUnit.SECONDS.toNanos(1) / interval));
+        lastTime = current;
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        for (Sink sink : sinks) {
+            sink.send(bytesRateName, bytesRate, timestamp);
+            if (snapshotBytes >= 0) {
+                sink.send(snapshotBytesName, snapshotBytes, timestamp);
+            }
+            if (snapshotLoadBytes >= 0) {
+                sink.send(snapshotLoadBytesName, snapshotLoadBytes, timestamp);
+            }
+            if (restoreRecords >= 0) {
+                sink.send(restoreRecordsName, restoreRecords, timestamp);
+                sink.send(restoreRateName, restoreRate, timestamp);
+            }
+        }
+        flush.sendTo(sinks, sync);
+        force.sendTo(sinks, sync);
+        roll.sendTo(sinks, sync);
+        preallocate.sendTo(sinks, sync);
+        snapshot.sendTo(sinks, sync);
+        snapshotLoad.sendTo(sinks, sync);
+        restore.sendTo(sinks, sync);
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.reveno.atp.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of metric names, which allows meters to address {@link Sink} with small
+ * integer ids instead of strings. Registering the same name twice returns the same id,
+ * so amount of ids is bounded by amount of distinct metric names.
+ */
+public final class MetricNames {
+
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int count = 0;
+
+    private MetricNames() {
+    }
+
+    public static synchronized int register(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (count == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[count] = name;
+        ids.put(name, count);
+        return count++;
+    }
+
+    public static String name(int id) {
+        return names[id];
+    }
+
+}
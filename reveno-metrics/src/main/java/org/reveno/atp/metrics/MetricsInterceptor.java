@@ -1,46 +1,91 @@
 package org.reveno.atp.metrics;
 
 import org.reveno.atp.api.domain.WriteableRepository;
+import org.reveno.atp.api.transaction.TransactionBatch;
 import org.reveno.atp.api.transaction.TransactionInterceptor;
 import org.reveno.atp.api.transaction.TransactionStage;
+import org.reveno.atp.core.api.PipelineStage;
+import org.reveno.atp.core.api.PipelineTimingsListener;
+import org.reveno.atp.core.engine.processor.PipeProcessor;
 import org.reveno.atp.metrics.impl.GraphiteSink;
 import org.reveno.atp.metrics.impl.Slf4jSink;
 import org.reveno.atp.metrics.meter.Counter;
 import org.reveno.atp.metrics.meter.Histogram;
+import org.reveno.atp.metrics.meter.impl.LogLinearHistogram;
 import org.reveno.atp.metrics.meter.impl.SimpleCounter;
-import org.reveno.atp.metrics.meter.impl.TwoBufferHistogram;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-public class MetricsInterceptor implements TransactionInterceptor { //度量拦截器
+public class MetricsInterceptor implements TransactionInterceptor, PipelineTimingsListener { //度量拦截器
 
-    protected final String latency, throughput;
+    protected static final int EXECUTION = PipelineStage.EXECUTION.ordinal();
+    protected static final int RESULT = PipelineStage.RESULT.ordinal();
+    protected final String latency, throughput, pipes;
     protected final ConfigurationImpl config;
     protected final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
     protected Counter counter;
     protected Histogram histogram;
+    protected Histogram enqueueHistogram;
+    protected Histogram[] stageHistograms = new Histogram[PipelineStage.values().length];
+    protected PipeMetrics txPipe;
+    protected PipeMetrics eventsPipe;
+    protected IoMetrics io;
     protected List<Sink> sinks = new ArrayList<>();
     public MetricsInterceptor(ConfigurationImpl config) {
         String prefix = "reveno.instances." + config.hostName().replace(".", "_") + "." + config.instanceName() + ".";
         this.latency = prefix + "latency";
         this.throughput = prefix + "throughput";
+        this.pipes = prefix + "pipe.";
         this.config = config;
         this.counter = new SimpleCounter(throughput);
-        this.histogram = new TwoBufferHistogram(latency, config.metricBufferSize());
+        this.histogram = new LogLinearHistogram(latency, config.expectedInterval());
+        this.txPipe = new PipeMetrics(pipes + PipeProcessor.TRANSACTIONS_PIPE);
+        this.eventsPipe = new PipeMetrics(pipes + PipeProcessor.EVENTS_PIPE);
+        this.io = new IoMetrics(prefix + "io");
+        this.enqueueHistogram = new LogLinearHistogram(latency + ".enqueue");
+        for (PipelineStage stage : PipelineStage.values()) {
+            stageHistograms[stage.ordinal()] = new LogLinearHistogram(latency + "." + stage.name().toLowerCase(Locale.ENGLISH));
+        }
+    }
+
+    @Override
+    public void onBatchEnd(TransactionBatch batch, WriteableRepository repository, TransactionStage stage) {
+        counter.inc(batch.count());
     }
 
     @Override
-    public void intercept(long transactionId, long time, long systemFlag, WriteableRepository repository, TransactionStage stage) {
-        if (systemFlag == 0) {
-            counter.inc();
-            histogram.update(System.nanoTime() - time);
+    public void onTimings(long transactionId, long submitted, long[] starts, long[] ends) {
+        if (submitted == 0 || ends[RESULT] == 0) {
+            return;
+        }
+        histogram.update(ends[RESULT] - submitted);
+        if (starts[EXECUTION] != 0) {
+            enqueueHistogram.update(starts[EXECUTION] - submitted);
+        }
+        for (int i = 0; i < stageHistograms.length; i++) {
+            if (starts[i] != 0 && ends[i] != 0) {
+                stageHistograms[i].update(ends[i] - starts[i]);
+            }
         }
     }
 
+    public PipeMetrics txPipe() {
+        return txPipe;
+    }
+
+    public PipeMetrics eventsPipe() {
+        return eventsPipe;
+    }
+
+    public IoMetrics io() {
+        return io;
+    }
+
     @Override
     public void destroy() {
         if (!executor.isShutdown())
@@ -57,7 +102,15 @@ public class MetricsInterceptor implements TransactionInterceptor { //度量拦
         sinks.forEach(Sink::init);
         executor.scheduleAtFixedRate(() -> {
             histogram.sendTo(sinks, true);
+            enqueueHistogram.sendTo(sinks, true);
+            for (Histogram h : stageHistograms) {
+                h.sendTo(sinks, true);
+            }
             counter.sendTo(sinks, true);
+            txPipe.sendTo(sinks, true);
+            eventsPipe.sendTo(sinks, true);
+            io.sendTo(sinks, true);
+            sinks.forEach(Sink::flush);
         }, 15, 15, TimeUnit.SECONDS);
     }
 
@@ -0,0 +1,89 @@
+package org.reveno.atp.metrics;
+
+import org.reveno.atp.core.engine.processor.PipeProcessorListener;
+import org.reveno.atp.core.engine.processor.PipeProcessorStats;
+import org.reveno.atp.metrics.meter.Counter;
+import org.reveno.atp.metrics.meter.Histogram;
+import org.reveno.atp.metrics.meter.Sinkable;
+import org.reveno.atp.metrics.meter.impl.LogLinearHistogram;
+import org.reveno.atp.metrics.meter.impl.SimpleCounter;
+
+import java.util.List;
+
+/**
+ * Collects ring buffer occupancy, consumer lag per handler group, producer claim wait,
+ * batch sizes and rejected commands of single pipe processor.
+ */
+public class PipeMetrics implements PipeProcessorListener, Sinkable {
+
+    protected static final int MAX_STAGES = 8;
+    protected final String name;
+    protected final int remainingName;
+    protected final int usedName;
+    protected final int sheddingName;
+    protected final int[] lagNames = new int[MAX_STAGES];
+    protected final Histogram claimWait;
+    protected final Counter rejected;
+    protected final Histogram[] batchSizes = new Histogram[MAX_STAGES];
+    protected volatile PipeProcessorStats stats;
+
+    public PipeMetrics(String name) {
+        this.name = name;
+        this.remainingName = MetricNames.register(name + ".buffer.remaining");
+        this.usedName = MetricNames.register(name + ".buffer.used");
+        this.sheddingName = MetricNames.register(name + ".shedding");
+        this.claimWait = new LogLinearHistogram(name + ".claim");
+        this.rejected = new SimpleCounter(name + ".rejected");
+        for (int i = 0; i < MAX_STAGES; i++) {
+            lagNames[i] = MetricNames.register(name + ".stage" + i + ".lag");
+            batchSizes[i] = new LogLinearHistogram(name + ".stage" + i + ".batch");
+        }
+    }
+
+    @Override
+    public void onStart(PipeProcessorStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public void onClaim(long waitNanos) {
+        claimWait.update(waitNanos);
+    }
+
+    @Override
+    public void onBatch(int stage, long size) {
+        if (stage < MAX_STAGES) {
+            batchSizes[stage].update(size);
+        }
+    }
+
+    @Override
+    public void onReject() {
+        rejected.inc();
+    }
+
+    @Override
+    public void sendTo(List<Sink> sinks, boolean sync) {
+        PipeProcessorStats stats = this.stats;
+        if (stats == null) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis() / 1000;
+        long remaining = stats.remainingCapacity();
+        int stages = Math.min(stats.stages(), MAX_STAGES);
+        for (Sink sink : sinks) {
+            sink.send(remainingName, remaining, timestamp);
+            sink.send(usedName, stats.bufferSize() - remaining, timestamp);
+            sink.send(sheddingName, stats.isShedding() ? 1 : 0, timestamp);
+            for (int i = 0; i < stages; i++) {
+                sink.send(lagNames[i], stats.consumerLag(i), timestamp);
+            }
+        }
+        claimWait.sendTo(sinks, sync);
+        rejected.sendTo(sinks, sync);
+        for (int i = 0; i < stages; i++) {
+            batchSizes[i].sendTo(sinks, sync);
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package org.reveno.atp.metrics;
 
 import org.reveno.atp.api.transaction.TransactionStage;
 import org.reveno.atp.core.Engine;
+import org.reveno.atp.core.engine.processor.PipeProcessor;
 
 public class RevenoMetrics {
 
@@ -14,11 +15,19 @@ public class RevenoMetrics {
 
     public void listen(Engine engine) {
         engine.interceptors().add(TransactionStage.TRANSACTION, interceptor);
+        engine.interceptors().addTimingsListener(interceptor);
+        engine.interceptors().addPipeListener(PipeProcessor.TRANSACTIONS_PIPE, interceptor.txPipe());
+        engine.interceptors().addPipeListener(PipeProcessor.EVENTS_PIPE, interceptor.eventsPipe());
+        engine.interceptors().addIoListener(interceptor.io());
         interceptor.init();
     }
 
     public void shutdown(Engine engine) {
         engine.interceptors().getInterceptors(TransactionStage.TRANSACTION).remove(interceptor);
+        engine.interceptors().getTimingsListeners().remove(interceptor);
+        engine.interceptors().getPipeListeners(PipeProcessor.TRANSACTIONS_PIPE).remove(interceptor.txPipe());
+        engine.interceptors().getPipeListeners(PipeProcessor.EVENTS_PIPE).remove(interceptor.eventsPipe());
+        engine.interceptors().removeIoListener(interceptor.io());
         interceptor.shutdown();
     }
 
@@ -6,6 +6,21 @@ public interface Sink {
 
     void send(String name, String value, long timestamp);
 
+    /**
+     * Sends metric which name was registered in {@link MetricNames}. Implementations are
+     * expected to override it without allocation of any intermediate objects, the default
+     * one falls back to {@link #send(String, String, long)}.
+     */
+    default void send(int nameId, long value, long timestamp) {
+        send(MetricNames.name(nameId), Long.toString(value), timestamp);
+    }
+
+    /**
+     * Called after all meters have sent their values in a single reporting round.
+     */
+    default void flush() {
+    }
+
     void close();
 
     boolean isAvailable();
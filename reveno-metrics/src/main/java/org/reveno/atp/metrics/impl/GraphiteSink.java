@@ -1,5 +1,6 @@
 package org.reveno.atp.metrics.impl;
 
+import org.reveno.atp.metrics.MetricNames;
 import org.reveno.atp.metrics.Sink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +34,24 @@ public class GraphiteSink implements Sink {
         }
     }
 
+    @Override
+    public void send(int nameId, long value, long timestamp) {
+        try {
+            graphite.send(nameId, MetricNames.name(nameId), value, timestamp);
+        } catch (IOException e) {
+            log.error("", e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            graphite.flush();
+        } catch (IOException e) {
+            log.error("", e);
+        }
+    }
+
     @Override
     public void close() {
         try {
@@ -4,18 +4,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.SocketFactory;
-import java.io.*;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 /**
- * A client to a Carbon server that sends all metrics after they have been pickled in configurable sized batches
+ * A client to a Carbon server that sends all metrics after they have been pickled in configurable sized batches.
+ * By default the batch isn't limited, so all metrics sent between two {@link #flush()} calls are pickled
+ * as a single request.
+ * <p>
+ * Metrics are pickled directly into single reusable buffer, which grows to fit the batch and is written
+ * to the socket with one call per batch. Names, sent by id with {@link #send(int, String, long, long)}, are encoded only once, so that
+ * path doesn't allocate anything once buffer has grown to the batch size.
  */
 public class PickledGraphite {
 
@@ -23,7 +29,10 @@ public class PickledGraphite {
     private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PickledGraphite.class);
-    private final static int DEFAULT_BATCH_SIZE = 100;
+    private final static int DEFAULT_BATCH_SIZE = Integer.MAX_VALUE;
+    private final static int INITIAL_BUFFER_SIZE = 100 * 96;
+    private final static int HEADER_SIZE = 4;
+    private final static int MAX_LONG_CHARS = 20;
     private final String hostname;
     private final int port;
     private final InetSocketAddress address;
@@ -32,7 +41,7 @@ public class PickledGraphite {
     /**
      * Minimally necessary pickle opcodes.
      */
-    private final char
+    private final byte
             MARK = '(',
             STOP = '.',
             LONG = 'L',
@@ -44,14 +53,17 @@ public class PickledGraphite {
             LF = '\n';
     private int batchSize;
     // graphite expects a python-pickled list of nested tuples.
-    private List<MetricTuple> metrics = new LinkedList<MetricTuple>();
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final byte[] digits = new byte[MAX_LONG_CHARS];
+    private byte[][] encodedNames = new byte[64][];
+    private int metrics;
     private Socket socket;
-    private Writer writer;
+    private OutputStream out;
     private int failures;
 
     /**
-     * Creates a new client which connects to the given address using the default {@link SocketFactory}. This defaults
-     * to a batchSize of 100
+     * Creates a new client which connects to the given address using the default {@link SocketFactory}. All metrics
+     * are written as single batch on {@link #flush()}.
      *
      * @param address the address of the Carbon server
      */
@@ -95,11 +107,12 @@ public class PickledGraphite {
         this.socketFactory = socketFactory;
         this.charset = charset;
         this.batchSize = batchSize;
+        resetBuffer();
     }
 
     /**
-     * Creates a new client which connects to the given address using the default {@link SocketFactory}. This defaults
-     * to a batchSize of 100
+     * Creates a new client which connects to the given address using the default {@link SocketFactory}. All metrics
+     * are written as single batch on {@link #flush()}.
      *
      * @param hostname the hostname of the Carbon server
      * @param port     the port of the Carbon server
@@ -147,6 +160,7 @@ public class PickledGraphite {
         this.socketFactory = socketFactory;
         this.charset = charset;
         this.batchSize = batchSize;
+        resetBuffer();
     }
 
     public void connect() throws IllegalStateException, IOException {
@@ -162,7 +176,8 @@ public class PickledGraphite {
         }
 
         this.socket = socketFactory.createSocket(address.getAddress(), address.getPort());
-        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), charset));
+        this.out = socket.getOutputStream();
+        resetBuffer();
     }
 
     public boolean isConnected() {
@@ -182,25 +197,53 @@ public class PickledGraphite {
      * @throws IOException if there was an error sending the metric
      */
     public void send(String name, String value, long timestamp) throws IOException {
-        metrics.add(new MetricTuple(sanitize(name), timestamp, sanitize(value)));
+        byte[] n = sanitize(name).getBytes(charset);
+        byte[] v = sanitize(value).getBytes(charset);
+        ensureCapacity(n.length + v.length + 2 * MAX_LONG_CHARS);
+        putHead(n, timestamp);
+        // and the value is a string.
+        buffer.put(STRING).put(QUOTE).put(v).put(QUOTE).put(LF);
+        endTuple();
+    }
 
-        if (metrics.size() >= batchSize) {
-            writeMetrics();
+    /**
+     * The same as {@link #send(String, String, long)}, but the name is encoded only on first
+     * call with given id, and the value is pickled without intermediate string.
+     *
+     * @param id        the unique id of the name, usually obtained from {@code MetricNames}
+     * @param name      the name of the metric
+     * @param value     the value of the metric
+     * @param timestamp the timestamp of the metric
+     * @throws IOException if there was an error sending the metric
+     */
+    public void send(int id, String name, long value, long timestamp) throws IOException {
+        if (id >= encodedNames.length) {
+            encodedNames = Arrays.copyOf(encodedNames, Math.max(id + 1, encodedNames.length * 2));
         }
+        byte[] n = encodedNames[id];
+        if (n == null) {
+            n = encodedNames[id] = sanitize(name).getBytes(charset);
+        }
+        ensureCapacity(n.length + 3 * MAX_LONG_CHARS);
+        putHead(n, timestamp);
+        buffer.put(STRING).put(QUOTE);
+        putLong(value);
+        buffer.put(QUOTE).put(LF);
+        endTuple();
     }
 
     public void flush() throws IOException {
         writeMetrics();
-        if (writer != null) {
-            writer.flush();
+        if (out != null) {
+            out.flush();
         }
     }
 
     public void close() throws IOException {
         try {
             flush();
-            if (writer != null) {
-                writer.close();
+            if (out != null) {
+                out.close();
             }
         } catch (IOException ex) {
             if (socket != null) {
@@ -208,7 +251,7 @@ public class PickledGraphite {
             }
         } finally {
             this.socket = null;
-            this.writer = null;
+            this.out = null;
         }
     }
 
@@ -217,23 +260,22 @@ public class PickledGraphite {
     }
 
     /**
-     * 1. Run the pickler script to package all the pending metrics into a single message
-     * 2. Send the message to graphite
-     * 3. Clear out the list of metrics
+     * Writes the pickled batch, prefixed with its length, to the socket and starts the next one.
      */
     private void writeMetrics() throws IOException {
-        if (metrics.size() > 0) {
+        if (metrics > 0) {
             try {
-                byte[] payload = pickleMetrics(metrics);
-                byte[] header = ByteBuffer.allocate(4).putInt(payload.length).array();
-
-                OutputStream outputStream = socket.getOutputStream();
-                outputStream.write(header);
-                outputStream.write(payload);
-                outputStream.flush();
+                if (out == null) {
+                    throw new IOException("Not connected");
+                }
+                // every pickle ends with STOP
+                buffer.put(STOP);
+                buffer.putInt(0, buffer.position() - HEADER_SIZE);
+                out.write(buffer.array(), 0, buffer.position());
+                out.flush();
 
                 if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Wrote {} metrics", metrics.size());
+                    LOGGER.debug("Wrote {} metrics", metrics);
                 }
             } catch (IOException e) {
                 this.failures++;
@@ -241,81 +283,74 @@ public class PickledGraphite {
             } finally {
                 // if there was an error, we might miss some data. for now, drop those on the floor and
                 // try to keep going.
-                metrics.clear();
+                resetBuffer();
             }
-
         }
     }
 
     /**
      * See: http://readthedocs.org/docs/graphite/en/1.0/feeding-carbon.html
-     *
-     * @throws IOException
+     * <p>
+     * Every metric is pickled as {@code (S'name'\n(L<timestamp>L\nS'<value>'\ntta}, the whole
+     * batch is wrapped into {@code (l ... .} and prefixed with 4 bytes of its length.
      */
-    protected byte[] pickleMetrics(List<MetricTuple> metrics) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream(metrics.size() * 75); // Extremely rough estimate of 75 bytes per message
-        Writer pickled = new OutputStreamWriter(out, charset);
-
-        pickled.append(MARK);
-        pickled.append(LIST);
-
-        for (MetricTuple tuple : metrics) {
-            // start the outer tuple
-            pickled.append(MARK);
-
-            // the metric name is a string.
-            pickled.append(STRING);
-            // the single quotes are to match python's repr("abcd")
-            pickled.append(QUOTE);
-            pickled.append(tuple.name);
-            pickled.append(QUOTE);
-            pickled.append(LF);
-
-            // start the inner tuple
-            pickled.append(MARK);
-
-            // timestamp is a long
-            pickled.append(LONG);
-            pickled.append(Long.toString(tuple.timestamp));
-            // the trailing L is to match python's repr(long(1234))
-            pickled.append(LONG);
-            pickled.append(LF);
-
-            // and the value is a string.
-            pickled.append(STRING);
-            pickled.append(QUOTE);
-            pickled.append(tuple.value);
-            pickled.append(QUOTE);
-            pickled.append(LF);
+    private void resetBuffer() {
+        metrics = 0;
+        buffer.clear();
+        buffer.position(HEADER_SIZE);
+        buffer.put(MARK).put(LIST);
+    }
 
-            pickled.append(TUPLE); // inner close
-            pickled.append(TUPLE); // outer close
+    private void putHead(byte[] name, long timestamp) {
+        // start the outer tuple, the metric name is a string.
+        // the single quotes are to match python's repr("abcd")
+        buffer.put(MARK).put(STRING).put(QUOTE).put(name).put(QUOTE).put(LF);
+        // start the inner tuple, timestamp is a long
+        buffer.put(MARK).put(LONG);
+        putLong(timestamp);
+        // the trailing L is to match python's repr(long(1234))
+        buffer.put(LONG).put(LF);
+    }
 
-            pickled.append(APPEND);
+    private void endTuple() throws IOException {
+        // inner and outer close
+        buffer.put(TUPLE).put(TUPLE).put(APPEND);
+        metrics++;
+        if (metrics >= batchSize) {
+            writeMetrics();
         }
+    }
 
-        // every pickle ends with STOP
-        pickled.append(STOP);
-
-        pickled.flush();
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.put(Long.toString(value).getBytes(charset));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, i, digits.length - i);
+    }
 
-        return out.toByteArray();
+    private void ensureCapacity(int required) {
+        // reserve place for tuple marks and the STOP opcode as well
+        required += 16;
+        if (buffer.remaining() < required) {
+            ByteBuffer extended = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + required));
+            buffer.flip();
+            extended.put(buffer);
+            buffer = extended;
+        }
     }
 
     protected String sanitize(String s) {
         return WHITESPACE.matcher(s).replaceAll("-");
     }
 
-    static class MetricTuple {
-        String name;
-        long timestamp;
-        String value;
-
-        MetricTuple(String name, long timestamp, String value) {
-            this.name = name;
-            this.timestamp = timestamp;
-            this.value = value;
-        }
-    }
-
-}
\ No newline at end of file
+}
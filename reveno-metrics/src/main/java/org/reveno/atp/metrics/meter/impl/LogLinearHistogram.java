@@ -0,0 +1,201 @@
+package org.reveno.atp.metrics.meter.impl;
+
+import org.reveno.atp.metrics.MetricNames;
+import org.reveno.atp.metrics.Sink;
+import org.reveno.atp.metrics.meter.Histogram;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with log-linear buckets, in the manner of HdrHistogram. Values
+ * less than {@code 2^precisionBits} are counted exactly, every next power of two range
+ * is split into {@code 2^precisionBits} linear sub-buckets, so relative error of any
+ * reported percentile never exceeds {@code 1 / 2^precisionBits}.
+ * <p>
+ * Recording is wait-free and doesn't allocate. Buckets are drained into a private
+ * snapshot on each {@link #sendTo(List, boolean)}, so every report covers only the
+ * values recorded since the previous one.
+ * <p>
+ * If {@code expectedInterval} is positive, recorded values are corrected for coordinated
+ * omission: value {@code v} additionally records {@code v - expectedInterval},
+ * {@code v - 2 * expectedInterval}, etc., down to {@code expectedInterval}, which are the
+ * samples that would have been taken if the stall had not blocked them.
+ */
+public class LogLinearHistogram implements Histogram {
+
+    protected static final int DEFAULT_PRECISION_BITS = 7;
+    protected static final long DEFAULT_HIGHEST_VALUE = 3_600_000_000_000L;
+    protected static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999, 0.9999};
+    protected static final String[] PERCENTILE_NAMES = {".p50", ".p90", ".p99", ".p999", ".p9999"};
+
+    protected final int precisionBits;
+    protected final int subBucketCount;
+    protected final long highestValue;
+    protected final long expectedInterval;
+    protected final AtomicLongArray counts;
+    protected final long[] snapshot;
+    protected final LongAdder sum = new LongAdder();
+    protected final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    protected final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+    protected final int countName;
+    protected final int meanName;
+    protected final int minName;
+    protected final int maxName;
+    protected final int[] percentileNames = new int[PERCENTILES.length];
+    protected final long[] percentileValues = new long[PERCENTILES.length];
+
+    public LogLinearHistogram(String name) {
+        this(name, 0L);
+    }
+
+    public LogLinearHistogram(String name, long expectedInterval) {
+        this(name, DEFAULT_PRECISION_BITS, DEFAULT_HIGHEST_VALUE, expectedInterval);
+    }
+
+    public LogLinearHistogram(String name, int precisionBits, long highestValue, long expectedInterval) {
+        if (precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException("Precision bits must be in [1, 16] range!");
+        }
+        if (highestValue < 1L << precisionBits) {
+            throw new IllegalArgumentException("Highest value must be not less than 2^precisionBits!");
+        }
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        this.highestValue = highestValue;
+        this.expectedInterval = expectedInterval;
+        this.counts = new AtomicLongArray(indexOf(highestValue) + 1);
+        this.snapshot = new long[counts.length()];
+        this.countName = MetricNames.register(name + ".count");
+        this.meanName = MetricNames.register(name + ".mean");
+        this.minName = MetricNames.register(name + ".min");
+        this.maxName = MetricNames.register(name + ".max");
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            percentileNames[i] = MetricNames.register(name + PERCENTILE_NAMES[i]);
+        }
+    }
+
+    @Override
+    public Histogram update(long value) {
+        record(value);
+        if (expectedInterval > 0) {
+            for (long missed = value - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+                record(missed);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isReady() {
+        return max.get() > 0;
+    }
+
+    @Override
+    public void sendTo(List<Sink> sinks, boolean sync) {
+        long total = drain();
+        long timestamp = System.currentTimeMillis() / 1000;
+        long minValue = min.getThenReset();
+        long maxValue = max.getThenReset();
+        long mean = total == 0 ? 0 : sum.sumThenReset() / total;
+        if (total == 0) {
+            minValue = 0;
+        }
+        percentiles(total);
+
+        for (Sink sink : sinks) {
+            sink.send(countName, total, timestamp);
+            sink.send(meanName, mean, timestamp);
+            sink.send(minName, minValue, timestamp);
+            sink.send(maxName, maxValue, timestamp);
+            for (int i = 0; i < percentileNames.length; i++) {
+                sink.send(percentileNames[i], percentileValues[i], timestamp);
+            }
+        }
+    }
+
+    /**
+     * Value at given percentile of the last drained snapshot.
+     *
+     * @param percentile in range (0, 1]
+     * @return the highest value which is equivalent to the bucket, where percentile falls in
+     */
+    public long valueAt(double percentile) {
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            total += snapshot[i];
+        }
+        return valueAt(percentile, total);
+    }
+
+    /**
+     * Moves all recorded counts into snapshot, resetting the live buckets.
+     *
+     * @return total count of values in the snapshot
+     */
+    public long drain() {
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            if (counts.get(i) != 0) {
+                snapshot[i] = counts.getAndSet(i, 0);
+                total += snapshot[i];
+            } else {
+                snapshot[i] = 0;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    protected void record(long value) {
+        long v = value < 0 ? 0 : Math.min(value, highestValue);
+        counts.incrementAndGet(indexOf(v));
+        sum.add(v);
+        min.accumulate(v);
+        max.accumulate(v);
+    }
+
+    protected void percentiles(long total) {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            percentileValues[i] = valueAt(PERCENTILES[i], total);
+        }
+    }
+
+    protected long valueAt(double percentile, long total) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile * total));
+        long accumulated = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            accumulated += snapshot[i];
+            if (accumulated >= target) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestValue;
+    }
+
+    protected int indexOf(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - precisionBits;
+        return ((shift + 1) << precisionBits) + (int) ((value >>> shift) - subBucketCount);
+    }
+
+    protected long highestEquivalentValue(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = (index >>> precisionBits) - 1;
+        long top = (index & (subBucketCount - 1)) + subBucketCount;
+        return Math.min(((top + 1) << shift) - 1, highestValue);
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.reveno.atp.metrics.meter.impl;
 
+import org.reveno.atp.metrics.MetricNames;
 import org.reveno.atp.metrics.Sink;
 import org.reveno.atp.metrics.meter.Counter;
 
@@ -9,13 +10,13 @@ import java.util.concurrent.atomic.AtomicLong;
 public class SimpleCounter implements Counter {
 
     protected final String name;
-    protected final String metricsName;
+    protected final int metricsName;
     protected final AtomicLong counter = new AtomicLong();
     protected long lastTime = System.currentTimeMillis();
 
     public SimpleCounter(String name) {
         this.name = name;
-        this.metricsName = name + ".hits";
+        this.metricsName = MetricNames.register(name + ".hits");
     }
 
     @Override
@@ -26,7 +27,7 @@ public class SimpleCounter implements Counter {
         if (interval > 0) {
             for (long i = lastTime; i <= current; i += 1000) {
                 for (Sink s : sinks) {
-                    s.send(metricsName, Long.toString(count / interval), i / 1000);
+                    s.send(metricsName, count / interval, i / 1000);
                 }
             }
         }
@@ -1,5 +1,6 @@
 package org.reveno.atp.metrics.meter.impl;
 
+import org.reveno.atp.metrics.MetricNames;
 import org.reveno.atp.metrics.Sink;
 import org.reveno.atp.metrics.meter.Histogram;
 import org.reveno.atp.metrics.meter.HistogramType;
@@ -24,11 +25,11 @@ public class TwoBufferHistogram implements Histogram {
     protected final AtomicLong switcher = new AtomicLong();
     protected final HistogramType type;
     protected final String name;
-    protected final String countName;
-    protected final String meanName;
-    protected final String minName;
-    protected final String maxName;
-    protected final String stddevName;
+    protected final int countName;
+    protected final int meanName;
+    protected final int minName;
+    protected final int maxName;
+    protected final int stddevName;
     protected long prevMean = -1L;
     protected LongAdder count = new LongAdder();
     protected volatile int bit = WRITING;
@@ -46,11 +47,11 @@ public class TwoBufferHistogram implements Histogram {
         }
         this.type = type;
         this.name = name;
-        this.countName = name + ".count";
-        this.meanName = name + ".mean";
-        this.minName = name + ".min";
-        this.maxName = name + ".max";
-        this.stddevName = name + ".stddev";
+        this.countName = MetricNames.register(name + ".count");
+        this.meanName = MetricNames.register(name + ".mean");
+        this.minName = MetricNames.register(name + ".min");
+        this.maxName = MetricNames.register(name + ".max");
+        this.stddevName = MetricNames.register(name + ".stddev");
     }
 
     /**
@@ -99,7 +100,12 @@ public class TwoBufferHistogram implements Histogram {
                 stddev += Math.pow(prevMean - metric, 2);
             }
         }
-        mean /= count - 1;
+        // loop counter overshoots by one, so amount is the real number of samples read
+        if (amount > 0) {
+            mean /= amount;
+        } else {
+            min = 0;
+        }
         if (prevMean == -1) {
             stddev = 0;
         } else {
@@ -109,11 +115,11 @@ public class TwoBufferHistogram implements Histogram {
         prevMean = mean;
 
         for (Sink sink : sinks) {
-            sink.send(countName, Long.toString(sum), timestamp);
-            sink.send(meanName, Long.toString(mean), timestamp);
-            sink.send(minName, Long.toString(min), timestamp);
-            sink.send(maxName, Long.toString(max), timestamp);
-            sink.send(stddevName, Long.toString(stddev), timestamp);
+            sink.send(countName, sum, timestamp);
+            sink.send(meanName, mean, timestamp);
+            sink.send(minName, min, timestamp);
+            sink.send(maxName, max, timestamp);
+            sink.send(stddevName, stddev, timestamp);
         }
 
         buffer.clear();
@@ -2,11 +2,18 @@ package org.reveno.atp.metrics;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.reveno.atp.core.engine.processor.PipeProcessorStats;
+import org.reveno.atp.metrics.impl.GraphiteSink;
 import org.reveno.atp.metrics.meter.Histogram;
 import org.reveno.atp.metrics.meter.HistogramType;
+import org.reveno.atp.metrics.meter.impl.LogLinearHistogram;
 import org.reveno.atp.metrics.meter.impl.TwoBufferHistogram;
 import org.reveno.atp.utils.MeasureUtils;
 
+import java.io.DataInputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -53,6 +60,153 @@ public class TestMetrics {
         Assert.assertNotEquals(sink.getMetrics().get(NAME + ".mean"), "18");
     }
 
+    @Test
+    public void testLogLinearHistogram() {
+        MockSink sink = new MockSink();
+        LogLinearHistogram histogram = new LogLinearHistogram(NAME);
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.update(i * 1000L);
+        }
+        histogram.sendTo(Collections.singletonList(sink), false);
+
+        Assert.assertEquals("10000", sink.getMetrics().get(NAME + ".count"));
+        Assert.assertEquals("1000", sink.getMetrics().get(NAME + ".min"));
+        Assert.assertEquals("10000000", sink.getMetrics().get(NAME + ".max"));
+        Assert.assertEquals("5000500", sink.getMetrics().get(NAME + ".mean"));
+        assertWithin(5_000_000, Long.parseLong(sink.getMetrics().get(NAME + ".p50")), 0.01);
+        assertWithin(9_900_000, Long.parseLong(sink.getMetrics().get(NAME + ".p99")), 0.01);
+        assertWithin(9_990_000, Long.parseLong(sink.getMetrics().get(NAME + ".p999")), 0.01);
+        assertWithin(9_999_000, Long.parseLong(sink.getMetrics().get(NAME + ".p9999")), 0.01);
+
+        histogram.sendTo(Collections.singletonList(sink), false);
+        Assert.assertEquals("0", sink.getMetrics().get(NAME + ".count"));
+        Assert.assertEquals("0", sink.getMetrics().get(NAME + ".p99"));
+
+        histogram.update(5).update(127).update(128);
+        Assert.assertEquals(3, histogram.drain());
+        Assert.assertEquals(5, histogram.valueAt(0.3));
+        Assert.assertEquals(127, histogram.valueAt(0.6));
+        Assert.assertEquals(128, histogram.valueAt(1.0));
+    }
+
+    @Test
+    public void testCoordinatedOmissionCorrection() {
+        LogLinearHistogram histogram = new LogLinearHistogram(NAME, 100);
+        histogram.update(50).update(1000);
+
+        Assert.assertEquals(11, histogram.drain());
+        Assert.assertEquals(50, histogram.valueAt(0.01));
+        Assert.assertEquals(500, histogram.valueAt(0.5), 4);
+        Assert.assertEquals(1000, histogram.valueAt(1.0), 8);
+    }
+
+    @Test
+    public void testPipeMetrics() {
+        MockSink sink = new MockSink();
+        PipeMetrics metrics = new PipeMetrics(NAME);
+        metrics.onBatch(0, 10);
+        metrics.sendTo(Collections.singletonList(sink), false);
+        Assert.assertTrue(sink.getMetrics().isEmpty());
+
+        metrics.onStart(new PipeProcessorStats() {
+            @Override
+            public int bufferSize() {
+                return 1024;
+            }
+
+            @Override
+            public long remainingCapacity() {
+                return 1000;
+            }
+
+            @Override
+            public int stages() {
+                return 2;
+            }
+
+            @Override
+            public long consumerLag(int stage) {
+                return stage == 0 ? 3 : 17;
+            }
+        });
+        metrics.onClaim(500);
+        metrics.onBatch(1, 32);
+        metrics.onBatch(1, 64);
+        metrics.sendTo(Collections.singletonList(sink), false);
+
+        Assert.assertEquals("1000", sink.getMetrics().get(NAME + ".buffer.remaining"));
+        Assert.assertEquals("24", sink.getMetrics().get(NAME + ".buffer.used"));
+        Assert.assertEquals("3", sink.getMetrics().get(NAME + ".stage0.lag"));
+        Assert.assertEquals("17", sink.getMetrics().get(NAME + ".stage1.lag"));
+        Assert.assertEquals("1", sink.getMetrics().get(NAME + ".claim.count"));
+        Assert.assertEquals("1", sink.getMetrics().get(NAME + ".stage0.batch.count"));
+        Assert.assertEquals("2", sink.getMetrics().get(NAME + ".stage1.batch.count"));
+        Assert.assertEquals("64", sink.getMetrics().get(NAME + ".stage1.batch.max"));
+        Assert.assertNull(sink.getMetrics().get(NAME + ".stage2.lag"));
+    }
+
+    @Test
+    public void testIoMetrics() {
+        MockSink sink = new MockSink();
+        IoMetrics metrics = new IoMetrics(NAME);
+        metrics.sendTo(Collections.singletonList(sink), false);
+        Assert.assertEquals("0", sink.getMetrics().get(NAME + ".write.bytesPerSec"));
+        Assert.assertNull(sink.getMetrics().get(NAME + ".restore.records"));
+        Assert.assertNull(sink.getMetrics().get(NAME + ".snapshot.bytes"));
+
+        metrics.onWrite(1024);
+        metrics.onFlush(2000);
+        metrics.onFlush(4000);
+        metrics.onRoll(100);
+        metrics.onSnapshot(4096, 1000);
+        metrics.onRestore(1000, 500_000_000);
+        metrics.sendTo(Collections.singletonList(sink), false);
+
+        Assert.assertTrue(Long.parseLong(sink.getMetrics().get(NAME + ".write.bytesPerSec")) > 0);
+        Assert.assertEquals("2", sink.getMetrics().get(NAME + ".flush.count"));
+        Assert.assertEquals("4000", sink.getMetrics().get(NAME + ".flush.max"));
+        Assert.assertEquals("1", sink.getMetrics().get(NAME + ".roll.count"));
+        Assert.assertEquals("0", sink.getMetrics().get(NAME + ".force.count"));
+        Assert.assertEquals("4096", sink.getMetrics().get(NAME + ".snapshot.bytes"));
+        Assert.assertEquals("1000", sink.getMetrics().get(NAME + ".restore.records"));
+        Assert.assertEquals("2000", sink.getMetrics().get(NAME + ".restore.recordsPerSec"));
+    }
+
+    @Test
+    public void testGraphiteSink() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            GraphiteSink sink = new GraphiteSink("localhost", server.getLocalPort());
+            sink.init();
+            try (Socket client = server.accept()) {
+                Histogram histogram = new LogLinearHistogram(NAME);
+                histogram.update(10).update(20);
+                histogram.sendTo(Collections.singletonList(sink), false);
+                sink.send("reveno.legacy value", "-5", 7L);
+                sink.send(MetricNames.register(NAME + ".negative"), -42L, 7L);
+                sink.flush();
+
+                DataInputStream in = new DataInputStream(client.getInputStream());
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                String pickle = new String(payload, StandardCharsets.UTF_8);
+
+                Assert.assertTrue(pickle.startsWith("(l"));
+                Assert.assertTrue(pickle.endsWith("."));
+                Assert.assertEquals(11, pickle.split("tta", -1).length - 1);
+                Assert.assertTrue(pickle.matches("(?s).*\\(S'reveno\\.core\\.count'\n\\(L\\d+L\nS'2'\ntta.*"));
+                Assert.assertTrue(pickle.contains("(S'reveno.core.max'\n"));
+                Assert.assertTrue(pickle.contains("(S'reveno.legacy-value'\n(L7L\nS'-5'\ntta"));
+                Assert.assertTrue(pickle.contains("(S'reveno.core.negative'\n(L7L\nS'-42'\ntta"));
+            } finally {
+                sink.close();
+            }
+        }
+    }
+
+    protected void assertWithin(long expected, long actual, double error) {
+        Assert.assertTrue(String.format("%d is not within %f of %d", actual, error, expected),
+                Math.abs(actual - expected) <= expected * error);
+    }
 
     protected static class MockSink implements Sink {
         protected Map<String, String> metrics = new HashMap<>();